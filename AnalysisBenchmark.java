@@ -0,0 +1,65 @@
+import java.util.SplittableRandom;
+
+// Measures how quickly analysis mode follows the board: the time from EngineAnalysis.analyze
+// to the first scored info line of the new search, over a random walk through legal positions.
+//   java AnalysisBenchmark [--engine path] [--restarts N] [--interval ms]
+class AnalysisBenchmark {
+    public static void main(String[] args) throws Exception {
+        String enginePath = StockfishEngine.DEFAULT_PATH;
+        int restarts = 500;
+        int interval = 20;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--engine": enginePath = args[++i]; break;
+                case "--restarts": restarts = Integer.parseInt(args[++i]); break;
+                case "--interval": interval = Integer.parseInt(args[++i]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        StockfishEngine engine = new StockfishEngine(enginePath);
+        if (!engine.isRunning()) {
+            System.err.println("Could not start " + enginePath);
+            System.exit(1);
+        }
+        EngineAnalysis analysis = new EngineAnalysis(engine);
+        SplittableRandom random = new SplittableRandom(1);
+        ChessPosition position = new ChessPosition();
+        position.setupInitial();
+        MoveList moves = new MoveList();
+        LatencyHistogram latency = new LatencyHistogram();
+        int timeouts = 0;
+        int under10 = 0;
+        for (int i = 0; i < restarts; i++) {
+            moves.clear();
+            position.legalMoves(moves);
+            if (moves.size() == 0 || position.drawReason() != null) {
+                position.setupInitial();
+                continue;
+            }
+            Move.play(position, moves.get(random.nextInt(moves.size())));
+
+            long start = System.nanoTime();
+            long generation = analysis.analyze(position);
+            long deadline = start + 1_000_000_000L;
+            EngineAnalysis.Info info;
+            while (((info = analysis.latest()) == null || info.generation < generation) && System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+            if (info == null || info.generation < generation) timeouts++;
+            else {
+                long elapsed = System.nanoTime() - start;
+                latency.record(elapsed);
+                if (elapsed <= 10_000_000) under10++;
+            }
+            // Let the search run a little, as it would while the player thinks
+            Thread.sleep(interval);
+        }
+        analysis.close();
+
+        System.out.printf("%d restarts, %d timed out%n", latency.getCount(), timeouts);
+        System.out.printf("restart to first info: mean %.2f ms, p50 %.2f ms, p90 %.2f ms, p99 %.2f ms%n",
+                          latency.getMean() / 1e6, latency.getPercentile(50) / 1e6,
+                          latency.getPercentile(90) / 1e6, latency.getPercentile(99) / 1e6);
+        System.out.printf("under 10 ms: %.1f%% of restarts%n", 100.0 * under10 / Math.max(1, latency.getCount()));
+    }
+}
@@ -0,0 +1,22 @@
+import javafx.scene.paint.Color;
+
+class Bishop extends ChessPiece {
+    Bishop(int row, int col, Color color) { super(row, col, color); }
+    @Override ChessPiece copy() { return new Bishop(row, col, color); }
+    @Override char symbol() { return 'B'; }
+    @Override public boolean isValidMove(int newRow, int newCol) {
+        return Math.abs(row - newRow) == Math.abs(col - newCol);
+    }
+    @Override void drawGlyph(GlyphSurface gc, int x, int y) {
+        gc.setFill(color);
+        gc.fillRect(x + 15, y + 30, 20, 10);
+        gc.fillOval(x + 15, y + 15, 20, 15);
+        double[] xPoints = {x + 25, x + 20, x + 30};
+        double[] yPoints = {y + 5, y + 15, y + 15};
+        gc.fillPolygon(xPoints, yPoints, 3);
+        gc.setStroke(color == Color.WHITE ? Color.BLACK : Color.WHITE);
+        gc.strokeRect(x + 15, y + 30, 20, 10);
+        gc.strokeOval(x + 15, y + 15, 20, 15);
+        gc.strokePolygon(xPoints, yPoints, 3);
+    }
+}
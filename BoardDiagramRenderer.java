@@ -0,0 +1,315 @@
+import java.awt.BasicStroke;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javafx.scene.paint.Color;
+import javax.imageio.ImageIO;
+
+// Renders board diagrams to PNG or SVG with Java2D, so no JavaFX stage or toolkit is needed.
+// Batch usage:
+//   java BoardDiagramRenderer <fen-dir> <output-dir> [--format png|svg] [--size 50] [--threads N] [--theme Classic] [--flip]
+// Every non-blank line of every file in <fen-dir> is read as a FEN (or EPD) position.
+class BoardDiagramRenderer {
+    private static final int GLYPH_CELL = 50;
+
+    private final ChessTheme theme;
+    private final int squareSize;
+
+    BoardDiagramRenderer(ChessTheme theme, int squareSize) {
+        this.theme = theme;
+        this.squareSize = squareSize;
+    }
+
+    BufferedImage renderImage(ChessPiece[][] board, boolean flipped) {
+        int size = 8 * squareSize;
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setFont(new java.awt.Font(java.awt.Font.SANS_SERIF, java.awt.Font.PLAIN, 12));
+            Java2DGlyphSurface surface = new Java2DGlyphSurface(g);
+            double scale = squareSize / (double) GLYPH_CELL;
+            for (int row = 0; row < 8; row++) {
+                for (int col = 0; col < 8; col++) {
+                    int x = visual(col, flipped) * squareSize;
+                    int y = visual(row, flipped) * squareSize;
+                    boolean isLight = (row + col) % 2 == 0;
+                    g.setColor(toAwt(isLight ? theme.getLightSquare() : theme.getDarkSquare()));
+                    g.fillRect(x, y, squareSize, squareSize);
+                    ChessPiece piece = board[row][col];
+                    if (piece != null) {
+                        AffineTransform saved = g.getTransform();
+                        g.translate(x, y);
+                        g.scale(scale, scale);
+                        piece.drawGlyph(surface, 0, 0);
+                        g.setTransform(saved);
+                    }
+                    g.setColor(toAwt(isLight ? Color.DARKGREEN : Color.BEIGE));
+                    if (visual(row, flipped) == 7) {
+                        g.drawString(String.valueOf((char) ('a' + col)), x + squareSize - 10, y + squareSize - 2);
+                    }
+                    if (visual(col, flipped) == 0) {
+                        g.drawString(String.valueOf(8 - row), x + 2, y + 12);
+                    }
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    String renderSvg(ChessPiece[][] board, boolean flipped) {
+        int size = 8 * squareSize;
+        StringBuilder svg = new StringBuilder(16 * 1024);
+        svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(size)
+           .append("\" height=\"").append(size).append("\" viewBox=\"0 0 ").append(size).append(' ').append(size).append("\">\n");
+        SvgGlyphSurface surface = new SvgGlyphSurface(svg);
+        double scale = squareSize / (double) GLYPH_CELL;
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                int x = visual(col, flipped) * squareSize;
+                int y = visual(row, flipped) * squareSize;
+                boolean isLight = (row + col) % 2 == 0;
+                svg.append("<rect x=\"").append(x).append("\" y=\"").append(y)
+                   .append("\" width=\"").append(squareSize).append("\" height=\"").append(squareSize)
+                   .append("\" fill=\"").append(SvgGlyphSurface.hex(isLight ? theme.getLightSquare() : theme.getDarkSquare()))
+                   .append("\"/>\n");
+            }
+        }
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                ChessPiece piece = board[row][col];
+                if (piece == null) continue;
+                svg.append("<g transform=\"translate(").append(visual(col, flipped) * squareSize).append(' ')
+                   .append(visual(row, flipped) * squareSize).append(") scale(").append(scale).append(")\">\n");
+                piece.drawGlyph(surface, 0, 0);
+                svg.append("</g>\n");
+            }
+        }
+        for (int i = 0; i < 8; i++) {
+            int file = flipped ? 7 - i : i;
+            boolean fileLight = (file + (flipped ? 0 : 7)) % 2 == 0;
+            svg.append("<text x=\"").append(i * squareSize + squareSize - 10).append("\" y=\"").append(size - 2)
+               .append("\" font-family=\"sans-serif\" font-size=\"12\" fill=\"")
+               .append(SvgGlyphSurface.hex(fileLight ? Color.DARKGREEN : Color.BEIGE)).append("\">")
+               .append((char) ('a' + file)).append("</text>\n");
+            int row = flipped ? 7 - i : i;
+            boolean rankLight = (row + (flipped ? 7 : 0)) % 2 == 0;
+            svg.append("<text x=\"2\" y=\"").append(i * squareSize + 12)
+               .append("\" font-family=\"sans-serif\" font-size=\"12\" fill=\"")
+               .append(SvgGlyphSurface.hex(rankLight ? Color.DARKGREEN : Color.BEIGE)).append("\">")
+               .append(8 - row).append("</text>\n");
+        }
+        svg.append("</svg>\n");
+        return svg.toString();
+    }
+
+    void write(ChessPiece[][] board, boolean flipped, String format, Path output) throws IOException {
+        if (format.equals("svg")) {
+            try (Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+                writer.write(renderSvg(board, flipped));
+            }
+        } else if (!ImageIO.write(renderImage(board, flipped), format, output.toFile())) {
+            throw new IOException("No image writer for format " + format);
+        }
+    }
+
+    private static int visual(int index, boolean flipped) {
+        return flipped ? 7 - index : index;
+    }
+
+    static java.awt.Color toAwt(Color color) {
+        return new java.awt.Color((float) color.getRed(), (float) color.getGreen(),
+                                  (float) color.getBlue(), (float) color.getOpacity());
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        // Encode straight to the output stream instead of through ImageIO's temp-file cache
+        ImageIO.setUseCache(false);
+        if (args.length < 2) {
+            System.err.println("Usage: BoardDiagramRenderer <fen-dir> <output-dir> "
+                + "[--format png|svg] [--size 50] [--threads N] [--theme Classic] [--flip]");
+            System.exit(1);
+        }
+        Path inputDir = Paths.get(args[0]);
+        Path outputDir = Paths.get(args[1]);
+        String format = "png";
+        int size = GLYPH_CELL;
+        int threads = Runtime.getRuntime().availableProcessors();
+        ChessTheme theme = ChessTheme.PREDEFINED_THEMES[0];
+        boolean flipped = false;
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "--format": format = args[++i].toLowerCase(Locale.ROOT); break;
+                case "--size": size = Integer.parseInt(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--flip": flipped = true; break;
+                case "--theme":
+                    String name = args[++i];
+                    for (ChessTheme candidate : ChessTheme.PREDEFINED_THEMES) {
+                        if (candidate.getName().equalsIgnoreCase(name)) theme = candidate;
+                    }
+                    break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        Files.createDirectories(outputDir);
+
+        List<String> names = new ArrayList<>();
+        List<String> fens = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(inputDir)) {
+            for (Path file : files) {
+                if (!Files.isRegularFile(file)) continue;
+                String stem = file.getFileName().toString().replaceFirst("\\.[^.]*$", "");
+                List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+                int index = 0;
+                for (String line : lines) {
+                    if (line.trim().isEmpty()) continue;
+                    index++;
+                    names.add(stem + "-" + index);
+                    fens.add(line.trim());
+                }
+            }
+        }
+
+        BoardDiagramRenderer renderer = new BoardDiagramRenderer(theme, size);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        String extension = format;
+        boolean flip = flipped;
+        long start = System.nanoTime();
+        List<Future<?>> results = new ArrayList<>(fens.size());
+        for (int i = 0; i < fens.size(); i++) {
+            String fen = fens.get(i);
+            Path output = outputDir.resolve(names.get(i) + "." + extension);
+            results.add(pool.submit(() -> {
+                renderer.write(Fen.parsePlacement(fen), flip, extension, output);
+                return null;
+            }));
+        }
+        int failures = 0;
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                results.get(i).get();
+            } catch (ExecutionException e) {
+                failures++;
+                System.err.println(names.get(i) + ": " + e.getCause().getMessage());
+            }
+        }
+        pool.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int rendered = fens.size() - failures;
+        System.out.printf("Rendered %d %s images in %.2f s on %d threads (%.1f images/sec, %d failed)%n",
+                          rendered, format, seconds, threads, rendered / seconds, failures);
+    }
+}
+
+class Java2DGlyphSurface implements GlyphSurface {
+    private final Graphics2D g;
+    private java.awt.Color fill = java.awt.Color.BLACK;
+    private java.awt.Color stroke = java.awt.Color.BLACK;
+
+    Java2DGlyphSurface(Graphics2D g) {
+        this.g = g;
+        g.setStroke(new BasicStroke(1f));
+    }
+
+    @Override public void setFill(Color color) { fill = BoardDiagramRenderer.toAwt(color); }
+    @Override public void setStroke(Color color) { stroke = BoardDiagramRenderer.toAwt(color); }
+
+    @Override public void fillRect(double x, double y, double w, double h) { fill(new Rectangle2D.Double(x, y, w, h)); }
+    @Override public void strokeRect(double x, double y, double w, double h) { stroke(new Rectangle2D.Double(x, y, w, h)); }
+    @Override public void fillOval(double x, double y, double w, double h) { fill(new Ellipse2D.Double(x, y, w, h)); }
+    @Override public void strokeOval(double x, double y, double w, double h) { stroke(new Ellipse2D.Double(x, y, w, h)); }
+    @Override public void fillPolygon(double[] xPoints, double[] yPoints, int points) { fill(polygon(xPoints, yPoints, points)); }
+    @Override public void strokePolygon(double[] xPoints, double[] yPoints, int points) { stroke(polygon(xPoints, yPoints, points)); }
+
+    private void fill(java.awt.Shape shape) {
+        g.setColor(fill);
+        g.fill(shape);
+    }
+
+    private void stroke(java.awt.Shape shape) {
+        g.setColor(stroke);
+        g.draw(shape);
+    }
+
+    private static Path2D polygon(double[] xPoints, double[] yPoints, int points) {
+        Path2D.Double path = new Path2D.Double();
+        path.moveTo(xPoints[0], yPoints[0]);
+        for (int i = 1; i < points; i++) path.lineTo(xPoints[i], yPoints[i]);
+        path.closePath();
+        return path;
+    }
+}
+
+class SvgGlyphSurface implements GlyphSurface {
+    private final StringBuilder svg;
+    private String fill = "#000000";
+    private String stroke = "#000000";
+
+    SvgGlyphSurface(StringBuilder svg) {
+        this.svg = svg;
+    }
+
+    @Override public void setFill(Color color) { fill = hex(color); }
+    @Override public void setStroke(Color color) { stroke = hex(color); }
+
+    @Override public void fillRect(double x, double y, double w, double h) { rect(x, y, w, h, fill, "none"); }
+    @Override public void strokeRect(double x, double y, double w, double h) { rect(x, y, w, h, "none", stroke); }
+    @Override public void fillOval(double x, double y, double w, double h) { ellipse(x, y, w, h, fill, "none"); }
+    @Override public void strokeOval(double x, double y, double w, double h) { ellipse(x, y, w, h, "none", stroke); }
+    @Override public void fillPolygon(double[] xPoints, double[] yPoints, int points) { polygon(xPoints, yPoints, points, fill, "none"); }
+    @Override public void strokePolygon(double[] xPoints, double[] yPoints, int points) { polygon(xPoints, yPoints, points, "none", stroke); }
+
+    private void rect(double x, double y, double w, double h, String fill, String stroke) {
+        svg.append("<rect x=\"").append(x).append("\" y=\"").append(y).append("\" width=\"").append(w)
+           .append("\" height=\"").append(h).append('"');
+        paint(fill, stroke);
+    }
+
+    private void ellipse(double x, double y, double w, double h, String fill, String stroke) {
+        svg.append("<ellipse cx=\"").append(x + w / 2).append("\" cy=\"").append(y + h / 2)
+           .append("\" rx=\"").append(w / 2).append("\" ry=\"").append(h / 2).append('"');
+        paint(fill, stroke);
+    }
+
+    private void polygon(double[] xPoints, double[] yPoints, int points, String fill, String stroke) {
+        svg.append("<polygon points=\"");
+        for (int i = 0; i < points; i++) {
+            if (i > 0) svg.append(' ');
+            svg.append(xPoints[i]).append(',').append(yPoints[i]);
+        }
+        svg.append('"');
+        paint(fill, stroke);
+    }
+
+    private void paint(String fill, String stroke) {
+        svg.append(" fill=\"").append(fill).append("\" stroke=\"").append(stroke).append("\"/>\n");
+    }
+
+    static String hex(Color color) {
+        return String.format("#%02x%02x%02x", Math.round(color.getRed() * 255),
+                             Math.round(color.getGreen() * 255), Math.round(color.getBlue() * 255));
+    }
+}
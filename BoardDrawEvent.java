@@ -0,0 +1,20 @@
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("chess.BoardDraw")
+@Label("Board Draw")
+@Category({"Chess", "Rendering"})
+@StackTrace(false)
+class BoardDrawEvent extends Event {
+    @Label("Squares Repainted")
+    int squaresRepainted;
+
+    @Label("Pieces Drawn")
+    int piecesDrawn;
+
+    @Label("Flipped")
+    boolean flipped;
+}
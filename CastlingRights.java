@@ -0,0 +1,60 @@
+import javafx.scene.paint.Color;
+
+class CastlingRights {
+    private boolean whiteKingMoved, blackKingMoved;
+    private boolean whiteLeftRookMoved, whiteRightRookMoved;
+    private boolean blackLeftRookMoved, blackRightRookMoved;
+
+    boolean canCastle(Color color, boolean kingside) {
+        if (color == Color.WHITE) {
+            return !whiteKingMoved && (kingside ? !whiteRightRookMoved : !whiteLeftRookMoved);
+        }
+        return !blackKingMoved && (kingside ? !blackRightRookMoved : !blackLeftRookMoved);
+    }
+
+    void markKingMoved(Color color) {
+        if (color == Color.WHITE) whiteKingMoved = true;
+        else blackKingMoved = true;
+    }
+
+    void markRookMoved(Color color, boolean left) {
+        if (color == Color.WHITE) {
+            if (left) whiteLeftRookMoved = true;
+            else whiteRightRookMoved = true;
+        } else {
+            if (left) blackLeftRookMoved = true;
+            else blackRightRookMoved = true;
+        }
+    }
+    
+    // Packs the six flags into an int so a position can snapshot and restore them cheaply
+    int toBits() {
+        return (whiteKingMoved ? 1 : 0) | (blackKingMoved ? 2 : 0)
+            | (whiteLeftRookMoved ? 4 : 0) | (whiteRightRookMoved ? 8 : 0)
+            | (blackLeftRookMoved ? 16 : 0) | (blackRightRookMoved ? 32 : 0);
+    }
+
+    void fromBits(int bits) {
+        whiteKingMoved = (bits & 1) != 0;
+        blackKingMoved = (bits & 2) != 0;
+        whiteLeftRookMoved = (bits & 4) != 0;
+        whiteRightRookMoved = (bits & 8) != 0;
+        blackLeftRookMoved = (bits & 16) != 0;
+        blackRightRookMoved = (bits & 32) != 0;
+    }
+
+    void copyFrom(CastlingRights other) {
+        whiteKingMoved = other.whiteKingMoved;
+        blackKingMoved = other.blackKingMoved;
+        whiteLeftRookMoved = other.whiteLeftRookMoved;
+        whiteRightRookMoved = other.whiteRightRookMoved;
+        blackLeftRookMoved = other.blackLeftRookMoved;
+        blackRightRookMoved = other.blackRightRookMoved;
+    }
+
+    public void reset() {
+        whiteKingMoved = blackKingMoved = false;
+        whiteLeftRookMoved = whiteRightRookMoved = false;
+        blackLeftRookMoved = blackRightRookMoved = false;
+    }
+}
@@ -0,0 +1,25 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("chess.CheckStatus")
+@Label("Check Status Update")
+@Category({"Chess", "Rules"})
+@Description("Check, checkmate and stalemate detection after a move")
+@StackTrace(false)
+class CheckStatusEvent extends Event {
+    @Label("Position Hash")
+    long positionHash;
+
+    @Label("White In Check")
+    boolean whiteInCheck;
+
+    @Label("Black In Check")
+    boolean blackInCheck;
+
+    @Label("Status")
+    String status;
+}
@@ -1,9 +1,10 @@
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.animation.AnimationTimer;
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
-import javafx.geometry.Point2D;
 import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
@@ -15,221 +16,82 @@ import javafx.scene.control.CheckBox;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.image.Image;
+import javafx.scene.image.PixelReader;
 import javafx.scene.image.WritableImage;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.SnapshotParameters;
 import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
 import javafx.util.Duration;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import javafx.geometry.Rectangle2D;
 import javafx.stage.Screen;
 import javafx.scene.control.Separator;
 import javafx.scene.control.TextField;
-
-interface Drawable {
-    void draw(GraphicsContext gc, int x, int y);
-}
-
-interface MoveValidator {
-    boolean isValidMove(int newRow, int newCol);
-}
-
-class CastlingRights {
-    private boolean whiteKingMoved, blackKingMoved;
-    private boolean whiteLeftRookMoved, whiteRightRookMoved;
-    private boolean blackLeftRookMoved, blackRightRookMoved;
-
-    boolean canCastle(Color color, boolean kingside) {
-        if (color == Color.WHITE) {
-            return !whiteKingMoved && (kingside ? !whiteRightRookMoved : !whiteLeftRookMoved);
-        }
-        return !blackKingMoved && (kingside ? !blackRightRookMoved : !blackLeftRookMoved);
-    }
-
-    void markKingMoved(Color color) {
-        if (color == Color.WHITE) whiteKingMoved = true;
-        else blackKingMoved = true;
-    }
-
-    void markRookMoved(Color color, boolean left) {
-        if (color == Color.WHITE) {
-            if (left) whiteLeftRookMoved = true;
-            else whiteRightRookMoved = true;
-        } else {
-            if (left) blackLeftRookMoved = true;
-            else blackRightRookMoved = true;
-        }
-    }
-    
-    public void reset() {
-        whiteKingMoved = blackKingMoved = false;
-        whiteLeftRookMoved = whiteRightRookMoved = false;
-        blackLeftRookMoved = blackRightRookMoved = false;
-    }
-}
-
-abstract class ChessPiece implements Drawable, MoveValidator {
-    int row, col;
-    Color color;
-
-    ChessPiece(int row, int col, Color color) {
-        this.row = row;
-        this.col = col;
-        this.color = color;
-    }
-
-    protected void drawCircle(GraphicsContext gc, int x, int y) {
-        gc.setFill(color);
-        gc.fillOval(x + 10, y + 10, 30, 30);
-        gc.setStroke(color == Color.WHITE ? Color.BLACK : Color.WHITE);
-        gc.strokeOval(x + 10, y + 10, 30, 30);
-    }
-}
-
-class Rook extends ChessPiece {
-    Rook(int row, int col, Color color) { super(row, col, color); }
-    @Override public boolean isValidMove(int newRow, int newCol) {
-        return row == newRow || col == newCol;
-    }
-    @Override public void draw(GraphicsContext gc, int x, int y) {
-        gc.setFill(color);
-        gc.fillRect(x + 10, y + 30, 30, 10);
-        gc.fillRect(x + 15, y + 15, 20, 15);
-        gc.fillRect(x + 10, y + 10, 30, 5);
-        gc.setStroke(color == Color.WHITE ? Color.BLACK : Color.WHITE);
-        gc.strokeRect(x + 10, y + 30, 30, 10);
-        gc.strokeRect(x + 15, y + 15, 20, 15);
-        gc.strokeRect(x + 10, y + 10, 30, 5);
-    }
-}
-
-class Bishop extends ChessPiece {
-    Bishop(int row, int col, Color color) { super(row, col, color); }
-    @Override public boolean isValidMove(int newRow, int newCol) {
-        return Math.abs(row - newRow) == Math.abs(col - newCol);
-    }
-    @Override public void draw(GraphicsContext gc, int x, int y) {
-        gc.setFill(color);
-        gc.fillRect(x + 15, y + 30, 20, 10);
-        gc.fillOval(x + 15, y + 15, 20, 15);
-        double[] xPoints = {x + 25, x + 20, x + 30};
-        double[] yPoints = {y + 5, y + 15, y + 15};
-        gc.fillPolygon(xPoints, yPoints, 3);
-        gc.setStroke(color == Color.WHITE ? Color.BLACK : Color.WHITE);
-        gc.strokeRect(x + 15, y + 30, 20, 10);
-        gc.strokeOval(x + 15, y + 15, 20, 15);
-        gc.strokePolygon(xPoints, yPoints, 3);
-    }
-}
-
-class Knight extends ChessPiece {
-    Knight(int row, int col, Color color) { super(row, col, color); }
-    @Override public boolean isValidMove(int newRow, int newCol) {
-        int rowDiff = Math.abs(row - newRow);
-        int colDiff = Math.abs(col - newCol);
-        return (rowDiff == 2 && colDiff == 1) || (rowDiff == 1 && colDiff == 2);
-    }
-    @Override public void draw(GraphicsContext gc, int x, int y) {
-        gc.setFill(color);
-        gc.fillRect(x + 15, y + 35, 20, 5);
-        gc.fillOval(x + 15, y + 20, 20, 15);
-        double[] xPoints = {x + 20, x + 30, x + 35, x + 25, x + 15};
-        double[] yPoints = {y + 5, y + 5, y + 15, y + 20, y + 20};
-        gc.fillPolygon(xPoints, yPoints, 5);
-        gc.setStroke(color == Color.WHITE ? Color.BLACK : Color.WHITE);
-        gc.strokeRect(x + 15, y + 35, 20, 5);
-        gc.strokeOval(x + 15, y + 20, 20, 15);
-        gc.strokePolygon(xPoints, yPoints, 5);
-    }
-}
-
-class Queen extends ChessPiece {
-    Queen(int row, int col, Color color) { super(row, col, color); }
-    @Override public boolean isValidMove(int newRow, int newCol) {
-        return (row == newRow || col == newCol) || (Math.abs(row - newRow) == Math.abs(col - newCol));
-    }
-    @Override public void draw(GraphicsContext gc, int x, int y) {
-        gc.setFill(color);
-        gc.fillRect(x + 15, y + 35, 20, 5);
-        gc.fillOval(x + 15, y + 15, 20, 20);
-        double[] xPoints = {x + 15, x + 20, x + 25, x + 30, x + 35, x + 15};
-        double[] yPoints = {y + 15, y + 5, y + 15, y + 5, y + 15, y + 15};
-        gc.fillPolygon(xPoints, yPoints, 6);
-        gc.setStroke(color == Color.WHITE ? Color.BLACK : Color.WHITE);
-        gc.strokeRect(x + 15, y + 35, 20, 5);
-        gc.strokeOval(x + 15, y + 15, 20, 20);
-        gc.strokePolygon(xPoints, yPoints, 6);
-    }
-}
-
-class King extends ChessPiece {
-    King(int row, int col, Color color) { super(row, col, color); }
-    @Override public boolean isValidMove(int newRow, int newCol) {
-        return Math.abs(row - newRow) <= 1 && Math.abs(col - newCol) <= 1;
-    }
-    @Override public void draw(GraphicsContext gc, int x, int y) {
-        gc.setFill(color);
-        gc.fillRect(x + 15, y + 35, 20, 5);
-        gc.fillOval(x + 15, y + 15, 20, 20);
-        gc.fillRect(x + 23, y + 5, 4, 15);
-        gc.fillRect(x + 18, y + 10, 14, 4);
-        gc.setStroke(color == Color.WHITE ? Color.BLACK : Color.WHITE);
-        gc.strokeRect(x + 15, y + 35, 20, 5);
-        gc.strokeOval(x + 15, y + 15, 20, 20);
-        gc.strokeRect(x + 23, y + 5, 4, 15);
-        gc.strokeRect(x + 18, y + 10, 14, 4);
-    }
-}
-
-class Pawn extends ChessPiece {
-    Pawn(int row, int col, Color color) { super(row, col, color); }
-    @Override public boolean isValidMove(int newRow, int newCol) {
-        int direction = (color == Color.WHITE) ? -1 : 1;
-        if (col == newCol && (newRow - row) == direction) return true;
-        if (row == (color == Color.WHITE ? 6 : 1) && col == newCol && (newRow - row) == 2 * direction) return true;
-        return false;
-    }
-    @Override public void draw(GraphicsContext gc, int x, int y) {
-        gc.setFill(color);
-        gc.fillRect(x + 15, y + 35, 20, 5);
-        gc.fillOval(x + 17, y + 20, 16, 15);
-        gc.fillOval(x + 20, y + 10, 10, 10);
-        gc.setStroke(color == Color.WHITE ? Color.BLACK : Color.WHITE);
-        gc.strokeRect(x + 15, y + 35, 20, 5);
-        gc.strokeOval(x + 17, y + 20, 16, 15);
-        gc.strokeOval(x + 20, y + 10, 10, 10);
-    }
-}
+import javafx.scene.control.TextInputControl;
+import javafx.scene.control.TextInputDialog;
 
 public class ChessGame extends Application {
     private static final int SIZE = 8;
     private static int SQUARE_SIZE = 50;
-    private ChessPiece[][] board = new ChessPiece[SIZE][SIZE];
+    private final ChessPosition position = new ChessPosition();
+    private final MoveHistory history = new MoveHistory();
     private int selectedRow = -1, selectedCol = -1;
-    private boolean whiteTurn = true;
     private Label statusLabel;
     private ChessBoard chessBoard;
     private boolean whiteKingInCheck, blackKingInCheck;
     private Timeline kingFlashAnimation;
-    private final CastlingRights castlingRights = new CastlingRights();
     private Map<String, Image> pieceImages = new HashMap<>();
-    private Set<Point2D> legalMoveCache = new HashSet<>();
-    private int[] whiteKingPos = new int[2];
-    private int[] blackKingPos = new int[2];
+    // Destinations of the selected piece, one bit per square index (row * 8 + col)
+    private long legalMoveMask = 0;
+    // Legal moves of the side to move, computed in the background after each move
+    private final ExecutorService legalMovePrecomputer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "legal-move-precompute");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile PrecomputedMoves precomputedMoves;
+    // The engine searches off the FX thread so the board keeps taking premoves meanwhile
+    private final ExecutorService aiSearch = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ai-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long positionVersion = 0;
     private boolean boardFlipped = false;
     
-    private StockfishEngine stockfish;
+    private EngineSupervisor stockfish;
+    // The engine while it starts; moved to stockfish once it has started or given up
+    private EngineSupervisor stockfishStarting;
+    private boolean aiMovePending = false;
     private boolean playingAgainstAI = true;
     private boolean aiIsBlack = true;
     private ComboBox<String> difficultyComboBox;
@@ -244,11 +106,40 @@ public class ChessGame extends Application {
     // Arranges nodes 5 distinct regions
     
     private Button flipBoardButton;
+    private Button undoButton;
+    private Button redoButton;
+    private Label historyLabel;
+    private Timeline aiMoveTimer;
+    // Pause before the engine replies; 0 in bullet mode
+    private int aiDelayMillis = 500;
+    // Moves the player queued while the engine was on move, played one per engine reply
+    private final ArrayDeque<Integer> premoves = new ArrayDeque<>();
+    // Start square of the premove being entered, or -1
+    private int premoveRow = -1, premoveCol = -1;
+    private PerformanceOverlay performanceOverlay;
+    private OpeningExplorer openingExplorer;
+    // FEN the current game started from, or null for the standard start position
+    private String startFen;
+    private GameDatabase database;
+    // Null until the last session has been offered for restoring
+    private SessionJournal journal;
+    // Analysis mode: a second engine searching whatever the board shows
+    private CheckBox analysisCheckBox;
+    private EngineAnalysis analysis;
+    private long analysisGeneration;
+    private EvalBar evalBar;
+    private Label bestLineLabel;
+    private AnimationTimer analysisTimer;
+    // Live feed for spectators, started with --broadcast <port>
+    private SpectatorBroadcast broadcast;
 
     @Override
     public void start(Stage primaryStage) {
         primaryStage.setTitle("Chess Game");
-        stockfish = new StockfishEngine();
+        // Spawn the engine and run the UCI handshake while the window comes up
+        stockfishStarting = new EngineSupervisor(StockfishEngine.DEFAULT_PATH);
+        stockfishStarting.startAsync().thenAcceptAsync(this::onEngineReady, Platform::runLater);
+        PerformanceMetrics.registerMBean();
         
         // Get the screen size
         Rectangle2D screenBounds = Screen.getPrimary().getVisualBounds();
@@ -279,8 +170,23 @@ public class ChessGame extends Application {
         // Center the chess board with proper padding
         StackPane centerPane = new StackPane();
         centerPane.setPadding(new Insets(10));
-        centerPane.getChildren().add(chessBoard);
+        // The eval bar and best line only take up room in analysis mode
+        evalBar = new EvalBar(22, SIZE * SQUARE_SIZE + 6);
+        bestLineLabel = new Label();
+        bestLineLabel.setWrapText(true);
+        bestLineLabel.setMaxWidth(SIZE * SQUARE_SIZE);
+        showAnalysisNodes(false);
+        HBox boardRow = new HBox(8, evalBar, chessBoard);
+        boardRow.setAlignment(Pos.CENTER);
+        VBox boardColumn = new VBox(8, boardRow, bestLineLabel);
+        boardColumn.setAlignment(Pos.CENTER);
+        centerPane.getChildren().add(boardColumn);
+        performanceOverlay = new PerformanceOverlay();
+        StackPane.setAlignment(performanceOverlay, Pos.TOP_LEFT);
+        centerPane.getChildren().add(performanceOverlay);
         root.setCenter(centerPane);
+        openingExplorer = new OpeningExplorer(this::loadDatabaseGame);
+        root.setLeft(openingExplorer);
         
         // Configure animation for king in check
         kingFlashAnimation = new Timeline(new KeyFrame(Duration.seconds(0.5), e -> {
@@ -311,7 +217,9 @@ public class ChessGame extends Application {
         CheckBox aiCheckBox = new CheckBox("Play against AI");
         aiCheckBox.setSelected(playingAgainstAI);
         aiCheckBox.setOnAction(e -> playingAgainstAI = aiCheckBox.isSelected());
-        aiBox.getChildren().add(aiCheckBox);
+        analysisCheckBox = new CheckBox("Analysis mode");
+        analysisCheckBox.setOnAction(e -> setAnalysisMode(analysisCheckBox.isSelected()));
+        aiBox.getChildren().addAll(aiCheckBox, analysisCheckBox);
 
         // Second row: AI Difficulty
         HBox difficultyBox = new HBox(10);
@@ -320,16 +228,15 @@ public class ChessGame extends Application {
         difficultyComboBox = new ComboBox<>();
         difficultyComboBox.getItems().addAll("Easy", "Medium", "Hard", "Expert");
         difficultyComboBox.setValue("Medium");
-        difficultyComboBox.setOnAction(e -> {
-            String difficulty = difficultyComboBox.getValue();
-            switch (difficulty) {
-                case "Easy": stockfish.setSearchDepth(1); break;
-                case "Medium": stockfish.setSearchDepth(7); break;
-                case "Hard": stockfish.setSearchDepth(12); break;
-                case "Expert": stockfish.setSearchDepth(20); break;
-            }
+        difficultyComboBox.setOnAction(e -> applyDifficulty());
+        ComboBox<String> delayComboBox = new ComboBox<>();
+        delayComboBox.getItems().addAll("500 ms", "250 ms", "100 ms", "Bullet (none)");
+        delayComboBox.setValue("500 ms");
+        delayComboBox.setOnAction(e -> {
+            String delay = delayComboBox.getValue();
+            aiDelayMillis = delay.endsWith(" ms") ? Integer.parseInt(delay.substring(0, delay.length() - 3)) : 0;
         });
-        difficultyBox.getChildren().addAll(difficultyLabel, difficultyComboBox);
+        difficultyBox.getChildren().addAll(difficultyLabel, difficultyComboBox, new Label("Delay:"), delayComboBox);
 
         // Third row: Player color selection
         HBox colorBox = new HBox(10);
@@ -350,10 +257,33 @@ public class ChessGame extends Application {
         Button resetButton = new Button("New Game");
         resetButton.setPrefWidth(150);
         resetButton.setOnAction(e -> resetGame());
-        resetBox.getChildren().add(resetButton);
+        Button setUpButton = new Button("Set Up FEN");
+        setUpButton.setOnAction(e -> setUpFromFen());
+        resetBox.getChildren().addAll(resetButton, setUpButton);
+
+        // Fifth row: PGN import and export
+        HBox pgnBox = new HBox(10);
+        pgnBox.setAlignment(Pos.CENTER_LEFT);
+        Button loadPgnButton = new Button("Load PGN");
+        loadPgnButton.setOnAction(e -> loadPgn(primaryStage));
+        Button savePgnButton = new Button("Save PGN");
+        savePgnButton.setOnAction(e -> savePgn(primaryStage));
+        Button openDatabaseButton = new Button("Open Database");
+        openDatabaseButton.setOnAction(e -> loadFromDatabase(primaryStage));
+        pgnBox.getChildren().addAll(loadPgnButton, savePgnButton, openDatabaseButton);
+
+        // Sixth row: move history (also Left/Right, Home/End and Ctrl+Z/Ctrl+Y)
+        HBox historyBox = new HBox(10);
+        historyBox.setAlignment(Pos.CENTER_LEFT);
+        undoButton = new Button("Undo");
+        undoButton.setOnAction(e -> stepBack());
+        redoButton = new Button("Redo");
+        redoButton.setOnAction(e -> stepForward());
+        historyLabel = new Label();
+        historyBox.getChildren().addAll(undoButton, redoButton, historyLabel);
 
         // Add all rows to the game settings section
-        gameSettingsBox.getChildren().addAll(aiBox, difficultyBox, colorBox, resetBox);
+        gameSettingsBox.getChildren().addAll(aiBox, difficultyBox, colorBox, resetBox, pgnBox, historyBox);
 
         // Theme Settings Section
         Label themeSettingsLabel = new Label("Theme Settings");
@@ -392,12 +322,21 @@ public class ChessGame extends Application {
         flipBoardButton.setPrefWidth(150);
         flipBoardButton.setOnAction(e -> {
             boardFlipped = !boardFlipped;
+            evalBar.setFlipped(boardFlipped);
             chessBoard.draw();
         });
         flipBoardBox.getChildren().add(flipBoardButton);
 
+        // Fourth row: Performance overlay button (also bound to F3)
+        HBox overlayBox = new HBox(10);
+        overlayBox.setAlignment(Pos.CENTER_LEFT);
+        Button overlayButton = new Button("Performance Overlay");
+        overlayButton.setPrefWidth(150);
+        overlayButton.setOnAction(e -> performanceOverlay.toggle());
+        overlayBox.getChildren().add(overlayButton);
+
         // Add all rows to the theme settings section
-        themeSettingsBox.getChildren().addAll(themeBox, darkModeBox, flipBoardBox);
+        themeSettingsBox.getChildren().addAll(themeBox, darkModeBox, flipBoardBox, overlayBox);
 
         // Add all sections to the control panel with spacing
         controlPanel.getChildren().addAll(
@@ -410,36 +349,175 @@ public class ChessGame extends Application {
 
         // Create scene with appropriate size
         Scene scene = new Scene(root, screenWidth * 0.95, screenHeight * 0.95);
+        // FPS counts the pulses that render the scene, not board repaints, which only
+        // happen when the position or the highlights change
+        scene.addPostLayoutPulseListener(PerformanceMetrics.get()::recordPulse);
+        scene.addEventHandler(KeyEvent.KEY_PRESSED, e -> {
+            if (e.getCode() == KeyCode.F3) performanceOverlay.toggle();
+        });
+        // A filter, so arrow keys step through the game before focus traversal takes them
+        scene.addEventFilter(KeyEvent.KEY_PRESSED, e -> {
+            Node focused = scene.getFocusOwner();
+            if (focused instanceof TextInputControl || focused instanceof ComboBox) return;
+            if (e.getCode() == KeyCode.LEFT || (e.isShortcutDown() && e.getCode() == KeyCode.Z)) {
+                stepBack();
+            } else if (e.getCode() == KeyCode.RIGHT || (e.isShortcutDown() && e.getCode() == KeyCode.Y)) {
+                stepForward();
+            } else if (e.getCode() == KeyCode.HOME) {
+                navigateHistory(0, 1);
+            } else if (e.getCode() == KeyCode.END) {
+                navigateHistory(history.size(), 1);
+            } else {
+                return;
+            }
+            e.consume();
+        });
         primaryStage.setScene(scene);
         
         primaryStage.setMaximized(true);
 
         applyTheme(false);
+        startBroadcast(getParameters().getRaw());
         initializeBoard();
-        initializePieceImages();
-        chessBoard.draw();
         if (playingAgainstAI && !aiIsBlack) {
             makeAIMove();
         }
         primaryStage.show();
+
+        // Piece images are only a cache; the board draws glyphs directly until they exist
+        boolean exitAfterFirstFrame = getParameters().getRaw().contains("--exit-after-first-frame");
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                stop();
+                onFirstFrame(exitAfterFirstFrame);
+            }
+        }.start();
+    }
+
+    private void startBroadcast(List<String> args) {
+        int index = args.indexOf("--broadcast");
+        if (index < 0 || index + 1 >= args.size()) return;
+        try {
+            SpectatorBroadcast started = new SpectatorBroadcast();
+            started.listen(new InetSocketAddress(Integer.parseInt(args.get(index + 1))));
+            broadcast = started;
+        } catch (IOException | NumberFormatException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void onFirstFrame(boolean exitAfterFirstFrame) {
+        long startupMillis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        PerformanceMetrics.get().recordTimeToFirstFrame(startupMillis);
+        if (exitAfterFirstFrame) {
+            // Used for timing launches and for AppCDS training runs
+            System.out.println("Time to first frame: " + startupMillis + " ms");
+            Platform.exit();
+            return;
+        }
+        Platform.runLater(() -> {
+            initializePieceImages();
+            chessBoard.draw();
+            offerSessionRestore();
+        });
+    }
+
+    // Offers to bring back the game from the journal of the previous run, then starts journaling
+    private void offerSessionRestore() {
+        Path journalPath = SessionJournal.defaultPath();
+        SessionJournal.State last = null;
+        try {
+            last = SessionJournal.read(journalPath);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (last != null && !last.isEmpty()) {
+            Alert alert = new Alert(Alert.AlertType.CONFIRMATION,
+                "Restore the game from your last session (" + last.moves.size() + " plies)?",
+                ButtonType.YES, ButtonType.NO);
+            alert.setTitle("Chess Game");
+            alert.setHeaderText(null);
+            Optional<ButtonType> answer = alert.showAndWait();
+            if (answer.isPresent() && answer.get() == ButtonType.YES) restoreSession(last);
+        }
+        try {
+            journal = SessionJournal.open(journalPath, SessionJournal.State.of(startFen, history));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void restoreSession(SessionJournal.State state) {
+        long start = System.nanoTime();
+        ChessPosition setUp = new ChessPosition();
+        try {
+            if (state.startFen == null) setUp.setupInitial();
+            else Fen.load(state.startFen, setUp);
+        } catch (IllegalArgumentException e) {
+            showErrorDialog("Could not restore the last session: " + e.getMessage());
+            return;
+        }
+        position.copyFrom(setUp);
+        startFen = state.startFen;
+        history.clear();
+        for (int i = 0; i < state.moves.size(); i++) {
+            if (!history.play(position, state.moves.get(i))) break;
+        }
+        history.goTo(position, state.current);
+        PerformanceMetrics.get().recordSessionRestore(System.nanoTime() - start);
+        onGameLoaded();
+    }
+
+    // The engine has started, or failed to with the supervisor's retries; each search then
+    // starts it again if need be
+    private void onEngineReady(EngineSupervisor engine) {
+        stockfish = engine;
+        stockfishStarting = null;
+        if (engine.lastError() != null) statusLabel.setText("Engine not available: " + engine.lastError());
+        applyDifficulty();
+        if (aiMovePending) {
+            aiMovePending = false;
+            if (playingAgainstAI && ((position.whiteTurn && !aiIsBlack) || (!position.whiteTurn && aiIsBlack))) {
+                makeAIMove();
+            }
+        }
+    }
+
+    private void applyDifficulty() {
+        if (stockfish == null) return;
+        switch (difficultyComboBox.getValue()) {
+            case "Easy": stockfish.setSearchDepth(1); break;
+            case "Medium": stockfish.setSearchDepth(7); break;
+            case "Hard": stockfish.setSearchDepth(12); break;
+            case "Expert": stockfish.setSearchDepth(20); break;
+        }
     }
 
     private void applyTheme(boolean darkMode) {
         if (darkMode) {
             root.setStyle("-fx-background-color: #1A1A2E;");
             statusLabel.setStyle("-fx-text-fill: #E0E0E0; -fx-font-size: 20pt;");
+            bestLineLabel.setStyle("-fx-text-fill: #E0E0E0; -fx-font-size: 12pt;");
             VBox rightPanel = (VBox) root.getRight();
             for (Node node : rightPanel.getChildren()) {
                 applyNodeStyle(node, true);
             }
+            for (Node node : openingExplorer.getChildren()) {
+                applyNodeStyle(node, true);
+            }
             darkModeButton.setText("Toggle Light Mode");
         } else {
             root.setStyle("-fx-background-color: #F5F5F5;");
             statusLabel.setStyle("-fx-text-fill: black; -fx-font-size: 20pt;");
+            bestLineLabel.setStyle("-fx-text-fill: black; -fx-font-size: 12pt;");
             VBox rightPanel = (VBox) root.getRight();
             for (Node node : rightPanel.getChildren()) {
                 applyNodeStyle(node, false);
             }
+            for (Node node : openingExplorer.getChildren()) {
+                applyNodeStyle(node, false);
+            }
             darkModeButton.setText("Toggle Dark Mode");
         }
     }
@@ -496,364 +574,605 @@ public class ChessGame extends Application {
     }
 
     private void initializeBoard() {
-        placePieces(0, 1, Color.BLACK);
-        placePieces(7, 6, Color.WHITE);
-        whiteKingPos[0] = 7;
-        whiteKingPos[1] = 4;
-        blackKingPos[0] = 0;
-        blackKingPos[1] = 4;
+        position.setupInitial();
+        startFen = null;
+        history.clear();
+        if (journal != null) journal.gameStarted(null, history);
+        if (broadcast != null) broadcast.positionSet(position, history.current());
+        onPositionChanged();
         chessBoard.draw();
     }
 
     private void initializePieceImages() {
-        for (Color color : new Color[]{Color.WHITE, Color.BLACK}) {
-            String colorName = (color == Color.WHITE) ? "White" : "Black";
-            renderPieceToImage(new Pawn(0, 0, color), "Pawn" + colorName);
-            renderPieceToImage(new Rook(0, 0, color), "Rook" + colorName);
-            renderPieceToImage(new Knight(0, 0, color), "Knight" + colorName);
-            renderPieceToImage(new Bishop(0, 0, color), "Bishop" + colorName);
-            renderPieceToImage(new Queen(0, 0, color), "Queen" + colorName);
-            renderPieceToImage(new King(0, 0, color), "King" + colorName);
-        }
-    }
-
-    private void renderPieceToImage(ChessPiece piece, String key) {
-        Canvas canvas = new Canvas(SQUARE_SIZE, SQUARE_SIZE);
-        GraphicsContext gc = canvas.getGraphicsContext2D();
+        // Draw all twelve glyphs onto one sheet so only a single snapshot is taken
+        String[] names = {"Pawn", "Rook", "Knight", "Bishop", "Queen", "King"};
+        Canvas sheet = new Canvas(SQUARE_SIZE * names.length, SQUARE_SIZE * 2);
+        GraphicsContext sheetGc = sheet.getGraphicsContext2D();
         double scaleFactor = SQUARE_SIZE / 50.0;
-        gc.save();
-        gc.scale(scaleFactor, scaleFactor);
-        piece.draw(gc, 0, 0);
-        gc.restore();
-        SnapshotParameters params = new SnapshotParameters();
-        params.setFill(Color.TRANSPARENT);
-        WritableImage image = canvas.snapshot(params, null);
-        pieceImages.put(key, image);
-    }
-
-    private void placePieces(int backRow, int pawnRow, Color color) {
-        for (int i = 0; i < SIZE; i++) board[pawnRow][i] = new Pawn(pawnRow, i, color);
-        board[backRow][0] = new Rook(backRow, 0, color);
-        board[backRow][7] = new Rook(backRow, 7, color);
-        board[backRow][1] = new Knight(backRow, 1, color);
-        board[backRow][6] = new Knight(backRow, 6, color);
-        board[backRow][2] = new Bishop(backRow, 2, color);
-        board[backRow][5] = new Bishop(backRow, 5, color);
-        board[backRow][3] = new Queen(backRow, 3, color);
-        board[backRow][4] = new King(backRow, 4, color);
-    }
-
-    private boolean isPathClear(int startRow, int startCol, int endRow, int endCol) {
-        int rowStep = Integer.compare(endRow, startRow);
-        int colStep = Integer.compare(endCol, startCol);
-        int currentRow = startRow + rowStep;
-        int currentCol = startCol + colStep;
-        while (currentRow != endRow || currentCol != endCol) {
-            if (board[currentRow][currentCol] != null) return false;
-            currentRow += rowStep;
-            currentCol += colStep;
-        }
-        return true;
-    }
-
-    private boolean isKingInCheck(Color kingColor) {
-        int[] kingPos = (kingColor == Color.WHITE) ? whiteKingPos : blackKingPos;
-        for (int r = 0; r < SIZE; r++) {
-            for (int c = 0; c < SIZE; c++) {
-                if (board[r][c] != null && board[r][c].color != kingColor) {
-                    if (isValidMoveWithoutCheckTest(r, c, kingPos[0], kingPos[1])) return true;
-                }
+        sheetGc.save();
+        sheetGc.scale(scaleFactor, scaleFactor);
+        Color[] colors = {Color.WHITE, Color.BLACK};
+        for (int sheetRow = 0; sheetRow < colors.length; sheetRow++) {
+            for (int sheetCol = 0; sheetCol < names.length; sheetCol++) {
+                char symbol = "prnbqk".charAt(sheetCol);
+                ChessPiece piece = Fen.createPiece(sheetRow == 0 ? Character.toUpperCase(symbol) : symbol, 0, 0);
+                piece.draw(sheetGc, sheetCol * 50, sheetRow * 50);
             }
         }
-        return false;
-    }
-
-    private void updateKingPosition(Color color, int row, int col) {
-        if (color == Color.WHITE) {
-            whiteKingPos[0] = row;
-            whiteKingPos[1] = col;
-        } else {
-            blackKingPos[0] = row;
-            blackKingPos[1] = col;
-        }
-    }
-
-    private boolean isValidMoveWithoutCheckTest(int startRow, int startCol, int endRow, int endCol) {
-        ChessPiece piece = board[startRow][startCol];
-        if (piece == null) return false;
-        if (board[endRow][endCol] != null && board[endRow][endCol].color == piece.color) return false;
-        if (piece instanceof Pawn) {
-            int direction = (piece.color == Color.WHITE) ? -1 : 1;
-            int startRank = (piece.color == Color.WHITE) ? 6 : 1;
-            if (startCol == endCol) {
-                if (board[endRow][endCol] != null) return false;
-                if (startRow == startRank && endRow == startRow + 2 * direction) {
-                    return board[startRow + direction][startCol] == null;
-                }
-                return endRow == startRow + direction;
-            } else if (Math.abs(startCol - endCol) == 1) {
-                return endRow == startRow + direction && 
-                      board[endRow][endCol] != null && 
-                      board[endRow][endCol].color != piece.color;
+        sheetGc.restore();
+        SnapshotParameters params = new SnapshotParameters();
+        params.setFill(Color.TRANSPARENT);
+        PixelReader reader = sheet.snapshot(params, null).getPixelReader();
+        for (int sheetRow = 0; sheetRow < colors.length; sheetRow++) {
+            String colorName = (colors[sheetRow] == Color.WHITE) ? "White" : "Black";
+            for (int sheetCol = 0; sheetCol < names.length; sheetCol++) {
+                pieceImages.put(names[sheetCol] + colorName, new WritableImage(reader,
+                    sheetCol * SQUARE_SIZE, sheetRow * SQUARE_SIZE, SQUARE_SIZE, SQUARE_SIZE));
             }
-            return false;
-        }
-        if (!piece.isValidMove(endRow, endCol)) return false;
-        if (piece instanceof Rook || piece instanceof Bishop || piece instanceof Queen) {
-            return isPathClear(startRow, startCol, endRow, endCol);
-        }
-        return true;
-    }
-
-    private boolean canCastle(int startRow, int startCol, int endRow, int endCol) {
-        ChessPiece king = board[startRow][startCol];
-        if (!(king instanceof King)) return false;
-        boolean isWhite = king.color == Color.WHITE;
-        int homeRow = isWhite ? 7 : 0;
-        if (startRow != homeRow || startCol != 4 || endRow != homeRow || Math.abs(endCol - startCol) != 2) return false;
-        if (!castlingRights.canCastle(king.color, endCol == 6)) return false;
-        if ((isWhite && whiteKingInCheck) || (!isWhite && blackKingInCheck)) return false;
-        int rookCol = (endCol == 2) ? 0 : 7;
-        ChessPiece rook = board[homeRow][rookCol];
-        if (rook == null || !(rook instanceof Rook) || rook.color != king.color) return false;
-        return isPathClear(startRow, startCol, startRow, rookCol);
-    }
-
-    private ChessPiece createPromotionPiece(char type, int row, int col, Color color) {
-        switch (Character.toLowerCase(type)) {
-            case 'q': return new Queen(row, col, color);
-            case 'r': return new Rook(row, col, color);
-            case 'b': return new Bishop(row, col, color);
-            case 'n': return new Knight(row, col, color);
-            default: return new Queen(row, col, color);
         }
     }
 
     private void resetGame() {
-        board = new ChessPiece[SIZE][SIZE];
+        cancelAIMove();
         initializeBoard();
-        whiteTurn = true;
         selectedRow = selectedCol = -1;
-        legalMoveCache.clear();
+        legalMoveMask = 0;
         whiteKingInCheck = blackKingInCheck = false;
-        castlingRights.reset();
         if (playingAgainstAI && !aiIsBlack) {
             makeAIMove();
         }
-        updateCheckStatus();
+        updateCheckStatus(true);
         chessBoard.draw();
     }
 
     @Override
     public void stop() throws Exception {
-        if (stockfish != null) {
-            stockfish.close();
+        legalMovePrecomputer.shutdownNow();
+        aiSearch.shutdownNow();
+        closeDatabase(database);
+        if (analysis != null) analysis.close();
+        if (broadcast != null) broadcast.close();
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
+        // close() is not synchronized, so it also ends a start still in progress
+        if (stockfish != null) stockfish.close();
+        if (stockfishStarting != null) stockfishStarting.close();
         super.stop();
     }
 
     private void makeAIMove() {
-        String fen = stockfish.boardToFEN(board, whiteTurn, castlingRights);
-        String bestMove = stockfish.getBestMove(fen);
-        if (bestMove != null && bestMove.length() >= 4) {
+        if (stockfish == null) {
+            // The engine is still starting; onEngineReady replays the request
+            aiMovePending = true;
+            return;
+        }
+        long version = positionVersion;
+        ChessPosition snapshot = position.copy();
+        EngineSupervisor engine = stockfish;
+        CompletableFuture.supplyAsync(() -> engine.getBestMove(snapshot), aiSearch)
+            .thenAcceptAsync(bestMove -> applyAIMove(version, bestMove), Platform::runLater);
+    }
+
+    // Plays the engine's reply, then the first premove in the same frame. A reply to a position
+    // the board has since left (undo, new game, ...) is dropped.
+    private void applyAIMove(long version, String bestMove) {
+        if (version != positionVersion || !isAITurn()) return;
+        if (bestMove == null) {
+            // The supervisor has already restarted the engine and retried
+            statusLabel.setText("Engine not responding: " + stockfish.lastError());
+            return;
+        }
+        if (bestMove.length() >= 4) {
             int startCol = bestMove.charAt(0) - 'a';
             int startRow = 8 - Character.getNumericValue(bestMove.charAt(1));
             int endCol = bestMove.charAt(2) - 'a';
             int endRow = 8 - Character.getNumericValue(bestMove.charAt(3));
             char promotionPiece = (bestMove.length() >= 5) ? bestMove.charAt(4) : ' ';
-            movePiece(startRow, startCol, endRow, endCol, promotionPiece);
-            updateCheckStatus();
+            if (movePiece(startRow, startCol, endRow, endCol, promotionPiece)) playPremove();
+            updateCheckStatus(true);
             chessBoard.draw();
         }
     }
 
+    // Plays the oldest premove if it is legal now; if not, the rest of the queue was planned
+    // around it and is dropped too. Premoved promotions are to a queen.
+    private void playPremove() {
+        if (premoves.isEmpty() || isAITurn()) return;
+        int move = premoves.poll();
+        int fromRow = Move.fromRow(move);
+        int fromCol = Move.fromCol(move);
+        ChessPiece piece = position.board[fromRow][fromCol];
+        boolean legal = piece != null && (piece.color == Color.WHITE) == position.whiteTurn
+            && (position.legalMoveMask(fromRow, fromCol) & 1L << Move.to(move)) != 0;
+        if (!legal || !movePiece(fromRow, fromCol, Move.toRow(move), Move.toCol(move), Move.promotion(move))) {
+            premoves.clear();
+            premoveRow = premoveCol = -1;
+        }
+    }
+
+    // While the engine is on move, clicks enter premoves: a piece of the player's, then a
+    // destination. Pieces are found on the board as the queued premoves would leave it; a
+    // click on anything else clears the queue.
+    private void enterPremove(int row, int col) {
+        ChessPiece[][] board = premoveBoard();
+        Color player = aiIsBlack ? Color.WHITE : Color.BLACK;
+        if (premoveRow < 0) {
+            if (board[row][col] != null && board[row][col].color == player) {
+                premoveRow = row;
+                premoveCol = col;
+            } else {
+                premoves.clear();
+            }
+        } else {
+            if (row != premoveRow || col != premoveCol) {
+                boolean promotes = board[premoveRow][premoveCol] instanceof Pawn && (row == 0 || row == 7);
+                premoves.add(Move.encode(premoveRow, premoveCol, row, col, promotes ? 'q' : ' '));
+            }
+            premoveRow = premoveCol = -1;
+        }
+        chessBoard.draw();
+    }
+
+    private ChessPiece[][] premoveBoard() {
+        ChessPiece[][] board = new ChessPiece[SIZE][];
+        for (int row = 0; row < SIZE; row++) board[row] = position.board[row].clone();
+        for (int move : premoves) {
+            board[Move.toRow(move)][Move.toCol(move)] = board[Move.fromRow(move)][Move.fromCol(move)];
+            board[Move.fromRow(move)][Move.fromCol(move)] = null;
+        }
+        return board;
+    }
+
+    // Squares of the queued premoves and of the one being entered, one bit per square index
+    private long premoveSquares() {
+        long squares = premoveRow < 0 ? 0 : 1L << (premoveRow * SIZE + premoveCol);
+        for (int move : premoves) squares |= 1L << Move.from(move) | 1L << Move.to(move);
+        return squares;
+    }
+
+    // Stops a scheduled engine move and drops the premoves; a search already running is
+    // ignored when it returns, since the position version will have moved on
+    private void cancelAIMove() {
+        if (aiMoveTimer != null) aiMoveTimer.stop();
+        premoves.clear();
+        premoveRow = premoveCol = -1;
+    }
+
     private boolean movePiece(int startRow, int startCol, int endRow, int endCol, char promotionType) {
-        ChessPiece piece = board[startRow][startCol];
-        if (piece == null) return false;
-        boolean isWhitePiece = piece.color == Color.WHITE;
-        if ((whiteTurn && !isWhitePiece) || (!whiteTurn && isWhitePiece)) return false;
-        
-        if (piece instanceof King && Math.abs(startCol - endCol) == 2) {
-            if (!canCastle(startRow, startCol, endRow, endCol)) return false;
-            board[endRow][endCol] = board[startRow][startCol];
-            board[startRow][startCol] = null;
-            board[endRow][endCol].row = endRow;
-            board[endRow][endCol].col = endCol;
-            int rookStartCol = (endCol == 2) ? 0 : 7;
-            int rookEndCol = (endCol == 2) ? 3 : 5;
-            board[endRow][rookEndCol] = board[endRow][rookStartCol];
-            board[endRow][rookStartCol] = null;
-            board[endRow][rookEndCol].row = endRow;
-            board[endRow][rookEndCol].col = rookEndCol;
-            updateKingPosition(piece.color, endRow, endCol);
-            castlingRights.markKingMoved(piece.color);
-            castlingRights.markRookMoved(piece.color, rookStartCol == 0);
-            switchTurn();
-            return true;
+        MoveGenerationEvent event = new MoveGenerationEvent();
+        if (event.isEnabled()) event.positionHash = positionHash();
+        event.begin();
+        boolean promotes = position.board[startRow][startCol] instanceof Pawn && (endRow == 0 || endRow == 7);
+        int move = Move.encode(startRow, startCol, endRow, endCol,
+                               promotes ? (promotionType == ' ' ? 'q' : promotionType) : ' ');
+        boolean moved = history.play(position, move);
+        event.end();
+        if (moved && journal != null) journal.movePlayed(move);
+        if (moved && broadcast != null) broadcast.movePlayed(position, history.current(), move);
+        if (event.shouldCommit()) {
+            event.operation = MoveGenerationEvent.VALIDATE_MOVE;
+            event.square = squareName(startRow, startCol);
+            event.result = moved;
+            event.commit();
         }
-        
-        if (!isValidMoveWithoutCheckTest(startRow, startCol, endRow, endCol)) return false;
-        
-        ChessPiece capturedPiece = board[endRow][endCol];
-        board[endRow][endCol] = piece;
-        board[startRow][startCol] = null;
-        piece.row = endRow;
-        piece.col = endCol;
-        
-        boolean isKing = piece instanceof King;
-        int[] originalKingPos = null;
-        if (isKing) {
-            originalKingPos = isWhitePiece ? whiteKingPos.clone() : blackKingPos.clone();
-            updateKingPosition(piece.color, endRow, endCol);
+        if (moved) {
+            onPositionChanged();
+            switchTurn();
         }
-        
-        boolean kingInCheck = isKingInCheck(piece.color);
-        if (kingInCheck) {
-            board[startRow][startCol] = piece;
-            board[endRow][endCol] = capturedPiece;
-            piece.row = startRow;
-            piece.col = startCol;
-            if (isKing) {
-                if (isWhitePiece) whiteKingPos = originalKingPos;
-                else blackKingPos = originalKingPos;
+        return moved;
+    }
+
+    private FileChooser pgnFileChooser(String title) {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle(title);
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("PGN files", "*.pgn"));
+        return chooser;
+    }
+
+    // Replaces the current game with the first game in a PGN file
+    private void loadPgn(Stage stage) {
+        File file = pgnFileChooser("Load PGN").showOpenDialog(stage);
+        if (file == null) return;
+        PgnGame game;
+        try (PgnReader reader = PgnReader.open(file.toPath())) {
+            if (!reader.hasNext()) {
+                showErrorDialog("No games found in " + file.getName());
+                return;
             }
-            return false;
+            game = reader.next();
+        } catch (IOException | UncheckedIOException e) {
+            showErrorDialog("Could not read " + file.getName() + ": " + e.getMessage());
+            return;
         }
-        
-        if (piece instanceof King) {
-            castlingRights.markKingMoved(piece.color);
-        } else if (piece instanceof Rook) {
-            if (startRow == (isWhitePiece ? 7 : 0)) {
-                castlingRights.markRookMoved(piece.color, startCol == 0);
-            }
+        try {
+            position.copyFrom(game.startPosition());
+        } catch (IllegalArgumentException e) {
+            showErrorDialog(e.getMessage());
+            return;
         }
-        
-        if (piece instanceof Pawn && (endRow == 0 || endRow == 7)) {
-            if (promotionType != ' ') {
-                board[endRow][endCol] = createPromotionPiece(promotionType, endRow, endCol, piece.color);
-            } else {
-                board[endRow][endCol] = new Queen(endRow, endCol, piece.color);
-            }
+        startFen = game.getTag("FEN");
+        history.clear();
+        for (int i = 0; i < game.moves.size(); i++) history.play(position, game.moves.get(i));
+        onGameLoaded();
+        if (game.hasError()) {
+            showErrorDialog("Loaded the first " + game.moves.size() + " moves only. " + game.error);
         }
-        
+    }
+
+    // Starts a new game from a position typed or pasted in as FEN
+    private void setUpFromFen() {
+        TextInputDialog dialog = new TextInputDialog(Fen.toFen(position));
+        dialog.setTitle("Set Up FEN");
+        dialog.setHeaderText("Enter a position in Forsyth-Edwards Notation");
+        dialog.setContentText("FEN:");
+        dialog.getEditor().setPrefColumnCount(40);
+        Optional<String> answer = dialog.showAndWait();
+        if (!answer.isPresent()) return;
+        String fen = answer.get().trim();
+        ChessPosition setUp = new ChessPosition();
+        try {
+            Fen.load(fen, setUp);
+        } catch (IllegalArgumentException e) {
+            showErrorDialog(e.getMessage());
+            return;
+        }
+        position.copyFrom(setUp);
+        startFen = Fen.toFen(setUp);
+        history.clear();
+        onGameLoaded();
+    }
+
+    // Opens a binary game database for the opening explorer and loads one of its games
+    private void loadFromDatabase(Stage stage) {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Open Database");
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Game databases", "*.chessdb"));
+        File file = chooser.showOpenDialog(stage);
+        if (file == null) return;
+        GameDatabase opened;
+        try {
+            opened = GameDatabase.open(file.toPath());
+        } catch (IOException e) {
+            showErrorDialog("Could not read " + file.getName() + ": " + e.getMessage());
+            return;
+        }
+        if (opened.size() == 0) {
+            closeDatabase(opened);
+            showErrorDialog("No games found in " + file.getName());
+            return;
+        }
+        closeDatabase(database);
+        database = opened;
+        openingExplorer.setDatabase(opened);
+        CompletableFuture
+            .supplyAsync(() -> PositionIndex.loadOrBuild(file.toPath(), opened, PositionIndex.DEFAULT_MAX_PLY))
+            .whenCompleteAsync((index, error) -> {
+                if (error != null) {
+                    error.printStackTrace();
+                    openingExplorer.setStatus("Could not index " + file.getName() + ": " + error.getMessage());
+                } else {
+                    openingExplorer.setIndex(opened, index);
+                    openingExplorer.show(position, positionHash());
+                }
+            }, Platform::runLater);
+
+        TextInputDialog dialog = new TextInputDialog("1");
+        dialog.setTitle("Open Database");
+        dialog.setHeaderText(file.getName() + " holds " + opened.size() + " games");
+        dialog.setContentText("Game number:");
+        Optional<String> answer = dialog.showAndWait();
+        if (!answer.isPresent()) return;
+        int id;
+        try {
+            id = Integer.parseInt(answer.get().trim()) - 1;
+        } catch (NumberFormatException e) {
+            id = -1;
+        }
+        if (id < 0 || id >= opened.size()) {
+            showErrorDialog("Enter a game number from 1 to " + opened.size());
+            return;
+        }
+        loadDatabaseGame(id);
+    }
+
+    // Replaces the current game with game id of the open database
+    private void loadDatabaseGame(int id) {
+        try {
+            // Check the whole game first so a damaged record leaves the current game alone
+            database.replayInto(id, new ChessPosition());
+        } catch (IllegalStateException e) {
+            showErrorDialog(e.getMessage());
+            return;
+        }
+        position.setupInitial();
+        startFen = null;
+        history.clear();
+        for (int ply = 0; ply < database.plyCount(id); ply++) history.play(position, database.move(id, ply));
+        onGameLoaded();
+    }
+
+    private static void closeDatabase(GameDatabase database) {
+        if (database == null) return;
+        try {
+            database.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void onGameLoaded() {
+        // Nothing scheduled or queued for the old game may run on the new one
+        cancelAIMove();
+        if (journal != null) journal.gameStarted(startFen, history);
+        if (broadcast != null) broadcast.positionSet(position, history.current());
+        selectedRow = selectedCol = -1;
+        legalMoveMask = 0;
+        onPositionChanged();
         switchTurn();
-        return true;
+        updateCheckStatus(false);
+        chessBoard.draw();
     }
 
+    private void savePgn(Stage stage) {
+        FileChooser chooser = pgnFileChooser("Save PGN");
+        chooser.setInitialFileName("game.pgn");
+        File file = chooser.showSaveDialog(stage);
+        if (file == null) return;
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("Event", "Casual Game");
+        tags.put("Site", "JavaFX Chess");
+        tags.put("Date", LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy.MM.dd")));
+        tags.put("White", playingAgainstAI && !aiIsBlack ? "Stockfish" : "Human");
+        tags.put("Black", playingAgainstAI && aiIsBlack ? "Stockfish" : "Human");
+        if (startFen != null) {
+            tags.put("SetUp", "1");
+            tags.put("FEN", startFen);
+        }
+        try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            PgnWriter.write(out, tags, history.playedMoves(), currentResult());
+        } catch (IOException e) {
+            showErrorDialog("Could not write " + file.getName() + ": " + e.getMessage());
+        }
+    }
+
+    private String currentResult() {
+        Color side = position.whiteTurn ? Color.WHITE : Color.BLACK;
+        if (position.isCheckmate(side)) return position.whiteTurn ? "0-1" : "1-0";
+        if (position.isStalemate(side) || position.drawReason() != null) return "1/2-1/2";
+        return "*";
+    }
+
+    private void showErrorDialog(String message) {
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle("Chess Game");
+        alert.setHeaderText(null);
+        alert.setContentText(message);
+        alert.showAndWait();
+    }
+
+    // Invalidates move lookups for the old position and starts computing the new one's
+    private void onPositionChanged() {
+        long version = ++positionVersion;
+        ChessPosition snapshot = position.copy();
+        legalMovePrecomputer.execute(() -> {
+            long start = System.nanoTime();
+            precomputedMoves = new PrecomputedMoves(version, snapshot);
+            PerformanceMetrics.get().recordMoveGeneration(System.nanoTime() - start);
+        });
+        openingExplorer.show(position, positionHash());
+        if (analysis != null) analysisGeneration = analysis.analyze(position);
+        updateHistoryControls();
+    }
+
+    // Starts or stops background analysis. The engine starts and stops off the FX thread; its
+    // results reach the eval bar through analysisTimer, at most once per frame.
+    private void setAnalysisMode(boolean enabled) {
+        showAnalysisNodes(enabled);
+        if (!enabled) {
+            if (analysisTimer != null) analysisTimer.stop();
+            if (analysis != null) {
+                EngineAnalysis stopped = analysis;
+                CompletableFuture.runAsync(stopped::close);
+                analysis = null;
+            }
+            evalBar.clear();
+            return;
+        }
+        if (analysis != null) return;
+        bestLineLabel.setText("Starting analysis engine...");
+        EngineSupervisor starter = new EngineSupervisor(StockfishEngine.DEFAULT_PATH);
+        CompletableFuture.supplyAsync(starter::start).thenAcceptAsync(engine -> {
+            if (engine == null) {
+                bestLineLabel.setText("Analysis engine not available: " + starter.lastError());
+                return;
+            }
+            if (!analysisCheckBox.isSelected() || analysis != null) {
+                // Switched off (or on again) while this engine was starting
+                CompletableFuture.runAsync(engine::close);
+                return;
+            }
+            analysis = new EngineAnalysis(engine);
+            analysisGeneration = analysis.analyze(position);
+            if (analysisTimer == null) {
+                analysisTimer = new AnimationTimer() {
+                    @Override
+                    public void handle(long now) {
+                        showAnalysis();
+                    }
+                };
+            }
+            analysisTimer.start();
+        }, Platform::runLater);
+    }
+
+    private void showAnalysis() {
+        EngineAnalysis.Info info = analysis == null ? null : analysis.poll();
+        // Lines still arriving for a position the board has left are skipped
+        if (info == null || info.generation < analysisGeneration) return;
+        evalBar.show(info);
+        bestLineLabel.setText(info.scoreText() + "   depth " + info.depth + "   " + info.bestLine);
+    }
+
+    private void showAnalysisNodes(boolean visible) {
+        evalBar.setVisible(visible);
+        evalBar.setManaged(visible);
+        bestLineLabel.setVisible(visible);
+        bestLineLabel.setManaged(visible);
+    }
+
+    // Called after the position has flipped the side to move
     private void switchTurn() {
-        whiteTurn = !whiteTurn;
+        boolean whiteTurn = position.whiteTurn;
         statusLabel.setText(whiteTurn ? "White's turn" : "Black's turn");
         if (playingAgainstAI && 
             ((whiteTurn && !aiIsBlack) || (!whiteTurn && aiIsBlack))) {
-            Timeline timeline = new Timeline(new KeyFrame(
-                Duration.millis(500),
-                ae -> makeAIMove()));
-            timeline.play();
+            if (aiDelayMillis == 0) {
+                makeAIMove();
+            } else {
+                aiMoveTimer = new Timeline(new KeyFrame(
+                    Duration.millis(aiDelayMillis),
+                    ae -> makeAIMove()));
+                aiMoveTimer.play();
+            }
+        }
+    }
+
+    private boolean isAITurn() {
+        return playingAgainstAI && position.whiteTurn != aiIsBlack;
+    }
+
+    private void stepBack() {
+        navigateHistory(history.current() - 1, -1);
+    }
+
+    private void stepForward() {
+        navigateHistory(history.current() + 1, 1);
+    }
+
+    // Moves the board to the given ply by undoing or redoing moves. Against the engine it goes
+    // one ply further in the same direction if that leaves the engine on move, so the player
+    // always lands on their own turn.
+    private void navigateHistory(int ply, int direction) {
+        cancelAIMove();
+        history.goTo(position, Math.max(0, Math.min(ply, history.size())));
+        if (isAITurn()) {
+            if (direction < 0) history.undo(position);
+            else history.redo(position);
         }
+        if (journal != null) journal.wentTo(history.current());
+        if (broadcast != null) broadcast.positionSet(position, history.current());
+        selectedRow = selectedCol = -1;
+        legalMoveMask = 0;
+        onPositionChanged();
+        if (history.canRedo()) {
+            statusLabel.setText(position.whiteTurn ? "White's turn" : "Black's turn");
+        } else {
+            // Back at the end of the game: the engine resumes if it is on move
+            switchTurn();
+        }
+        updateCheckStatus(false);
+        chessBoard.draw();
+    }
+
+    private void updateHistoryControls() {
+        undoButton.setDisable(!history.canUndo());
+        redoButton.setDisable(!history.canRedo());
+        // The maintained material and piece-square score, as an instant hint without an engine
+        historyLabel.setText(String.format("Ply %d / %d   Eval %+.2f", history.current(), history.size(),
+                                           position.staticEval() / 100.0));
     }
 
-    private void updateCheckStatus() {
-        whiteKingInCheck = isKingInCheck(Color.WHITE);
-        blackKingInCheck = isKingInCheck(Color.BLACK);
+    // Shows check, mate and draws in the status line. The game over dialog only follows a move
+    // just played on the board; a finished game loaded or stepped through just shows its result.
+    private void updateCheckStatus(boolean gameOverDialog) {
+        CheckStatusEvent event = new CheckStatusEvent();
+        event.begin();
+        long start = System.nanoTime();
+        whiteKingInCheck = position.isKingInCheck(Color.WHITE);
+        blackKingInCheck = position.isKingInCheck(Color.BLACK);
         kingFlashAnimation.stop();
+        String status = "none";
         if (whiteKingInCheck || blackKingInCheck) {
             kingFlashAnimation.play();
             boolean isCheckmate = isCheckmate(whiteKingInCheck ? Color.WHITE : Color.BLACK);
-            if (isCheckmate) {
-                String winner = whiteKingInCheck ? "Black" : "White";
-                statusLabel.setText("Checkmate! " + winner + " wins!");
-                showGameOverDialog(winner + " wins by checkmate!");
-            } else {
-                statusLabel.setText((whiteKingInCheck ? "White" : "Black") + " is in check!");
-            }
+            PerformanceMetrics.get().recordMoveGeneration(System.nanoTime() - start);
+            status = isCheckmate ? "checkmate" : "check";
         } else {
             boolean whiteStalemate = isStalemate(Color.WHITE);
             boolean blackStalemate = isStalemate(Color.BLACK);
-            if ((whiteTurn && whiteStalemate) || (!whiteTurn && blackStalemate)) {
-                statusLabel.setText("Stalemate! Game ends in a draw.");
-                showGameOverDialog("Draw by stalemate!");
+            PerformanceMetrics.get().recordMoveGeneration(System.nanoTime() - start);
+            if ((position.whiteTurn && whiteStalemate) || (!position.whiteTurn && blackStalemate)) {
+                status = "stalemate";
             }
         }
+        // Checkmate outranks the draw rules; a mate on the hundredth ply still wins
+        String drawReason = status.equals("checkmate") || status.equals("stalemate") ? null : position.drawReason();
+        if (drawReason != null) status = "draw: " + drawReason;
+        event.end();
+        if (event.shouldCommit()) {
+            event.positionHash = positionHash();
+            event.whiteInCheck = whiteKingInCheck;
+            event.blackInCheck = blackKingInCheck;
+            event.status = status;
+            event.commit();
+        }
+
+        // Dialogs block, so they are shown only after the event has been committed
+        if (status.equals("checkmate")) {
+            String winner = whiteKingInCheck ? "Black" : "White";
+            statusLabel.setText("Checkmate! " + winner + " wins!");
+            if (gameOverDialog) showGameOverDialog(winner + " wins by checkmate!");
+        } else if (status.equals("check")) {
+            statusLabel.setText((whiteKingInCheck ? "White" : "Black") + " is in check!");
+        } else if (status.equals("stalemate")) {
+            statusLabel.setText("Stalemate! Game ends in a draw.");
+            if (gameOverDialog) showGameOverDialog("Draw by stalemate!");
+        } else if (drawReason != null) {
+            statusLabel.setText("Draw by " + drawReason + ".");
+            if (gameOverDialog) showGameOverDialog("Draw by " + drawReason + "!");
+        }
+    }
+
+    // Maintained incrementally by the position, so this is O(1)
+    private long positionHash() {
+        return position.hash;
+    }
+
+    private static String squareName(int row, int col) {
+        return "" + (char) ('a' + col) + (SIZE - row);
     }
 
     private boolean isCheckmate(Color kingColor) {
-        if (!isKingInCheck(kingColor)) return false;
-        for (int startRow = 0; startRow < SIZE; startRow++) {
-            for (int startCol = 0; startCol < SIZE; startCol++) {
-                ChessPiece piece = board[startRow][startCol];
-                if (piece != null && piece.color == kingColor) {
-                    for (int endRow = 0; endRow < SIZE; endRow++) {
-                        for (int endCol = 0; endCol < SIZE; endCol++) {
-                            if (startRow == endRow && startCol == endCol) continue;
-                            if (!isValidMoveWithoutCheckTest(startRow, startCol, endRow, endCol)) continue;
-                            ChessPiece capturedPiece = board[endRow][endCol];
-                            int originalRow = piece.row;
-                            int originalCol = piece.col;
-                            board[endRow][endCol] = piece;
-                            board[startRow][startCol] = null;
-                            piece.row = endRow;
-                            piece.col = endCol;
-                            int[] originalKingPos = null;
-                            if (piece instanceof King) {
-                                originalKingPos = (kingColor == Color.WHITE) ? whiteKingPos.clone() : blackKingPos.clone();
-                                updateKingPosition(kingColor, endRow, endCol);
-                            }
-                            boolean stillInCheck = isKingInCheck(kingColor);
-                            board[startRow][startCol] = piece;
-                            board[endRow][endCol] = capturedPiece;
-                            piece.row = originalRow;
-                            piece.col = originalCol;
-                            if (piece instanceof King) {
-                                if (kingColor == Color.WHITE) whiteKingPos = originalKingPos;
-                                else blackKingPos = originalKingPos;
-                            }
-                            if (!stillInCheck) return false;
-                        }
-                    }
-                }
-            }
+        MoveGenerationEvent event = new MoveGenerationEvent();
+        event.begin();
+        boolean checkmate = position.isCheckmate(kingColor);
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = MoveGenerationEvent.CHECKMATE;
+            event.positionHash = positionHash();
+            event.result = checkmate;
+            event.commit();
         }
-        return true;
+        return checkmate;
     }
 
     private boolean isStalemate(Color color) {
-        if (isKingInCheck(color)) return false;
-        for (int startRow = 0; startRow < SIZE; startRow++) {
-            for (int startCol = 0; startCol < SIZE; startCol++) {
-                ChessPiece piece = board[startRow][startCol];
-                if (piece != null && piece.color == color) {
-                    for (int endRow = 0; endRow < SIZE; endRow++) {
-                        for (int endCol = 0; endCol < SIZE; endCol++) {
-                            if (startRow == endRow && startCol == endCol) continue;
-                            if (!isValidMoveWithoutCheckTest(startRow, startCol, endRow, endCol)) continue;
-                            ChessPiece capturedPiece = board[endRow][endCol];
-                            board[endRow][endCol] = piece;
-                            board[startRow][startCol] = null;
-                            int originalRow = piece.row;
-                            int originalCol = piece.col;
-                            piece.row = endRow;
-                            piece.col = endCol;
-                            int[] originalKingPos = null;
-                            if (piece instanceof King) {
-                                originalKingPos = (color == Color.WHITE) ? whiteKingPos.clone() : blackKingPos.clone();
-                                updateKingPosition(color, endRow, endCol);
-                            }
-                            boolean kingInCheck = isKingInCheck(color);
-                            board[startRow][startCol] = piece;
-                            board[endRow][endCol] = capturedPiece;
-                            piece.row = originalRow;
-                            piece.col = originalCol;
-                            if (piece instanceof King) {
-                                if (color == Color.WHITE) whiteKingPos = originalKingPos;
-                                else blackKingPos = originalKingPos;
-                            }
-                            if (!kingInCheck) return false;
-                        }
-                    }
-                }
-            }
+        MoveGenerationEvent event = new MoveGenerationEvent();
+        event.begin();
+        boolean stalemate = position.isStalemate(color);
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = MoveGenerationEvent.STALEMATE;
+            event.positionHash = positionHash();
+            event.result = stalemate;
+            event.commit();
         }
-        return true;
+        return stalemate;
     }
 
     private void showGameOverDialog(String message) {
@@ -875,8 +1194,11 @@ public class ChessGame extends Application {
     }
 
     private void handleSquareClicked(int row, int col) {
+        boolean whiteTurn = position.whiteTurn;
+        ChessPiece[][] board = position.board;
         if (playingAgainstAI && 
             ((whiteTurn && !aiIsBlack) || (!whiteTurn && aiIsBlack))) {
+            enterPremove(row, col);
             return;
         }
         if (selectedRow == -1 && selectedCol == -1) {
@@ -890,19 +1212,19 @@ public class ChessGame extends Application {
         } else {
             if (row == selectedRow && col == selectedCol) {
                 selectedRow = selectedCol = -1;
-                legalMoveCache.clear();
+                legalMoveMask = 0;
                 chessBoard.draw();
             } else {
                 ChessPiece piece = board[selectedRow][selectedCol];
                 boolean isPawn = piece instanceof Pawn;
                 boolean isPawnPromotion = isPawn && (row == 0 || row == 7);
-                if (isPawnPromotion && legalMoveCache.contains(new Point2D(row, col))) {
+                if (isPawnPromotion && isLegalMoveTarget(row, col)) {
                     showPromotionDialog(selectedRow, selectedCol, row, col);
                 } else {
                     if (movePiece(selectedRow, selectedCol, row, col, ' ')) {
                         selectedRow = selectedCol = -1;
-                        legalMoveCache.clear();
-                        updateCheckStatus();
+                        legalMoveMask = 0;
+                        updateCheckStatus(true);
                         chessBoard.draw();
                     } else {
                         ChessPiece newPiece = board[row][col];
@@ -912,7 +1234,7 @@ public class ChessGame extends Application {
                             calculateLegalMoves(row, col);
                         } else {
                             selectedRow = selectedCol = -1;
-                            legalMoveCache.clear();
+                            legalMoveMask = 0;
                         }
                         chessBoard.draw();
                     }
@@ -921,48 +1243,30 @@ public class ChessGame extends Application {
         }
     }
 
+    private boolean isLegalMoveTarget(int row, int col) {
+        return (legalMoveMask & (1L << (row * SIZE + col))) != 0;
+    }
+
     private void calculateLegalMoves(int row, int col) {
-        legalMoveCache.clear();
-        ChessPiece piece = board[row][col];
-        if (piece == null) return;
-        for (int endRow = 0; endRow < SIZE; endRow++) {
-            for (int endCol = 0; endCol < SIZE; endCol++) {
-                if (row == endRow && col == endCol) continue;
-                if (isValidMoveWithoutCheckTest(row, col, endRow, endCol)) {
-                    ChessPiece capturedPiece = board[endRow][endCol];
-                    board[endRow][endCol] = piece;
-                    board[row][col] = null;
-                    int originalRow = piece.row;
-                    int originalCol = piece.col;
-                    piece.row = endRow;
-                    piece.col = endCol;
-                    int[] originalKingPos = null;
-                    if (piece instanceof King) {
-                        originalKingPos = (piece.color == Color.WHITE) ? whiteKingPos.clone() : blackKingPos.clone();
-                        updateKingPosition(piece.color, endRow, endCol);
-                    }
-                    boolean kingInCheck = isKingInCheck(piece.color);
-                    board[row][col] = piece;
-                    board[endRow][endCol] = capturedPiece;
-                    piece.row = originalRow;
-                    piece.col = originalCol;
-                    if (piece instanceof King) {
-                        if (piece.color == Color.WHITE) whiteKingPos = originalKingPos;
-                        else blackKingPos = originalKingPos;
-                    }
-                    if (!kingInCheck) {
-                        legalMoveCache.add(new Point2D(endRow, endCol));
-                    }
-                }
-            }
+        MoveGenerationEvent event = new MoveGenerationEvent();
+        event.begin();
+        PrecomputedMoves precomputed = precomputedMoves;
+        if (precomputed != null && precomputed.version == positionVersion) {
+            legalMoveMask = precomputed.masks[row * SIZE + col];
+        } else {
+            // The background pass has not finished for this position yet
+            long start = System.nanoTime();
+            legalMoveMask = position.legalMoveMask(row, col);
+            PerformanceMetrics.get().recordMoveGeneration(System.nanoTime() - start);
         }
-        if (piece instanceof King) {
-            if (canCastle(row, col, row, col + 2)) {
-                legalMoveCache.add(new Point2D(row, col + 2));
-            }
-            if (canCastle(row, col, row, col - 2)) {
-                legalMoveCache.add(new Point2D(row, col - 2));
-            }
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = MoveGenerationEvent.LEGAL_MOVES;
+            event.positionHash = positionHash();
+            event.square = squareName(row, col);
+            event.movesFound = Long.bitCount(legalMoveMask);
+            event.result = precomputed != null && precomputed.version == positionVersion;
+            event.commit();
         }
     }
 
@@ -985,22 +1289,67 @@ public class ChessGame extends Application {
         }
         if (movePiece(startRow, startCol, endRow, endCol, promotionType)) {
             selectedRow = selectedCol = -1;
-            legalMoveCache.clear();
-            updateCheckStatus();
+            legalMoveMask = 0;
+            updateCheckStatus(true);
             chessBoard.draw();
         }
     }
 
+    // Legal move masks for every piece of the side to move in one position version
+    private static final class PrecomputedMoves {
+        final long version;
+        final long[] masks = new long[SIZE * SIZE];
+
+        PrecomputedMoves(long version, ChessPosition snapshot) {
+            this.version = version;
+            Color side = snapshot.whiteTurn ? Color.WHITE : Color.BLACK;
+            for (int row = 0; row < SIZE; row++) {
+                for (int col = 0; col < SIZE; col++) {
+                    ChessPiece piece = snapshot.board[row][col];
+                    if (piece != null && piece.color == side) {
+                        masks[row * SIZE + col] = snapshot.legalMoveMask(row, col);
+                    }
+                }
+            }
+        }
+    }
+
     private class ChessBoard extends StackPane {
         private Canvas canvas;
         private GraphicsContext gc;
         private boolean highlightKing = false;
+        // A dragged piece is painted once onto its own square-sized canvas above the board,
+        // which is then only moved, so pointer moves never repaint the board. JavaFX delivers
+        // at most one drag event per pulse however fast the mouse polls.
+        private final Canvas dragSprite = new Canvas(SQUARE_SIZE, SQUARE_SIZE);
+        private int pressRow = -1, pressCol = -1;
+        private int dragRow = -1, dragCol = -1;
+        // Whether the board leaves the dragged piece off its origin square; premoves drag
+        // pieces from the board as the queued premoves leave it, so nothing is hidden then
+        private boolean hideDragOrigin;
+        // When the oldest pointer move not yet rendered arrived, or 0
+        private long pendingDragNanos;
+        private final AnimationTimer dragPulses = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                if (pendingDragNanos != 0) {
+                    PerformanceMetrics.get().recordDragLatency(now - pendingDragNanos);
+                    pendingDragNanos = 0;
+                }
+            }
+        };
         
         ChessBoard() {
             canvas = new Canvas(SIZE * SQUARE_SIZE, SIZE * SQUARE_SIZE);
             gc = canvas.getGraphicsContext2D();
-            getChildren().add(canvas);
+            dragSprite.setManaged(false);
+            dragSprite.setMouseTransparent(true);
+            dragSprite.setVisible(false);
+            getChildren().addAll(canvas, dragSprite);
             canvas.setOnMouseClicked(this::handleMouseClick);
+            canvas.setOnMousePressed(this::handleMousePressed);
+            canvas.setOnMouseDragged(this::handleMouseDragged);
+            canvas.setOnMouseReleased(this::handleMouseReleased);
             setAlignment(Pos.CENTER);
             
             // Add border to make the board stand out
@@ -1020,16 +1369,117 @@ public class ChessGame extends Application {
         }
         
         private void handleMouseClick(MouseEvent event) {
+            // A press and release with a drag in between is a drop, handled on release
+            if (!event.isStillSincePress()) return;
+            int square = squareAt(event);
+            if (square >= 0) {
+                handleSquareClicked(square / SIZE, square % SIZE);
+            }
+        }
+
+        // Logical square index under the pointer, or -1 off the board
+        private int squareAt(MouseEvent event) {
+            if (event.getX() < 0 || event.getY() < 0) return -1;
             int col = (int) (event.getX() / SQUARE_SIZE);
             int row = (int) (event.getY() / SQUARE_SIZE);
             int logicalRow = boardFlipped ? (SIZE - 1 - row) : row;
             int logicalCol = boardFlipped ? (SIZE - 1 - col) : col;
             if (logicalRow >= 0 && logicalRow < SIZE && logicalCol >= 0 && logicalCol < SIZE) {
-                handleSquareClicked(logicalRow, logicalCol);
+                return logicalRow * SIZE + logicalCol;
+            }
+            return -1;
+        }
+
+        private void handleMousePressed(MouseEvent event) {
+            int square = event.isPrimaryButtonDown() ? squareAt(event) : -1;
+            pressRow = square < 0 ? -1 : square / SIZE;
+            pressCol = square < 0 ? -1 : square % SIZE;
+        }
+
+        private void handleMouseDragged(MouseEvent event) {
+            if (dragRow < 0) {
+                if (pressRow < 0 || event.isStillSincePress()) return;
+                if (!startDrag(pressRow, pressCol)) {
+                    // Not a piece that can move; ignore the rest of this drag
+                    pressRow = pressCol = -1;
+                    return;
+                }
+            }
+            dragSprite.relocate(canvas.getLayoutX() + event.getX() - SQUARE_SIZE / 2.0,
+                                canvas.getLayoutY() + event.getY() - SQUARE_SIZE / 2.0);
+            if (pendingDragNanos == 0) pendingDragNanos = System.nanoTime();
+        }
+
+        // Picks up the piece on the square if the player may move it: it is selected as if
+        // clicked, painted onto the sprite, and the board is drawn once without it
+        private boolean startDrag(int row, int col) {
+            boolean premove = isAITurn();
+            ChessPiece piece;
+            Color player;
+            if (premove) {
+                piece = premoveBoard()[row][col];
+                player = aiIsBlack ? Color.WHITE : Color.BLACK;
+            } else {
+                piece = position.board[row][col];
+                player = position.whiteTurn ? Color.WHITE : Color.BLACK;
+            }
+            if (piece == null || piece.color != player) return false;
+            if (!premove) {
+                selectedRow = row;
+                selectedCol = col;
+                calculateLegalMoves(row, col);
+            }
+            dragRow = row;
+            dragCol = col;
+            hideDragOrigin = !premove;
+            GraphicsContext spriteGc = dragSprite.getGraphicsContext2D();
+            spriteGc.clearRect(0, 0, SQUARE_SIZE, SQUARE_SIZE);
+            drawPiece(spriteGc, piece, 0, 0);
+            dragSprite.setVisible(true);
+            dragPulses.start();
+            draw();
+            return true;
+        }
+
+        // Drops the piece: a legal target plays the move as a second click would, anything
+        // else puts the piece back with its selection kept. While the engine is on move the
+        // drag enters a premove instead.
+        private void handleMouseReleased(MouseEvent event) {
+            pressRow = pressCol = -1;
+            if (dragRow < 0) return;
+            int fromRow = dragRow, fromCol = dragCol;
+            dragRow = dragCol = -1;
+            dragSprite.setVisible(false);
+            dragPulses.stop();
+            pendingDragNanos = 0;
+            int square = squareAt(event);
+            int row = square < 0 ? -1 : square / SIZE;
+            int col = square < 0 ? -1 : square % SIZE;
+            if (!hideDragOrigin) {
+                if (isAITurn() && square >= 0 && (row != fromRow || col != fromCol)) {
+                    premoveRow = fromRow;
+                    premoveCol = fromCol;
+                    enterPremove(row, col);
+                } else {
+                    draw();
+                }
+                return;
+            }
+            hideDragOrigin = false;
+            if (square >= 0 && selectedRow == fromRow && selectedCol == fromCol && isLegalMoveTarget(row, col)) {
+                handleSquareClicked(row, col);
+            } else {
+                draw();
             }
         }
         
         void draw() {
+            ChessPiece[][] board = position.board;
+            long premoved = premoveSquares();
+            BoardDrawEvent event = new BoardDrawEvent();
+            event.begin();
+            int piecesDrawn = 0;
+            long start = System.nanoTime();
             gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
             gc.setFill(currentTheme.getBoardBorder());
             double borderSize = SQUARE_SIZE * 0.1;
@@ -1047,7 +1497,10 @@ public class ChessGame extends Application {
                     if (row == selectedRow && col == selectedCol) {
                         gc.setFill(Color.YELLOW);
                     }
-                    if (legalMoveCache.contains(new Point2D(row, col))) {
+                    if ((premoved & 1L << (row * SIZE + col)) != 0) {
+                        gc.setFill(Color.SALMON);
+                    }
+                    if (isLegalMoveTarget(row, col)) {
                         if (currentTheme.getName().equalsIgnoreCase("Blue")) {
                             gc.setFill(Color.GOLD);
                         } else {
@@ -1061,22 +1514,10 @@ public class ChessGame extends Application {
                         }
                     }
                     gc.fillRect(visualCol * SQUARE_SIZE, visualRow * SQUARE_SIZE, SQUARE_SIZE, SQUARE_SIZE);
-                    if (board[row][col] != null) {
-                        ChessPiece piece = board[row][col];
-                        String colorName = piece.color == Color.WHITE ? "White" : "Black";
-                        String pieceName = "";
-                        if (piece instanceof Pawn) pieceName = "Pawn";
-                        else if (piece instanceof Rook) pieceName = "Rook";
-                        else if (piece instanceof Knight) pieceName = "Knight";
-                        else if (piece instanceof Bishop) pieceName = "Bishop";
-                        else if (piece instanceof Queen) pieceName = "Queen";
-                        else if (piece instanceof King) pieceName = "King";
-                        Image pieceImage = pieceImages.get(pieceName + colorName);
-                        if (pieceImage != null) {
-                            gc.drawImage(pieceImage, visualCol * SQUARE_SIZE, visualRow * SQUARE_SIZE);
-                        } else {
-                            piece.draw(gc, visualCol * SQUARE_SIZE, visualRow * SQUARE_SIZE);
-                        }
+                    boolean dragged = hideDragOrigin && row == dragRow && col == dragCol;
+                    if (board[row][col] != null && !dragged) {
+                        piecesDrawn++;
+                        drawPiece(gc, board[row][col], visualCol * SQUARE_SIZE, visualRow * SQUARE_SIZE);
                     }
                     gc.setFill(isLight ? Color.DARKGREEN : Color.BEIGE);
                     if (visualRow == SIZE - 1) {
@@ -1093,6 +1534,36 @@ public class ChessGame extends Application {
                     }
                 }
             }
+            PerformanceMetrics.get().recordDraw(System.nanoTime() - start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.squaresRepainted = SIZE * SIZE;
+                event.piecesDrawn = piecesDrawn;
+                event.flipped = boardFlipped;
+                event.commit();
+            }
+        }
+
+        private void drawPiece(GraphicsContext target, ChessPiece piece, double x, double y) {
+            String colorName = piece.color == Color.WHITE ? "White" : "Black";
+            String pieceName = "";
+            if (piece instanceof Pawn) pieceName = "Pawn";
+            else if (piece instanceof Rook) pieceName = "Rook";
+            else if (piece instanceof Knight) pieceName = "Knight";
+            else if (piece instanceof Bishop) pieceName = "Bishop";
+            else if (piece instanceof Queen) pieceName = "Queen";
+            else if (piece instanceof King) pieceName = "King";
+            Image pieceImage = pieceImages.get(pieceName + colorName);
+            if (pieceImage != null) {
+                target.drawImage(pieceImage, x, y);
+            } else {
+                double scale = SQUARE_SIZE / 50.0;
+                target.save();
+                target.translate(x, y);
+                target.scale(scale, scale);
+                piece.draw(target, 0, 0);
+                target.restore();
+            }
         }
     }
 
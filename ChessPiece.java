@@ -0,0 +1,45 @@
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+interface Drawable {
+    void draw(GraphicsContext gc, int x, int y);
+}
+
+interface MoveValidator {
+    boolean isValidMove(int newRow, int newCol);
+}
+
+abstract class ChessPiece implements Drawable, MoveValidator {
+    int row, col;
+    Color color;
+
+    ChessPiece(int row, int col, Color color) {
+        this.row = row;
+        this.col = col;
+        this.color = color;
+    }
+
+    @Override public void draw(GraphicsContext gc, int x, int y) {
+        drawGlyph(new FxGlyphSurface(gc), x, y);
+    }
+
+    // Glyphs are laid out in a 50x50 cell with (x, y) as its top-left corner
+    abstract void drawGlyph(GlyphSurface gc, int x, int y);
+
+    abstract ChessPiece copy();
+
+    // FEN letter of the piece type, uppercase
+    abstract char symbol();
+
+    // FEN letter of this piece: uppercase for White, lowercase for Black
+    char fenSymbol() {
+        return color == Color.WHITE ? symbol() : (char) (symbol() | 0x20);
+    }
+
+    protected void drawCircle(GlyphSurface gc, int x, int y) {
+        gc.setFill(color);
+        gc.fillOval(x + 10, y + 10, 30, 30);
+        gc.setStroke(color == Color.WHITE ? Color.BLACK : Color.WHITE);
+        gc.strokeOval(x + 10, y + 10, 30, 30);
+    }
+}
@@ -0,0 +1,547 @@
+import javafx.scene.paint.Color;
+
+// Board state and move rules, independent of the JavaFX UI so positions can be copied
+// to background threads and used by headless tools.
+// Squares are indexed row * 8 + col, with row 0 being Black's back rank.
+class ChessPosition {
+    static final int SIZE = 8;
+    private static final char[] PROMOTION_TYPES = {'q', 'r', 'b', 'n'};
+
+    ChessPiece[][] board = new ChessPiece[SIZE][SIZE];
+    boolean whiteTurn = true;
+    final CastlingRights castlingRights = new CastlingRights();
+    int[] whiteKingPos = new int[2];
+    int[] blackKingPos = new int[2];
+    // File of a pawn that has just advanced two squares, or -1
+    int enPassantCol = -1;
+    int halfmoveClock = 0;
+    int fullmoveNumber = 1;
+    // Kept up to date by makeMove and unmakeMove; see resetDerivedState
+    long hash;
+    // Material plus piece-square sums from White's side; see Evaluation
+    int mgScore;
+    int egScore;
+    final int[] pieceCounts = new int[12];
+    int lightSquareBishops;
+    int darkSquareBishops;
+    final RepetitionTable repetitions = new RepetitionTable();
+
+    void setupInitial() {
+        board = new ChessPiece[SIZE][SIZE];
+        placePieces(0, 1, Color.BLACK);
+        placePieces(7, 6, Color.WHITE);
+        whiteKingPos[0] = 7;
+        whiteKingPos[1] = 4;
+        blackKingPos[0] = 0;
+        blackKingPos[1] = 4;
+        whiteTurn = true;
+        castlingRights.reset();
+        enPassantCol = -1;
+        halfmoveClock = 0;
+        fullmoveNumber = 1;
+        resetDerivedState();
+    }
+
+    // Recomputes the hash, scores and material counts from the board and starts a new
+    // repetition history; called whenever the board is set up rather than reached by moves
+    void resetDerivedState() {
+        hash = Zobrist.hash(this);
+        int[] scores = Evaluation.compute(board);
+        mgScore = scores[0];
+        egScore = scores[1];
+        java.util.Arrays.fill(pieceCounts, 0);
+        lightSquareBishops = darkSquareBishops = 0;
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                if (board[row][col] != null) countPiece(board[row][col], row, col, 1);
+            }
+        }
+        repetitions.clear();
+        repetitions.add(hash);
+    }
+
+    private void countPiece(ChessPiece piece, int row, int col, int delta) {
+        pieceCounts[Zobrist.pieceIndex(piece)] += delta;
+        if (piece instanceof Bishop) {
+            if ((row + col) % 2 == 0) lightSquareBishops += delta;
+            else darkSquareBishops += delta;
+        }
+    }
+
+    // Adds (sign 1) or removes (sign -1) a piece's contribution to the tapered score
+    private void scorePiece(ChessPiece piece, int row, int col, int sign) {
+        int index = Zobrist.pieceIndex(piece);
+        mgScore += sign * Evaluation.MG[index][row * SIZE + col];
+        egScore += sign * Evaluation.EG[index][row * SIZE + col];
+    }
+
+    // Tapered material and piece-square score in centipawns from White's side; O(1)
+    int staticEval() {
+        return Evaluation.taper(mgScore, egScore, Evaluation.phase(pieceCounts));
+    }
+
+    private void placePieces(int backRow, int pawnRow, Color color) {
+        for (int i = 0; i < SIZE; i++) board[pawnRow][i] = new Pawn(pawnRow, i, color);
+        board[backRow][0] = new Rook(backRow, 0, color);
+        board[backRow][7] = new Rook(backRow, 7, color);
+        board[backRow][1] = new Knight(backRow, 1, color);
+        board[backRow][6] = new Knight(backRow, 6, color);
+        board[backRow][2] = new Bishop(backRow, 2, color);
+        board[backRow][5] = new Bishop(backRow, 5, color);
+        board[backRow][3] = new Queen(backRow, 3, color);
+        board[backRow][4] = new King(backRow, 4, color);
+    }
+
+    // Deep copy; pieces carry their own coordinates, so they are copied too
+    ChessPosition copy() {
+        ChessPosition copy = new ChessPosition();
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    void copyFrom(ChessPosition other) {
+        board = new ChessPiece[SIZE][SIZE];
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                if (other.board[row][col] != null) board[row][col] = other.board[row][col].copy();
+            }
+        }
+        whiteTurn = other.whiteTurn;
+        castlingRights.copyFrom(other.castlingRights);
+        whiteKingPos = other.whiteKingPos.clone();
+        blackKingPos = other.blackKingPos.clone();
+        enPassantCol = other.enPassantCol;
+        halfmoveClock = other.halfmoveClock;
+        fullmoveNumber = other.fullmoveNumber;
+        hash = other.hash;
+        mgScore = other.mgScore;
+        egScore = other.egScore;
+        System.arraycopy(other.pieceCounts, 0, pieceCounts, 0, pieceCounts.length);
+        lightSquareBishops = other.lightSquareBishops;
+        darkSquareBishops = other.darkSquareBishops;
+        repetitions.copyFrom(other.repetitions);
+    }
+
+    boolean isPathClear(int startRow, int startCol, int endRow, int endCol) {
+        int rowStep = Integer.compare(endRow, startRow);
+        int colStep = Integer.compare(endCol, startCol);
+        int currentRow = startRow + rowStep;
+        int currentCol = startCol + colStep;
+        while (currentRow != endRow || currentCol != endCol) {
+            if (board[currentRow][currentCol] != null) return false;
+            currentRow += rowStep;
+            currentCol += colStep;
+        }
+        return true;
+    }
+
+    boolean isKingInCheck(Color kingColor) {
+        int[] kingPos = (kingColor == Color.WHITE) ? whiteKingPos : blackKingPos;
+        return isSquareAttacked(kingPos[0], kingPos[1], kingColor == Color.WHITE ? Color.BLACK : Color.WHITE);
+    }
+
+    // Whether a piece of the given colour attacks (row, col), occupied or not
+    boolean isSquareAttacked(int row, int col, Color byColor) {
+        for (int r = 0; r < SIZE; r++) {
+            for (int c = 0; c < SIZE; c++) {
+                ChessPiece piece = board[r][c];
+                if (piece == null || piece.color != byColor || (r == row && c == col)) continue;
+                if (piece instanceof Pawn) {
+                    int direction = (piece.color == Color.WHITE) ? -1 : 1;
+                    if (row == r + direction && Math.abs(col - c) == 1) return true;
+                } else if (piece.isValidMove(row, col)) {
+                    if (!(piece instanceof Rook || piece instanceof Bishop || piece instanceof Queen)
+                            || isPathClear(r, c, row, col)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    void updateKingPosition(Color color, int row, int col) {
+        if (color == Color.WHITE) {
+            whiteKingPos[0] = row;
+            whiteKingPos[1] = col;
+        } else {
+            blackKingPos[0] = row;
+            blackKingPos[1] = col;
+        }
+    }
+
+    boolean isValidMoveWithoutCheckTest(int startRow, int startCol, int endRow, int endCol) {
+        ChessPiece piece = board[startRow][startCol];
+        if (piece == null) return false;
+        if (board[endRow][endCol] != null && board[endRow][endCol].color == piece.color) return false;
+        if (piece instanceof Pawn) {
+            int direction = (piece.color == Color.WHITE) ? -1 : 1;
+            int startRank = (piece.color == Color.WHITE) ? 6 : 1;
+            if (startCol == endCol) {
+                if (board[endRow][endCol] != null) return false;
+                if (startRow == startRank && endRow == startRow + 2 * direction) {
+                    return board[startRow + direction][startCol] == null;
+                }
+                return endRow == startRow + direction;
+            } else if (Math.abs(startCol - endCol) == 1) {
+                if (endRow != startRow + direction) return false;
+                if (board[endRow][endCol] != null) return board[endRow][endCol].color != piece.color;
+                return isEnPassant(piece, startRow, endRow, endCol);
+            }
+            return false;
+        }
+        if (!piece.isValidMove(endRow, endCol)) return false;
+        if (piece instanceof Rook || piece instanceof Bishop || piece instanceof Queen) {
+            return isPathClear(startRow, startCol, endRow, endCol);
+        }
+        return true;
+    }
+
+    // A pawn of the side to move taking a pawn that has just advanced two squares past it
+    private boolean isEnPassant(ChessPiece pawn, int startRow, int endRow, int endCol) {
+        if (endCol != enPassantCol || (pawn.color == Color.WHITE) != whiteTurn) return false;
+        if (endRow != (whiteTurn ? 2 : 5) || board[endRow][endCol] != null) return false;
+        ChessPiece passed = board[startRow][endCol];
+        return passed instanceof Pawn && passed.color != pawn.color;
+    }
+
+    boolean canCastle(int startRow, int startCol, int endRow, int endCol) {
+        ChessPiece king = board[startRow][startCol];
+        if (!(king instanceof King)) return false;
+        boolean isWhite = king.color == Color.WHITE;
+        int homeRow = isWhite ? 7 : 0;
+        if (startRow != homeRow || startCol != 4 || endRow != homeRow || Math.abs(endCol - startCol) != 2) return false;
+        if (!castlingRights.canCastle(king.color, endCol == 6)) return false;
+        if (isKingInCheck(king.color)) return false;
+        int rookCol = (endCol == 2) ? 0 : 7;
+        ChessPiece rook = board[homeRow][rookCol];
+        if (rook == null || !(rook instanceof Rook) || rook.color != king.color) return false;
+        if (!isPathClear(startRow, startCol, startRow, rookCol)) return false;
+        // The king may not pass through or land on an attacked square
+        Color opponent = isWhite ? Color.BLACK : Color.WHITE;
+        int step = Integer.compare(endCol, startCol);
+        return !isSquareAttacked(homeRow, startCol + step, opponent) && !isSquareAttacked(homeRow, endCol, opponent);
+    }
+
+    // Plays a pseudo-legal move, tests the mover's king, then restores the board. An en passant
+    // capture also lifts the passed pawn, which catches the pin along the rank both pawns share.
+    boolean leavesKingInCheck(int startRow, int startCol, int endRow, int endCol) {
+        ChessPiece piece = board[startRow][startCol];
+        ChessPiece capturedPiece = board[endRow][endCol];
+        ChessPiece passedPawn = null;
+        if (piece instanceof Pawn && startCol != endCol && capturedPiece == null) {
+            passedPawn = board[startRow][endCol];
+            board[startRow][endCol] = null;
+        }
+        board[endRow][endCol] = piece;
+        board[startRow][startCol] = null;
+        piece.row = endRow;
+        piece.col = endCol;
+        int[] originalKingPos = null;
+        if (piece instanceof King) {
+            originalKingPos = (piece.color == Color.WHITE) ? whiteKingPos.clone() : blackKingPos.clone();
+            updateKingPosition(piece.color, endRow, endCol);
+        }
+        boolean kingInCheck = isKingInCheck(piece.color);
+        board[startRow][startCol] = piece;
+        board[endRow][endCol] = capturedPiece;
+        if (passedPawn != null) board[startRow][endCol] = passedPawn;
+        piece.row = startRow;
+        piece.col = startCol;
+        if (piece instanceof King) {
+            if (piece.color == Color.WHITE) whiteKingPos = originalKingPos;
+            else blackKingPos = originalKingPos;
+        }
+        return kingInCheck;
+    }
+
+    // Legal destinations of the piece on (row, col) as a bit set of square indexes
+    long legalMoveMask(int row, int col) {
+        ChessPiece piece = board[row][col];
+        if (piece == null) return 0;
+        long mask = 0;
+        for (int endRow = 0; endRow < SIZE; endRow++) {
+            for (int endCol = 0; endCol < SIZE; endCol++) {
+                if (row == endRow && col == endCol) continue;
+                if (isValidMoveWithoutCheckTest(row, col, endRow, endCol)
+                        && !leavesKingInCheck(row, col, endRow, endCol)) {
+                    mask |= 1L << (endRow * SIZE + endCol);
+                }
+            }
+        }
+        if (piece instanceof King) {
+            if (col + 2 < SIZE && canCastle(row, col, row, col + 2)) mask |= 1L << (row * SIZE + col + 2);
+            if (col - 2 >= 0 && canCastle(row, col, row, col - 2)) mask |= 1L << (row * SIZE + col - 2);
+        }
+        return mask;
+    }
+
+    // Appends every legal move of the side to move; a promotion is listed once per piece type
+    void legalMoves(MoveList out) {
+        Color color = whiteTurn ? Color.WHITE : Color.BLACK;
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                ChessPiece piece = board[row][col];
+                if (piece == null || piece.color != color) continue;
+                long mask = legalMoveMask(row, col);
+                boolean promotes = piece instanceof Pawn && row == (piece.color == Color.WHITE ? 1 : 6);
+                while (mask != 0) {
+                    int to = Long.numberOfTrailingZeros(mask);
+                    mask &= mask - 1;
+                    if (promotes) {
+                        for (char type : PROMOTION_TYPES) out.add(Move.encode(row, col, to >>> 3, to & 7, type));
+                    } else {
+                        out.add(Move.encode(row, col, to >>> 3, to & 7, ' '));
+                    }
+                }
+            }
+        }
+    }
+
+    boolean hasLegalMove(Color color) {
+        for (int startRow = 0; startRow < SIZE; startRow++) {
+            for (int startCol = 0; startCol < SIZE; startCol++) {
+                ChessPiece piece = board[startRow][startCol];
+                if (piece == null || piece.color != color) continue;
+                for (int endRow = 0; endRow < SIZE; endRow++) {
+                    for (int endCol = 0; endCol < SIZE; endCol++) {
+                        if (startRow == endRow && startCol == endCol) continue;
+                        if (!isValidMoveWithoutCheckTest(startRow, startCol, endRow, endCol)) continue;
+                        if (!leavesKingInCheck(startRow, startCol, endRow, endCol)) return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    boolean isCheckmate(Color kingColor) {
+        return isKingInCheck(kingColor) && !hasLegalMove(kingColor);
+    }
+
+    boolean isStalemate(Color color) {
+        return !isKingInCheck(color) && !hasLegalMove(color);
+    }
+
+    // Everything makeMove changes that cannot be recomputed, so unmakeMove can take a move
+    // back in O(1). Records can be reused from ply to ply.
+    static final class Undo {
+        ChessPiece moved;
+        ChessPiece captured;
+        int startRow, startCol, endRow, endCol;
+        int capturedRow, capturedCol;
+        boolean castled;
+        int castlingBits;
+        int whiteKingRow, whiteKingCol, blackKingRow, blackKingCol;
+        int enPassantCol, halfmoveClock, fullmoveNumber;
+        long hash;
+        int mgScore, egScore;
+    }
+
+    // Validates and plays a move for the side to move; returns false and leaves the position
+    // untouched if it is illegal. promotionType is 'q', 'r', 'b', 'n' or ' ' for a queen.
+    boolean makeMove(int startRow, int startCol, int endRow, int endCol, char promotionType) {
+        return makeMove(startRow, startCol, endRow, endCol, promotionType, null);
+    }
+
+    // As above, also filling undo (if not null) so the move can be taken back
+    boolean makeMove(int startRow, int startCol, int endRow, int endCol, char promotionType, Undo undo) {
+        ChessPiece piece = board[startRow][startCol];
+        if (piece == null) return false;
+        boolean isWhitePiece = piece.color == Color.WHITE;
+        if ((whiteTurn && !isWhitePiece) || (!whiteTurn && isWhitePiece)) return false;
+
+        if (piece instanceof King && Math.abs(startCol - endCol) == 2) {
+            if (!canCastle(startRow, startCol, endRow, endCol)) return false;
+            if (undo != null) saveUndo(undo, piece, startRow, startCol, endRow, endCol, true);
+            long keysBefore = Zobrist.castlingKey(castlingRights) ^ Zobrist.enPassantKey(this);
+            board[endRow][endCol] = board[startRow][startCol];
+            board[startRow][startCol] = null;
+            board[endRow][endCol].row = endRow;
+            board[endRow][endCol].col = endCol;
+            int rookStartCol = (endCol == 2) ? 0 : 7;
+            int rookEndCol = (endCol == 2) ? 3 : 5;
+            board[endRow][rookEndCol] = board[endRow][rookStartCol];
+            board[endRow][rookStartCol] = null;
+            board[endRow][rookEndCol].row = endRow;
+            board[endRow][rookEndCol].col = rookEndCol;
+            ChessPiece rook = board[endRow][rookEndCol];
+            hash ^= Zobrist.pieceKey(piece, startRow, startCol) ^ Zobrist.pieceKey(piece, endRow, endCol)
+                ^ Zobrist.pieceKey(rook, endRow, rookStartCol) ^ Zobrist.pieceKey(rook, endRow, rookEndCol);
+            scorePiece(piece, startRow, startCol, -1);
+            scorePiece(piece, endRow, endCol, 1);
+            scorePiece(rook, endRow, rookStartCol, -1);
+            scorePiece(rook, endRow, rookEndCol, 1);
+            updateKingPosition(piece.color, endRow, endCol);
+            castlingRights.markKingMoved(piece.color);
+            castlingRights.markRookMoved(piece.color, rookStartCol == 0);
+            endTurn(false, -1, keysBefore);
+            return true;
+        }
+
+        if (!isValidMoveWithoutCheckTest(startRow, startCol, endRow, endCol)) return false;
+        if (leavesKingInCheck(startRow, startCol, endRow, endCol)) return false;
+
+        if (undo != null) saveUndo(undo, piece, startRow, startCol, endRow, endCol, false);
+        long keysBefore = Zobrist.castlingKey(castlingRights) ^ Zobrist.enPassantKey(this);
+        // En passant is the one capture that does not land on the captured piece's square
+        int capturedRow = endRow;
+        if (piece instanceof Pawn && startCol != endCol && board[endRow][endCol] == null) {
+            capturedRow = startRow;
+            if (undo != null) {
+                undo.captured = board[startRow][endCol];
+                undo.capturedRow = startRow;
+            }
+        }
+        ChessPiece captured = board[capturedRow][endCol];
+        boolean isCapture = captured != null;
+        hash ^= Zobrist.pieceKey(piece, startRow, startCol);
+        scorePiece(piece, startRow, startCol, -1);
+        if (isCapture) {
+            hash ^= Zobrist.pieceKey(captured, capturedRow, endCol);
+            scorePiece(captured, capturedRow, endCol, -1);
+            countPiece(captured, capturedRow, endCol, -1);
+            board[capturedRow][endCol] = null;
+            // Taking a rook on its corner removes that castling right
+            if (captured instanceof Rook && capturedRow == (captured.color == Color.WHITE ? 7 : 0)
+                    && (endCol == 0 || endCol == 7)) {
+                castlingRights.markRookMoved(captured.color, endCol == 0);
+            }
+        }
+        board[endRow][endCol] = piece;
+        board[startRow][startCol] = null;
+        piece.row = endRow;
+        piece.col = endCol;
+        if (piece instanceof King) {
+            updateKingPosition(piece.color, endRow, endCol);
+            castlingRights.markKingMoved(piece.color);
+        } else if (piece instanceof Rook) {
+            if (startRow == (isWhitePiece ? 7 : 0)) {
+                castlingRights.markRookMoved(piece.color, startCol == 0);
+            }
+        }
+
+        if (piece instanceof Pawn && (endRow == 0 || endRow == 7)) {
+            board[endRow][endCol] = createPromotionPiece(promotionType, endRow, endCol, piece.color);
+            countPiece(piece, startRow, startCol, -1);
+            countPiece(board[endRow][endCol], endRow, endCol, 1);
+        }
+        hash ^= Zobrist.pieceKey(board[endRow][endCol], endRow, endCol);
+        scorePiece(board[endRow][endCol], endRow, endCol, 1);
+
+        boolean isPawn = piece instanceof Pawn;
+        endTurn(isPawn || isCapture, isPawn && Math.abs(endRow - startRow) == 2 ? startCol : -1, keysBefore);
+        return true;
+    }
+
+    private void saveUndo(Undo undo, ChessPiece piece, int startRow, int startCol, int endRow, int endCol,
+                          boolean castled) {
+        undo.moved = piece;
+        undo.captured = board[endRow][endCol];
+        undo.startRow = startRow;
+        undo.startCol = startCol;
+        undo.endRow = endRow;
+        undo.endCol = endCol;
+        undo.capturedRow = endRow;
+        undo.capturedCol = endCol;
+        undo.castled = castled;
+        undo.castlingBits = castlingRights.toBits();
+        undo.whiteKingRow = whiteKingPos[0];
+        undo.whiteKingCol = whiteKingPos[1];
+        undo.blackKingRow = blackKingPos[0];
+        undo.blackKingCol = blackKingPos[1];
+        undo.enPassantCol = enPassantCol;
+        undo.halfmoveClock = halfmoveClock;
+        undo.fullmoveNumber = fullmoveNumber;
+        undo.hash = hash;
+        undo.mgScore = mgScore;
+        undo.egScore = egScore;
+    }
+
+    // Takes back the last move made with this record; a promoted piece is simply dropped
+    void unmakeMove(Undo undo) {
+        repetitions.remove(hash);
+        ChessPiece onEnd = board[undo.endRow][undo.endCol];
+        if (onEnd != undo.moved) {
+            countPiece(onEnd, undo.endRow, undo.endCol, -1);
+            countPiece(undo.moved, undo.startRow, undo.startCol, 1);
+        }
+        if (undo.captured != null) countPiece(undo.captured, undo.capturedRow, undo.capturedCol, 1);
+        board[undo.endRow][undo.endCol] = null;
+        if (undo.castled) {
+            int rookStartCol = (undo.endCol == 2) ? 0 : 7;
+            int rookEndCol = (undo.endCol == 2) ? 3 : 5;
+            ChessPiece rook = board[undo.endRow][rookEndCol];
+            board[undo.endRow][rookEndCol] = null;
+            board[undo.endRow][rookStartCol] = rook;
+            rook.col = rookStartCol;
+        }
+        board[undo.startRow][undo.startCol] = undo.moved;
+        undo.moved.row = undo.startRow;
+        undo.moved.col = undo.startCol;
+        if (undo.captured != null) board[undo.capturedRow][undo.capturedCol] = undo.captured;
+        castlingRights.fromBits(undo.castlingBits);
+        whiteKingPos[0] = undo.whiteKingRow;
+        whiteKingPos[1] = undo.whiteKingCol;
+        blackKingPos[0] = undo.blackKingRow;
+        blackKingPos[1] = undo.blackKingCol;
+        enPassantCol = undo.enPassantCol;
+        halfmoveClock = undo.halfmoveClock;
+        fullmoveNumber = undo.fullmoveNumber;
+        hash = undo.hash;
+        mgScore = undo.mgScore;
+        egScore = undo.egScore;
+        whiteTurn = !whiteTurn;
+    }
+
+    // Updates the clocks and en passant file, then hands the move to the other side. keysBefore
+    // holds the castling and en passant keys from before the move, which the hash swaps out.
+    private void endTurn(boolean resetsClock, int doublePushCol, long keysBefore) {
+        halfmoveClock = resetsClock ? 0 : halfmoveClock + 1;
+        if (!whiteTurn) fullmoveNumber++;
+        enPassantCol = doublePushCol;
+        whiteTurn = !whiteTurn;
+        hash ^= Zobrist.BLACK_TO_MOVE ^ keysBefore ^ Zobrist.castlingKey(castlingRights) ^ Zobrist.enPassantKey(this);
+        repetitions.add(hash);
+    }
+
+    // Draw rules, each O(1) from the state makeMove maintains. The fifty-move rule is applied
+    // automatically so that unattended games always end.
+    boolean isThreefoldRepetition() {
+        return repetitions.count(hash) >= 3;
+    }
+
+    boolean isFiftyMoveDraw() {
+        return halfmoveClock >= 100;
+    }
+
+    // Neither side can ever mate: bare kings, a single minor piece, or only bishops that all
+    // stand on squares of one colour
+    boolean isInsufficientMaterial() {
+        for (int side = 0; side < 12; side += 6) {
+            if (pieceCounts[side] + pieceCounts[side + 3] + pieceCounts[side + 4] > 0) return false;
+        }
+        int knights = pieceCounts[1] + pieceCounts[7];
+        int bishops = lightSquareBishops + darkSquareBishops;
+        if (knights + bishops <= 1) return true;
+        return knights == 0 && (lightSquareBishops == 0 || darkSquareBishops == 0);
+    }
+
+    // "threefold repetition", "fifty-move rule", "insufficient material" or null
+    String drawReason() {
+        if (isThreefoldRepetition()) return "threefold repetition";
+        if (isFiftyMoveDraw()) return "fifty-move rule";
+        if (isInsufficientMaterial()) return "insufficient material";
+        return null;
+    }
+
+    static ChessPiece createPromotionPiece(char type, int row, int col, Color color) {
+        switch (Character.toLowerCase(type)) {
+            case 'q': return new Queen(row, col, color);
+            case 'r': return new Rook(row, col, color);
+            case 'b': return new Bishop(row, col, color);
+            case 'n': return new Knight(row, col, color);
+            default: return new Queen(row, col, color);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import javafx.scene.paint.Color;
+
+// Continuous background analysis with "go infinite" on an engine of its own. analyze() only
+// records the new position; a command thread stops the running search and starts the next one,
+// and a reader thread turns the engine's info lines into the latest Info. Nothing here waits on
+// the engine from the caller's thread, and the UI picks up at most one Info per frame with poll().
+final class EngineAnalysis implements AutoCloseable {
+    private static final int PV_MOVES = 8;
+
+    // One reading of the search, scored from White's point of view
+    static final class Info {
+        final long generation;
+        final int depth;
+        final boolean mate;
+        // Centipawns, or moves to mate (negative when Black mates; 0 when the side to move is
+        // already mated, so which side won is in whiteMates)
+        final int score;
+        final boolean whiteMates;
+        final long nodes;
+        final String bestLine;
+
+        Info(long generation, int depth, boolean mate, int score, boolean whiteMates, long nodes, String bestLine) {
+            this.generation = generation;
+            this.depth = depth;
+            this.mate = mate;
+            this.score = score;
+            this.whiteMates = whiteMates;
+            this.nodes = nodes;
+            this.bestLine = bestLine;
+        }
+
+        // "+0.35", "-1.20", "#3", "#-2", and the result once mated
+        String scoreText() {
+            if (mate && score == 0) return whiteMates ? "1-0" : "0-1";
+            if (mate) return "#" + score;
+            return String.format("%+.2f", score / 100.0);
+        }
+    }
+
+    private static final class Request {
+        final long generation;
+        final ChessPosition position;
+        final String fen;
+        final long requestedAt = System.nanoTime();
+        boolean answered;
+
+        Request(long generation, ChessPosition position) {
+            this.generation = generation;
+            this.position = position;
+            this.fen = Fen.toFen(position);
+        }
+    }
+
+    private final StockfishEngine engine;
+    private final ExecutorService commands = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "analysis-commands");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Thread reader;
+    // Only the newest position matters; older ones still waiting are dropped
+    private final AtomicReference<Request> next = new AtomicReference<>();
+    private long generations;
+
+    // Search bookkeeping shared by the command and reader threads. Every search ends with one
+    // "bestmove"; those owed by searches we stopped mark output that is no longer wanted.
+    private final Object lock = new Object();
+    private boolean searchActive;
+    private int staleBestMoves;
+    private Request current;
+
+    private volatile Info latest;
+    private final AtomicBoolean changed = new AtomicBoolean();
+
+    EngineAnalysis(StockfishEngine engine) {
+        this.engine = engine;
+        reader = new Thread(this::readLoop, "analysis-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    // Switches the analysis to a copy of the position; returns its generation
+    long analyze(ChessPosition position) {
+        long generation = ++generations;
+        next.set(new Request(generation, position.copy()));
+        commands.execute(this::restart);
+        return generation;
+    }
+
+    // The newest Info if it has not been returned before, otherwise null
+    Info poll() {
+        return changed.getAndSet(false) ? latest : null;
+    }
+
+    Info latest() {
+        return latest;
+    }
+
+    private void restart() {
+        Request request = next.getAndSet(null);
+        if (request == null) return;
+        boolean stop;
+        synchronized (lock) {
+            stop = searchActive;
+            if (stop) staleBestMoves++;
+            searchActive = true;
+            current = request;
+        }
+        if (stop) engine.stop();
+        engine.goInfinite(request.fen);
+    }
+
+    private void readLoop() {
+        String line;
+        while ((line = engine.readLine()) != null) {
+            Request request;
+            synchronized (lock) {
+                if (line.startsWith("bestmove")) {
+                    if (staleBestMoves > 0) staleBestMoves--;
+                    else searchActive = false;
+                    continue;
+                }
+                if (staleBestMoves > 0 || !line.startsWith("info") || line.indexOf(" score ") < 0) continue;
+                request = current;
+            }
+            publish(request, line);
+        }
+    }
+
+    private void publish(Request request, String line) {
+        if (!request.answered) {
+            request.answered = true;
+            PerformanceMetrics.get().recordAnalysisRestart(System.nanoTime() - request.requestedAt);
+        }
+        boolean mate = line.contains(" score mate ");
+        int score = (int) StockfishEngine.parseSignedInfoField(line, mate ? " score mate " : " score cp ");
+        // The engine scores for the side to move, and "mate 0" means that side has been mated
+        boolean moverMates = score > 0;
+        if (!request.position.whiteTurn) score = -score;
+        boolean whiteMates = mate && moverMates == request.position.whiteTurn;
+        latest = new Info(request.generation, (int) StockfishEngine.parseInfoField(line, " depth "), mate, score, whiteMates,
+                          StockfishEngine.parseInfoField(line, " nodes "), bestLine(request.position, line));
+        changed.set(true);
+    }
+
+    // The first moves of the principal variation in SAN, numbered from the position
+    private static String bestLine(ChessPosition position, String line) {
+        int pv = line.indexOf(" pv ");
+        if (pv < 0) return "";
+        ChessPosition board = position.copy();
+        StringBuilder san = new StringBuilder();
+        String[] moves = line.substring(pv + 4).trim().split("\\s+");
+        for (int i = 0; i < moves.length && i < PV_MOVES; i++) {
+            int move = Move.fromUci(moves[i]);
+            if (move == Move.NONE) break;
+            ChessPiece piece = board.board[Move.fromRow(move)][Move.fromCol(move)];
+            if (piece == null || (piece.color == Color.WHITE) != board.whiteTurn) break;
+            if ((board.legalMoveMask(Move.fromRow(move), Move.fromCol(move)) & 1L << Move.to(move)) == 0) break;
+            if (board.whiteTurn) san.append(board.fullmoveNumber).append(". ");
+            else if (i == 0) san.append(board.fullmoveNumber).append("... ");
+            san.append(San.format(board, move));
+            Move.play(board, move);
+            Color side = board.whiteTurn ? Color.WHITE : Color.BLACK;
+            if (board.isKingInCheck(side)) san.append(board.hasLegalMove(side) ? '+' : '#');
+            san.append(' ');
+        }
+        return san.toString().trim();
+    }
+
+    // Stops the search and the engine; waits for the engine to exit, so call it off the FX thread
+    @Override
+    public void close() {
+        commands.shutdownNow();
+        synchronized (lock) {
+            if (searchActive) engine.stop();
+        }
+        engine.close();
+    }
+}
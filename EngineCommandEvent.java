@@ -0,0 +1,28 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("chess.EngineCommand")
+@Label("Engine Command")
+@Category({"Chess", "Engine"})
+@Description("A UCI command written to the engine and the wait for its terminating response")
+@StackTrace(false)
+class EngineCommandEvent extends Event {
+    @Label("Command")
+    String command;
+
+    @Label("Response")
+    String response;
+
+    @Label("Depth")
+    int depth;
+
+    @Label("Lines Read")
+    int linesRead;
+
+    @Label("FEN")
+    String fen;
+}
@@ -0,0 +1,156 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Measures what the UCI layer costs per search, apart from the engine's thinking, by talking
+// to MockUciEngine answering at once:
+//  - in-process: writing the position command, and parsing an info line as search() does
+//  - round trip: command written, pipe, mock, "bestmove" read back, with and without a
+//    stream of info lines, so the difference is the per-line cost through the pipe
+//  - hand-off: the same search run on a worker thread and joined, as ChessGame runs it
+// Then a stress run plays thousands of searches over a random walk through EngineSupervisor,
+// checking every answer against the move the mock must give, optionally with crashes injected.
+//   java EngineProtocolBenchmark [--searches N] [--info N] [--stress N] [--crash-rate p]
+class EngineProtocolBenchmark {
+    private static final String INFO_LINE = "info depth 18 seldepth 24 multipv 1 score cp 31 nodes 1843221 nps 2104567 "
+                                            + "hashfull 412 tbhits 0 time 876 pv e2e4 e7e5 g1f3 b8c6 f1b5 a7a6 b5a4 g8f6";
+
+    public static void main(String[] args) throws Exception {
+        int searches = 20_000;
+        int infoLines = 20;
+        int stress = 5_000;
+        double crashRate = 0.002;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--searches": searches = Integer.parseInt(args[++i]); break;
+                case "--info": infoLines = Integer.parseInt(args[++i]); break;
+                case "--stress": stress = Integer.parseInt(args[++i]); break;
+                case "--crash-rate": crashRate = Double.parseDouble(args[++i]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        inProcess();
+
+        // Once untimed, so this JVM's side of the protocol is compiled before anything is measured
+        roundTrips(searches, infoLines, true);
+        LatencyHistogram bare = roundTrips(searches, 0, false);
+        LatencyHistogram streamed = roundTrips(searches, infoLines, false);
+        LatencyHistogram handedOff = roundTrips(searches, 0, true);
+        report("round trip, no info", bare);
+        report("round trip, " + infoLines + " info lines", streamed);
+        report("round trip via worker thread", handedOff);
+        System.out.printf("per info line through the pipe %.2f us; hand-off to the worker and back %.2f us%n",
+                          (streamed.getMean() - bare.getMean()) / infoLines / 1e3,
+                          (handedOff.getMean() - bare.getMean()) / 1e3);
+
+        stress(stress, crashRate);
+    }
+
+    // The two parts of the protocol that run in this process and do not wait on the pipe
+    private static void inProcess() throws IOException {
+        ChessPosition position = new ChessPosition();
+        position.setupInitial();
+        char[] fen = new char[Fen.MAX_LENGTH];
+        Writer sink = new Writer() {
+            long chars;
+            @Override public void write(char[] buffer, int offset, int length) { chars += length; }
+            @Override public void write(int c) { chars++; }
+            @Override public void write(String s) { chars += s.length(); }
+            @Override public void flush() { }
+            @Override public void close() { }
+        };
+        int rounds = 2_000_000;
+        long checksum = 0;
+        double writeNanos = 0;
+        double parseNanos = 0;
+        for (int repeat = 0; repeat < 5; repeat++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                // As StockfishEngine.search writes the position and go commands
+                int length = Fen.write(position, fen);
+                sink.write("position fen ");
+                sink.write(fen, 0, length);
+                sink.write('\n');
+                sink.write("go depth 10\n");
+            }
+            writeNanos = (System.nanoTime() - start) / (double) rounds;
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                if (INFO_LINE.startsWith("bestmove")) checksum--;
+                if (INFO_LINE.startsWith("info")) checksum += StockfishEngine.parseInfoField(INFO_LINE, " nps ");
+            }
+            parseNanos = (System.nanoTime() - start) / (double) rounds;
+        }
+        System.out.printf("command write %.0f ns per search, info line parse %.0f ns per line (checksum %d)%n",
+                          writeNanos, parseNanos, checksum);
+    }
+
+    private static LatencyHistogram roundTrips(int searches, int infoLines, boolean handOff) {
+        StockfishEngine engine = new StockfishEngine(
+            MockUciEngine.command("--delay", "0", "--info", String.valueOf(infoLines), "--moves", "e2e4"), true);
+        if (!engine.isRunning()) {
+            System.err.println("Could not start the mock engine: " + engine.startFailure());
+            System.exit(1);
+        }
+        engine.setSearchDepth(10);
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        ChessPosition position = new ChessPosition();
+        position.setupInitial();
+        LatencyHistogram latency = new LatencyHistogram();
+        // The first quarter warms up both JVMs and is not recorded
+        int warmup = searches / 4;
+        for (int i = 0; i < warmup + searches; i++) {
+            long start = System.nanoTime();
+            String move = handOff ? CompletableFuture.supplyAsync(() -> engine.getBestMove(position), worker).join()
+                                  : engine.getBestMove(position);
+            long elapsed = System.nanoTime() - start;
+            if (!"e2e4".equals(move)) throw new IllegalStateException("Unexpected answer " + move);
+            if (i >= warmup) latency.record(elapsed);
+        }
+        worker.shutdown();
+        engine.close();
+        return latency;
+    }
+
+    private static void report(String label, LatencyHistogram latency) {
+        System.out.printf("%-32s mean %6.1f us  p50 %6.1f us  p99 %6.1f us  p99.9 %7.1f us%n", label,
+                          latency.getMean() / 1e3, latency.getPercentile(50) / 1e3,
+                          latency.getPercentile(99) / 1e3, latency.getPercentile(99.9) / 1e3);
+    }
+
+    // With no script the mock plays the first legal move, so every answer can be checked here
+    private static void stress(int searches, double crashRate) {
+        EngineSupervisor supervisor = new EngineSupervisor(
+            "mock:--delay 0 --info 3 --crash-rate " + crashRate + " --seed 7");
+        supervisor.setDeadline(2_000);
+        SplittableRandom random = new SplittableRandom(3);
+        ChessPosition position = new ChessPosition();
+        position.setupInitial();
+        MoveList moves = new MoveList();
+        int wrong = 0;
+        int unanswered = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < searches; i++) {
+            moves.clear();
+            position.legalMoves(moves);
+            if (moves.size() == 0 || position.drawReason() != null) {
+                position.setupInitial();
+                continue;
+            }
+            String move = supervisor.getBestMove(position);
+            if (move == null) unanswered++;
+            else if (!move.equals(Move.toUci(moves.get(0)))) wrong++;
+            Move.play(position, moves.get(random.nextInt(moves.size())));
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        supervisor.close();
+        System.out.printf("stress: %,d searches in %.1f s (%,.0f/s), %d wrong, %d unanswered; "
+                          + "%d restarts, %d timeouts, %d failures%n",
+                          searches, seconds, searches / seconds, wrong, unanswered,
+                          supervisor.restarts(), supervisor.timeouts(), supervisor.failures());
+        if (wrong > 0 || unanswered > 0) System.exit(1);
+    }
+}
@@ -0,0 +1,267 @@
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Keeps an engine process answering searches. Every search runs under a deadline: when it
+// passes, the engine is told to stop and its best move so far is used, and if it has still
+// not answered after a grace period the process is taken to be hung and killed. A dead or
+// killed engine is restarted with exponential backoff, its options are sent again, and the
+// search is retried on the new process, which is given the position afresh.
+final class EngineSupervisor implements AutoCloseable {
+    static final long DEFAULT_DEADLINE_MILLIS = 10_000;
+    static final long GRACE_MILLIS = 1_000;
+    static final long HANDSHAKE_MILLIS = 5_000;
+    private static final long MIN_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 5_000;
+    private static final int MAX_ATTEMPTS = 4;
+
+    // Deadline states of one call
+    private static final int RUNNING = 0, STOPPED = 1, KILLED = 2;
+
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "engine-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String path;
+    // Replayed on every new process, in the order they were first set
+    private final Map<String, String> options = new LinkedHashMap<>();
+    private volatile int searchDepth = 10;
+    private volatile int moveTime;
+    private volatile long deadlineMillis = DEFAULT_DEADLINE_MILLIS;
+    private volatile StockfishEngine engine;
+    // A process still in its handshake, so close() can kill it before it becomes engine
+    private volatile StockfishEngine starting;
+    private volatile boolean closed;
+    private volatile String lastError;
+    // Whether a process has been running before, so the next start counts as a restart
+    private boolean hadEngine;
+    // Wait before the next start; grows with each failure and resets after a good search
+    private long backoffMillis;
+    // Whether the last call ran into its deadline; tells a hung engine from one that exited
+    private boolean timedOut;
+
+    private final AtomicLong restarts = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    // The first process is started by the first search
+    EngineSupervisor(String path) {
+        this(path, null);
+    }
+
+    // Takes over an engine that has already been started and initialised
+    EngineSupervisor(String path, StockfishEngine running) {
+        this.path = path;
+        this.engine = running;
+        this.hadEngine = running != null;
+    }
+
+    // Starts the engine ahead of the first search, with the handshake under its deadline and
+    // the same retries a search gets. Returns the live engine, or null with lastError() set.
+    synchronized StockfishEngine start() {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS && !closed; attempt++) {
+            StockfishEngine current = ensureStarted();
+            if (current != null) {
+                lastError = null;
+                return current;
+            }
+        }
+        return null;
+    }
+
+    // Runs start() on a background thread, so launching never waits on the engine
+    CompletableFuture<EngineSupervisor> startAsync() {
+        CompletableFuture<EngineSupervisor> future = new CompletableFuture<>();
+        Thread starter = new Thread(() -> {
+            try {
+                start();
+                future.complete(this);
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }, "engine-startup");
+        starter.setDaemon(true);
+        starter.start();
+        return future;
+    }
+
+    void setSearchDepth(int depth) {
+        searchDepth = depth;
+    }
+
+    void setMoveTime(int millis) {
+        moveTime = millis;
+    }
+
+    // For depth searches; movetime searches get their move time plus GRACE_MILLIS
+    void setDeadline(long millis) {
+        deadlineMillis = millis;
+    }
+
+    synchronized void setOption(String name, String value) {
+        options.put(name, value);
+        StockfishEngine current = engine;
+        if (current != null && current.isRunning()) {
+            callWithDeadline(current, HANDSHAKE_MILLIS, false, () -> {
+                current.setOption(name, value);
+                return Boolean.TRUE;
+            });
+        }
+    }
+
+    // The engine's move in UCI form, or null once MAX_ATTEMPTS processes have failed to
+    // answer; lastError() then says why
+    synchronized String getBestMove(ChessPosition position) {
+        return bestMove(position, null);
+    }
+
+    synchronized String getBestMove(String fen) {
+        return bestMove(null, fen);
+    }
+
+    // Searches the position, or the FEN if there is no position; the position goes to the
+    // engine through StockfishEngine's reused FEN buffer, without a String per search
+    private String bestMove(ChessPosition position, String fen) {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS && !closed; attempt++) {
+            StockfishEngine current = ensureStarted();
+            if (current == null) continue;
+            int time = moveTime;
+            current.setSearchDepth(searchDepth);
+            current.setMoveTime(time);
+            long deadline = time > 0 ? time + GRACE_MILLIS : deadlineMillis;
+            String bestMove = callWithDeadline(current, deadline, true,
+                () -> position != null ? current.getBestMove(position) : current.getBestMove(fen));
+            if (closed) return null;
+            if (bestMove != null && current.isRunning()) {
+                backoffMillis = 0;
+                return bestMove;
+            }
+            lastError = timedOut ? "engine stopped answering" : "engine process exited";
+            fail(current);
+        }
+        return null;
+    }
+
+    // Runs call against the engine. At the deadline a search is sent "stop" (stopFirst), and
+    // GRACE_MILLIS later, or straight away without stopFirst, the process is killed.
+    private <T> T callWithDeadline(StockfishEngine target, long millis, boolean stopFirst, Supplier<T> call) {
+        AtomicInteger state = new AtomicInteger(RUNNING);
+        ScheduledFuture<?> stop = !stopFirst ? null : WATCHDOG.schedule(() -> {
+            if (state.compareAndSet(RUNNING, STOPPED)) target.stop();
+        }, millis, TimeUnit.MILLISECONDS);
+        ScheduledFuture<?> kill = WATCHDOG.schedule(() -> {
+            state.set(KILLED);
+            target.kill();
+        }, stopFirst ? millis + GRACE_MILLIS : millis, TimeUnit.MILLISECONDS);
+        T result;
+        try {
+            result = call.get();
+        } finally {
+            if (stop != null) stop.cancel(false);
+            kill.cancel(false);
+        }
+        timedOut = state.get() != RUNNING;
+        if (timedOut) {
+            timeouts.incrementAndGet();
+            PerformanceMetrics.get().recordEngineTimeout();
+        }
+        return result;
+    }
+
+    // A live engine, starting a new process if there is none; null if it could not be started
+    private StockfishEngine ensureStarted() {
+        StockfishEngine current = engine;
+        if (current != null && current.isRunning()) return current;
+        if (current != null) {
+            lastError = "engine process exited";
+            fail(current);
+        }
+        if (backoffMillis > 0) {
+            try {
+                Thread.sleep(backoffMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        if (closed) return null;
+        StockfishEngine started = new StockfishEngine(path, false);
+        if (!started.isRunning()) {
+            IOException failure = started.startFailure();
+            lastError = failure != null ? failure.getMessage() : "engine exited on start";
+            fail(started);
+            return null;
+        }
+        starting = started;
+        Boolean ready = callWithDeadline(started, HANDSHAKE_MILLIS, false, () -> {
+            started.handshake();
+            options.forEach(started::setOption);
+            return started.isRunning();
+        });
+        starting = null;
+        if (closed) {
+            started.kill();
+            return null;
+        }
+        // A process killed at the deadline can still look alive for a moment
+        if (!Boolean.TRUE.equals(ready) || timedOut) {
+            lastError = "engine did not complete the UCI handshake";
+            fail(started);
+            return null;
+        }
+        if (hadEngine) {
+            restarts.incrementAndGet();
+            PerformanceMetrics.get().recordEngineRestart();
+        }
+        hadEngine = true;
+        engine = started;
+        return started;
+    }
+
+    private void fail(StockfishEngine failed) {
+        failed.kill();
+        if (engine == failed) engine = null;
+        failures.incrementAndGet();
+        PerformanceMetrics.get().recordEngineFailure();
+        backoffMillis = backoffMillis == 0 ? MIN_BACKOFF_MILLIS : Math.min(2 * backoffMillis, MAX_BACKOFF_MILLIS);
+    }
+
+    String lastError() {
+        return lastError;
+    }
+
+    // Processes started after the first one (or after the adopted one)
+    long restarts() {
+        return restarts.get();
+    }
+
+    // Calls that ran into their deadline, whether or not the engine then answered
+    long timeouts() {
+        return timeouts.get();
+    }
+
+    // Processes given up on: exited, hung, or never started
+    long failures() {
+        return failures.get();
+    }
+
+    // Not synchronized, so it can end a search that is in progress
+    @Override
+    public void close() {
+        closed = true;
+        StockfishEngine current = engine;
+        if (current != null) current.close();
+        StockfishEngine handshaking = starting;
+        if (handshaking != null) handshaking.kill();
+    }
+}
@@ -0,0 +1,256 @@
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Runs an EPD test suite against a pool of engine processes, one single-threaded engine per
+// worker so throughput grows with the number of cores. A position is solved when the engine's
+// final move is one of its "bm" moves and none of its "am" moves; the time to solution is
+// when the principal variation last switched to that move.
+//   java EpdSuiteRunner <suite.epd> [--engine path] [--engines N] [--movetime ms | --depth N]
+//                       [--hash MB] [--verbose]
+class EpdSuiteRunner {
+    // One test position with its expected moves in UCI form
+    static final class TestPosition {
+        final int line;
+        final String fen;
+        final String id;
+        final Set<String> bestMoves = new HashSet<>();
+        final Set<String> avoidMoves = new HashSet<>();
+
+        TestPosition(int line, String fen, String id) {
+            this.line = line;
+            this.fen = fen;
+            this.id = id;
+        }
+
+        boolean isSolvedBy(String move) {
+            if (move == null) return false;
+            if (!bestMoves.isEmpty() && !bestMoves.contains(move)) return false;
+            return !avoidMoves.contains(move);
+        }
+    }
+
+    static final class Outcome {
+        final TestPosition position;
+        final String move;
+        final boolean solved;
+        final long solutionMillis;
+
+        Outcome(TestPosition position, String move, boolean solved, long solutionMillis) {
+            this.position = position;
+            this.move = move;
+            this.solved = solved;
+            this.solutionMillis = solutionMillis;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: EpdSuiteRunner <suite.epd> [--engine path] [--engines N] "
+                               + "[--movetime ms | --depth N] [--hash MB] [--verbose]");
+            System.exit(1);
+        }
+        String enginePath = StockfishEngine.DEFAULT_PATH;
+        int engines = Runtime.getRuntime().availableProcessors();
+        int moveTime = 1000;
+        int depth = 0;
+        int hash = 16;
+        boolean verbose = false;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--engine": enginePath = args[++i]; break;
+                case "--engines": engines = Integer.parseInt(args[++i]); break;
+                case "--movetime": moveTime = Integer.parseInt(args[++i]); depth = 0; break;
+                case "--depth": depth = Integer.parseInt(args[++i]); moveTime = 0; break;
+                case "--hash": hash = Integer.parseInt(args[++i]); break;
+                case "--verbose": verbose = true; break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        List<TestPosition> suite = readSuite(args[0]);
+        if (suite.isEmpty()) {
+            System.err.println("No positions with bm or am in " + args[0]);
+            System.exit(1);
+        }
+        engines = Math.max(1, Math.min(engines, suite.size()));
+
+        long start = System.nanoTime();
+        BlockingQueue<StockfishEngine> pool = startEngines(enginePath, engines, moveTime, depth, hash);
+        long startupMillis = (System.nanoTime() - start) / 1_000_000;
+
+        ExecutorService workers = Executors.newFixedThreadPool(engines);
+        List<Future<Outcome>> futures = new ArrayList<>(suite.size());
+        start = System.nanoTime();
+        for (TestPosition position : suite) {
+            futures.add(workers.submit(() -> {
+                StockfishEngine engine = pool.take();
+                try {
+                    return solve(engine, position);
+                } finally {
+                    pool.put(engine);
+                }
+            }));
+        }
+        List<Outcome> outcomes = new ArrayList<>(suite.size());
+        for (Future<Outcome> future : futures) {
+            Outcome outcome = future.get();
+            outcomes.add(outcome);
+            if (verbose || !outcome.solved) {
+                System.out.printf("%-6s %-24s %s %s (expected %s%s)%n", outcome.solved ? "ok" : "FAIL",
+                                  outcome.position.id, outcome.move, outcome.solved ? "in " + outcome.solutionMillis + " ms" : "",
+                                  outcome.position.bestMoves.isEmpty() ? "" : "bm " + outcome.position.bestMoves,
+                                  outcome.position.avoidMoves.isEmpty() ? "" : " am " + outcome.position.avoidMoves);
+            }
+        }
+        double wallSeconds = (System.nanoTime() - start) / 1e9;
+        workers.shutdown();
+        for (StockfishEngine engine : pool) engine.close();
+
+        report(outcomes, engines, moveTime, depth, wallSeconds, startupMillis);
+    }
+
+    static List<TestPosition> readSuite(String path) throws Exception {
+        List<TestPosition> suite = new ArrayList<>();
+        List<String> lines = Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            try {
+                TestPosition position = parse(i + 1, line);
+                if (!position.bestMoves.isEmpty() || !position.avoidMoves.isEmpty()) suite.add(position);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Line " + (i + 1) + ": " + e.getMessage());
+            }
+        }
+        return suite;
+    }
+
+    // Parses one EPD line; bm/am moves are given in SAN and resolved to UCI here
+    static TestPosition parse(int lineNumber, String line) {
+        ChessPosition board = new ChessPosition();
+        int operationsStart = Fen.loadEpd(line, board);
+        String fen = Fen.toFen(board);
+        String id = "line " + lineNumber;
+        List<String[]> operations = new ArrayList<>();
+        StringBuilder operation = new StringBuilder();
+        boolean quoted = false;
+        for (int i = operationsStart; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') quoted = !quoted;
+            if (c == ';' && !quoted) {
+                String text = operation.toString().trim();
+                if (!text.isEmpty()) operations.add(text.split("\\s+", 2));
+                operation.setLength(0);
+            } else {
+                operation.append(c);
+            }
+        }
+        String tail = operation.toString().trim();
+        if (!tail.isEmpty()) operations.add(tail.split("\\s+", 2));
+
+        for (String[] op : operations) {
+            if (op[0].equals("id") && op.length > 1) id = op[1].replace("\"", "");
+        }
+        TestPosition position = new TestPosition(lineNumber, fen, id);
+        for (String[] op : operations) {
+            if (op.length < 2 || (!op[0].equals("bm") && !op[0].equals("am"))) continue;
+            Set<String> target = op[0].equals("bm") ? position.bestMoves : position.avoidMoves;
+            for (String san : op[1].trim().split("\\s+")) {
+                int move = San.parse(board, san);
+                if (move == Move.NONE) throw new IllegalArgumentException("Cannot resolve " + op[0] + " " + san + " in " + id);
+                target.add(Move.toUci(move));
+            }
+        }
+        return position;
+    }
+
+    static BlockingQueue<StockfishEngine> startEngines(String path, int count, int moveTime, int depth, int hash)
+            throws Exception {
+        // Engines start in parallel; each one's UCI handshake is mostly waiting on its process
+        ExecutorService starter = Executors.newFixedThreadPool(count);
+        List<CompletableFuture<StockfishEngine>> starting = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            starting.add(CompletableFuture.supplyAsync(() -> {
+                StockfishEngine engine = new StockfishEngine(path);
+                if (!engine.isRunning()) {
+                    throw new IllegalStateException("Could not start engine " + path, engine.startFailure());
+                }
+                engine.setOption("Threads", "1");
+                engine.setOption("Hash", Integer.toString(hash));
+                if (moveTime > 0) engine.setMoveTime(moveTime);
+                else engine.setSearchDepth(depth);
+                return engine;
+            }, starter));
+        }
+        BlockingQueue<StockfishEngine> pool = new ArrayBlockingQueue<>(count);
+        try {
+            for (CompletableFuture<StockfishEngine> engine : starting) pool.add(engine.get());
+        } finally {
+            starter.shutdown();
+        }
+        return pool;
+    }
+
+    static Outcome solve(StockfishEngine engine, TestPosition position) {
+        engine.newGame();
+        // Time of the info line where the principal variation last switched to a correct move
+        long[] solvedAt = {-1};
+        String move = engine.getBestMove(position.fen, line -> {
+            int pv = line.indexOf(" pv ");
+            if (pv < 0) return;
+            int end = line.indexOf(' ', pv + 4);
+            String first = end < 0 ? line.substring(pv + 4) : line.substring(pv + 4, end);
+            if (!position.isSolvedBy(first)) {
+                solvedAt[0] = -1;
+            } else if (solvedAt[0] < 0) {
+                solvedAt[0] = Math.max(0, StockfishEngine.parseInfoField(line, " time "));
+            }
+        });
+        boolean solved = position.isSolvedBy(move);
+        return new Outcome(position, move, solved, solved ? Math.max(0, solvedAt[0]) : -1);
+    }
+
+    private static void report(List<Outcome> outcomes, int engines, int moveTime, int depth,
+                               double wallSeconds, long startupMillis) {
+        LatencyHistogram solutionTimes = new LatencyHistogram();
+        int solved = 0;
+        for (Outcome outcome : outcomes) {
+            if (!outcome.solved) continue;
+            solved++;
+            solutionTimes.record(outcome.solutionMillis * 1_000_000);
+        }
+        System.out.println();
+        System.out.printf("Solved %d / %d (%.1f%%) with %d engines at %s%n", solved, outcomes.size(),
+                          100.0 * solved / outcomes.size(), engines,
+                          moveTime > 0 ? moveTime + " ms per position" : "depth " + depth);
+        if (solved > 0) {
+            System.out.printf("Time to solution: mean %.0f ms, p50 %.0f ms, p90 %.0f ms, p99 %.0f ms%n",
+                              solutionTimes.getMean() / 1e6, solutionTimes.getPercentile(50) / 1e6,
+                              solutionTimes.getPercentile(90) / 1e6, solutionTimes.getPercentile(99) / 1e6);
+            long[] thresholds = {10, 100, 250, 500, 1000, 2000, 5000, 10000};
+            StringBuilder cumulative = new StringBuilder("Solved within:");
+            for (long threshold : thresholds) {
+                int within = 0;
+                for (Outcome outcome : outcomes) {
+                    if (outcome.solved && outcome.solutionMillis <= threshold) within++;
+                }
+                cumulative.append(String.format(" %s %d", threshold < 1000 ? threshold + "ms" : threshold / 1000 + "s", within));
+                if (within == solved) break;
+            }
+            System.out.println(cumulative);
+        }
+        System.out.printf("Wall time %.1f s (%.1f positions/sec), engine startup %d ms%n",
+                          wallSeconds, outcomes.size() / wallSeconds, startupMillis);
+    }
+}
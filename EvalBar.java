@@ -0,0 +1,67 @@
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
+import javafx.scene.text.TextAlignment;
+
+// Vertical evaluation bar beside the board: White's share grows from White's side of the
+// board, following the expected score for the engine's evaluation
+class EvalBar extends Canvas {
+    private EngineAnalysis.Info info;
+    private boolean flipped;
+
+    EvalBar(double width, double height) {
+        super(width, height);
+        draw();
+    }
+
+    void show(EngineAnalysis.Info info) {
+        this.info = info;
+        draw();
+    }
+
+    void setFlipped(boolean flipped) {
+        this.flipped = flipped;
+        draw();
+    }
+
+    void clear() {
+        info = null;
+        draw();
+    }
+
+    // Expected score for White, 0 to 1; mates fill the bar
+    static double whiteShare(EngineAnalysis.Info info) {
+        if (info == null) return 0.5;
+        if (info.mate) return info.whiteMates ? 1 : 0;
+        return 1 / (1 + Math.pow(10, -info.score / 400.0));
+    }
+
+    private void draw() {
+        GraphicsContext gc = getGraphicsContext2D();
+        double width = getWidth();
+        double height = getHeight();
+        double white = Math.round(height * whiteShare(info));
+        gc.setFill(Color.rgb(40, 40, 40));
+        gc.fillRect(0, 0, width, height);
+        gc.setFill(Color.rgb(240, 240, 240));
+        // White is at the bottom unless the board is flipped
+        gc.fillRect(0, flipped ? 0 : height - white, width, white);
+        gc.setStroke(Color.DARKGRAY);
+        gc.strokeRect(0.5, 0.5, width - 1, height - 1);
+        if (info == null) return;
+
+        boolean whiteAhead = whiteShare(info) >= 0.5;
+        gc.setFont(Font.font("Sans-Serif", FontWeight.BOLD, 10));
+        gc.setTextAlign(TextAlignment.CENTER);
+        gc.setTextBaseline(VPos.CENTER);
+        gc.setFill(whiteAhead ? Color.rgb(40, 40, 40) : Color.rgb(240, 240, 240));
+        // The score sits at the end of the leading side's share
+        boolean atBottom = whiteAhead != flipped;
+        String text = !info.mate ? String.format("%.1f", Math.abs(info.score) / 100.0)
+            : info.score == 0 ? "#" : "#" + Math.abs(info.score);
+        gc.fillText(text, width / 2, atBottom ? height - 10 : 10);
+    }
+}
@@ -0,0 +1,98 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+// Checks the incrementally maintained tapered score against a from-scratch recompute after
+// every move and take-back of random games, counting the castling, promotion and en passant
+// moves covered, then compares the cost of reading the score with recomputing it.
+//   java EvaluationBenchmark [--games N] [--seed N]
+class EvaluationBenchmark {
+    public static void main(String[] args) {
+        int games = 5000;
+        long seed = 11;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--games": games = Integer.parseInt(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        ChessPosition position = new ChessPosition();
+        MoveList moves = new MoveList();
+        ChessPosition.Undo[] undos = new ChessPosition.Undo[200];
+        for (int i = 0; i < undos.length; i++) undos[i] = new ChessPosition.Undo();
+        List<ChessPosition> samples = new ArrayList<>();
+        long checked = 0;
+        int mismatches = 0;
+        int castles = 0;
+        int promotions = 0;
+        int enPassants = 0;
+        int adjudicated = 0;
+        for (int game = 0; game < games; game++) {
+            position.setupInitial();
+            int ply = 0;
+            for (; ply < undos.length; ply++) {
+                moves.clear();
+                position.legalMoves(moves);
+                if (moves.size() == 0 || position.drawReason() != null) break;
+                int move = moves.get(random.nextInt(moves.size()));
+                ChessPosition.Undo undo = undos[ply];
+                position.makeMove(Move.fromRow(move), Move.fromCol(move), Move.toRow(move), Move.toCol(move),
+                                  Move.promotion(move), undo);
+                if (undo.castled) castles++;
+                if (undo.moved != position.board[undo.endRow][undo.endCol]) promotions++;
+                if (undo.captured != null && undo.capturedRow != undo.endRow) enPassants++;
+                if (!matches(position)) mismatches++;
+                if (samples.size() < 200_000) samples.add(position.copy());
+                checked++;
+            }
+            if (Evaluation.adjudicate(position, Evaluation.DECISIVE_MARGIN) != null) adjudicated++;
+            while (ply > 0) {
+                position.unmakeMove(undos[--ply]);
+                if (!matches(position)) mismatches++;
+                checked++;
+            }
+        }
+        System.out.printf("%,d positions checked from %,d random games (%,d castles, %,d promotions, %,d en passant), %d mismatches; "
+                          + "%d games ended %d cp or more ahead%n",
+                          checked, games, castles, promotions, enPassants, mismatches, adjudicated, Evaluation.DECISIVE_MARGIN);
+
+        // Reading the maintained score against recomputing it, over positions from the games above
+        long checksum = 0;
+        double incrementalNanos = 0;
+        double recomputeNanos = 0;
+        double orderNanos = 0;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (ChessPosition sample : samples) checksum += sample.staticEval();
+            incrementalNanos = (System.nanoTime() - start) / (double) samples.size();
+            start = System.nanoTime();
+            for (ChessPosition sample : samples) {
+                int[] scores = Evaluation.compute(sample.board);
+                checksum += Evaluation.taper(scores[0], scores[1], Evaluation.phase(sample.pieceCounts));
+            }
+            recomputeNanos = (System.nanoTime() - start) / (double) samples.size();
+
+            position.setupInitial();
+            int orderings = 20_000;
+            start = System.nanoTime();
+            for (int i = 0; i < orderings; i++) {
+                moves.clear();
+                position.legalMoves(moves);
+                Evaluation.orderMoves(position, moves);
+                checksum += moves.get(0);
+            }
+            orderNanos = (System.nanoTime() - start) / (double) orderings;
+        }
+        System.out.printf("maintained score  %8.1f ns per position%n", incrementalNanos);
+        System.out.printf("full recompute    %8.1f ns per position%n", recomputeNanos);
+        System.out.printf("generate and order the start position's moves %.1f us (checksum %d)%n", orderNanos / 1e3, checksum);
+        if (mismatches > 0) System.exit(1);
+    }
+
+    private static boolean matches(ChessPosition position) {
+        int[] scores = Evaluation.compute(position.board);
+        return scores[0] == position.mgScore && scores[1] == position.egScore;
+    }
+}
@@ -0,0 +1,210 @@
+import javafx.scene.paint.Color;
+
+// Forsyth-Edwards Notation helpers
+final class Fen {
+    static final String START_POSITION = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    // Longest possible FEN: 64 pieces and 7 separators, four castling rights, an en passant
+    // square and two 10-digit counters, plus the spaces and side to move
+    static final int MAX_LENGTH = 64 + 7 + 3 + 4 + 1 + 2 + 1 + 10 + 1 + 10;
+
+    private Fen() {
+    }
+
+    // Sets up the position from a full FEN; the two clock fields may be omitted
+    static void load(String fen, ChessPosition position) {
+        int end = load(fen, position, false);
+        if (end < fen.length() && !fen.substring(end).trim().isEmpty()) {
+            throw new IllegalArgumentException("Unexpected text after FEN: " + fen);
+        }
+    }
+
+    // Sets up the position from the four position fields of an EPD line and returns the
+    // index where its operations begin
+    static int loadEpd(String epd, ChessPosition position) {
+        return load(epd, position, true);
+    }
+
+    private static int load(String fen, ChessPosition position, boolean epd) {
+        int[] cursor = {0};
+        ChessPiece[][] board = parsePlacement(field(fen, cursor, "piece placement"));
+        int[] whiteKing = null;
+        int[] blackKing = null;
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                ChessPiece piece = board[row][col];
+                if (!(piece instanceof King)) continue;
+                if (piece.color == Color.WHITE && whiteKing == null) whiteKing = new int[] {row, col};
+                else if (piece.color == Color.BLACK && blackKing == null) blackKing = new int[] {row, col};
+                else throw new IllegalArgumentException("More than one king per side in FEN: " + fen);
+            }
+        }
+        if (whiteKing == null || blackKing == null) throw new IllegalArgumentException("FEN needs both kings: " + fen);
+
+        String side = field(fen, cursor, "side to move");
+        if (!side.equals("w") && !side.equals("b")) throw new IllegalArgumentException("Bad side to move in FEN: " + fen);
+        boolean whiteTurn = side.equals("w");
+
+        String castling = field(fen, cursor, "castling");
+        if (!castling.equals("-") && !castling.matches("K?Q?k?q?")) {
+            throw new IllegalArgumentException("Bad castling field in FEN: " + fen);
+        }
+
+        String enPassant = field(fen, cursor, "en passant");
+        int enPassantCol = -1;
+        if (!enPassant.equals("-")) {
+            char rank = whiteTurn ? '6' : '3';
+            if (enPassant.length() != 2 || enPassant.charAt(0) < 'a' || enPassant.charAt(0) > 'h'
+                    || enPassant.charAt(1) != rank) {
+                throw new IllegalArgumentException("Bad en passant square in FEN: " + fen);
+            }
+            enPassantCol = enPassant.charAt(0) - 'a';
+            ChessPiece passed = board[whiteTurn ? 3 : 4][enPassantCol];
+            if (!(passed instanceof Pawn) || (passed.color == Color.WHITE) == whiteTurn) {
+                throw new IllegalArgumentException("No pawn to take en passant in FEN: " + fen);
+            }
+        }
+
+        int halfmoveClock = 0;
+        int fullmoveNumber = 1;
+        if (!epd) {
+            String halfmove = optionalField(fen, cursor);
+            String fullmove = optionalField(fen, cursor);
+            try {
+                if (halfmove != null) halfmoveClock = Integer.parseInt(halfmove);
+                if (fullmove != null) fullmoveNumber = Integer.parseInt(fullmove);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad move counters in FEN: " + fen);
+            }
+            if (halfmoveClock < 0 || fullmoveNumber < 1) throw new IllegalArgumentException("Bad move counters in FEN: " + fen);
+        }
+
+        position.board = board;
+        position.whiteTurn = whiteTurn;
+        position.whiteKingPos = whiteKing;
+        position.blackKingPos = blackKing;
+        position.castlingRights.reset();
+        if (castling.indexOf('K') < 0) position.castlingRights.markRookMoved(Color.WHITE, false);
+        if (castling.indexOf('Q') < 0) position.castlingRights.markRookMoved(Color.WHITE, true);
+        if (castling.indexOf('k') < 0) position.castlingRights.markRookMoved(Color.BLACK, false);
+        if (castling.indexOf('q') < 0) position.castlingRights.markRookMoved(Color.BLACK, true);
+        position.enPassantCol = enPassantCol;
+        position.halfmoveClock = halfmoveClock;
+        position.fullmoveNumber = fullmoveNumber;
+        position.resetDerivedState();
+        return cursor[0];
+    }
+
+    private static String field(String fen, int[] cursor, String name) {
+        String value = optionalField(fen, cursor);
+        if (value == null) throw new IllegalArgumentException("FEN is missing the " + name + " field: " + fen);
+        return value;
+    }
+
+    private static String optionalField(String fen, int[] cursor) {
+        int start = cursor[0];
+        while (start < fen.length() && fen.charAt(start) == ' ') start++;
+        int end = start;
+        while (end < fen.length() && fen.charAt(end) != ' ') end++;
+        cursor[0] = end;
+        return start == end ? null : fen.substring(start, end);
+    }
+
+    static String toFen(ChessPosition position) {
+        char[] buffer = new char[MAX_LENGTH];
+        return new String(buffer, 0, write(position, buffer));
+    }
+
+    // Writes the FEN of the position into out (at least MAX_LENGTH long) and returns its
+    // length. Nothing is allocated, so a caller can reuse one buffer for every position.
+    static int write(ChessPosition position, char[] out) {
+        int n = 0;
+        for (int row = 0; row < 8; row++) {
+            int empty = 0;
+            for (int col = 0; col < 8; col++) {
+                ChessPiece piece = position.board[row][col];
+                if (piece == null) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    out[n++] = (char) ('0' + empty);
+                    empty = 0;
+                }
+                out[n++] = piece.fenSymbol();
+            }
+            if (empty > 0) out[n++] = (char) ('0' + empty);
+            if (row < 7) out[n++] = '/';
+        }
+        out[n++] = ' ';
+        out[n++] = position.whiteTurn ? 'w' : 'b';
+        out[n++] = ' ';
+        int castlingStart = n;
+        CastlingRights rights = position.castlingRights;
+        if (rights.canCastle(Color.WHITE, true)) out[n++] = 'K';
+        if (rights.canCastle(Color.WHITE, false)) out[n++] = 'Q';
+        if (rights.canCastle(Color.BLACK, true)) out[n++] = 'k';
+        if (rights.canCastle(Color.BLACK, false)) out[n++] = 'q';
+        if (n == castlingStart) out[n++] = '-';
+        out[n++] = ' ';
+        if (position.enPassantCol < 0) {
+            out[n++] = '-';
+        } else {
+            out[n++] = (char) ('a' + position.enPassantCol);
+            out[n++] = position.whiteTurn ? '6' : '3';
+        }
+        out[n++] = ' ';
+        n = writeNumber(position.halfmoveClock, out, n);
+        out[n++] = ' ';
+        return writeNumber(position.fullmoveNumber, out, n);
+    }
+
+    private static int writeNumber(int value, char[] out, int n) {
+        int digits = 1;
+        for (int rest = value / 10; rest > 0; rest /= 10) digits++;
+        for (int i = n + digits - 1; i >= n; i--) {
+            out[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return n + digits;
+    }
+
+    // Parses the piece placement field (the first field of a FEN or EPD line)
+    static ChessPiece[][] parsePlacement(String fen) {
+        ChessPiece[][] board = new ChessPiece[8][8];
+        int row = 0;
+        int col = 0;
+        for (int i = 0; i < fen.length(); i++) {
+            char c = fen.charAt(i);
+            if (c == ' ') break;
+            if (c == '/') {
+                if (col != 8) throw new IllegalArgumentException("Rank " + (8 - row) + " does not have 8 squares: " + fen);
+                row++;
+                col = 0;
+            } else if (c >= '1' && c <= '8') {
+                col += c - '0';
+            } else {
+                if (row > 7 || col > 7) throw new IllegalArgumentException("Too many squares in FEN: " + fen);
+                ChessPiece piece = createPiece(c, row, col);
+                if (piece == null) throw new IllegalArgumentException("Unknown piece '" + c + "' in FEN: " + fen);
+                board[row][col++] = piece;
+            }
+            if (col > 8) throw new IllegalArgumentException("Too many squares in FEN: " + fen);
+        }
+        if (row != 7 || col != 8) throw new IllegalArgumentException("FEN must describe 8 ranks: " + fen);
+        return board;
+    }
+
+    static ChessPiece createPiece(char symbol, int row, int col) {
+        Color color = Character.isUpperCase(symbol) ? Color.WHITE : Color.BLACK;
+        switch (Character.toLowerCase(symbol)) {
+            case 'p': return new Pawn(row, col, color);
+            case 'n': return new Knight(row, col, color);
+            case 'b': return new Bishop(row, col, color);
+            case 'r': return new Rook(row, col, color);
+            case 'q': return new Queen(row, col, color);
+            case 'k': return new King(row, col, color);
+            default: return null;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+// Round-trips every position of an EPD file through Fen.loadEpd and Fen.write, checks that
+// the four position fields come back unchanged, and reports throughput for both directions
+// plus the bytes the writer allocates per call.
+//   java FenBenchmark <positions.epd> [--rounds N]
+class FenBenchmark {
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: FenBenchmark <positions.epd> [--rounds N]");
+            System.exit(1);
+        }
+        int rounds = 5;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--rounds")) rounds = Integer.parseInt(args[++i]);
+            else throw new IllegalArgumentException("Unknown option " + args[i]);
+        }
+        List<String> lines = Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8);
+        lines.removeIf(line -> line.trim().isEmpty());
+        ChessPosition[] positions = new ChessPosition[lines.size()];
+        for (int i = 0; i < positions.length; i++) positions[i] = new ChessPosition();
+        char[] buffer = new char[Fen.MAX_LENGTH];
+
+        int mismatches = 0;
+        for (int i = 0; i < positions.length; i++) {
+            String line = lines.get(i).trim();
+            Fen.loadEpd(line, positions[i]);
+            if (!samePositionFields(line, buffer, Fen.write(positions[i], buffer))) {
+                if (mismatches++ < 5) {
+                    System.out.println("Mismatch: " + line + "\n      got " + new String(buffer, 0, Fen.write(positions[i], buffer)));
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < positions.length; i++) Fen.loadEpd(lines.get(i), positions[i]);
+        }
+        double parseSeconds = (System.nanoTime() - start) / 1e9;
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long checksum = 0;
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (ChessPosition position : positions) checksum += Fen.write(position, buffer) + buffer[0];
+        }
+        double writeSeconds = (System.nanoTime() - start) / 1e9;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        long total = (long) rounds * positions.length;
+        System.out.printf("%,d positions, %d mismatches%n", positions.length, mismatches);
+        System.out.printf("parse      %,.0f positions/sec%n", total / parseSeconds);
+        System.out.printf("write      %,.0f positions/sec, %.2f bytes allocated per write (checksum %d)%n",
+                          total / writeSeconds, (double) allocated / total, checksum);
+    }
+
+    // Compares the first four space-separated fields of the EPD line with the written FEN
+    private static boolean samePositionFields(String line, char[] fen, int length) {
+        int fields = 0;
+        int i = 0;
+        int j = 0;
+        while (fields < 4) {
+            while (i < line.length() && line.charAt(i) == ' ') i++;
+            while (i < line.length() && line.charAt(i) != ' ') {
+                if (j >= length || fen[j++] != line.charAt(i++)) return false;
+            }
+            if (j >= length || fen[j++] != ' ') return false;
+            fields++;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,17 @@
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+class FxGlyphSurface implements GlyphSurface {
+    private final GraphicsContext gc;
+
+    FxGlyphSurface(GraphicsContext gc) { this.gc = gc; }
+
+    @Override public void setFill(Color color) { gc.setFill(color); }
+    @Override public void setStroke(Color color) { gc.setStroke(color); }
+    @Override public void fillRect(double x, double y, double w, double h) { gc.fillRect(x, y, w, h); }
+    @Override public void strokeRect(double x, double y, double w, double h) { gc.strokeRect(x, y, w, h); }
+    @Override public void fillOval(double x, double y, double w, double h) { gc.fillOval(x, y, w, h); }
+    @Override public void strokeOval(double x, double y, double w, double h) { gc.strokeOval(x, y, w, h); }
+    @Override public void fillPolygon(double[] xPoints, double[] yPoints, int points) { gc.fillPolygon(xPoints, yPoints, points); }
+    @Override public void strokePolygon(double[] xPoints, double[] yPoints, int points) { gc.strokePolygon(xPoints, yPoints, points); }
+}
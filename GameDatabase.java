@@ -0,0 +1,157 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Memory-mapped binary game store written by GameDatabaseWriter.
+//
+// Layout (big-endian):
+//   header   magic "CHESSDB1", int version, int game count, long records offset, long reserved
+//   moves    every game's moves back to back, 16 bits each (see Move)
+//   records  one fixed-width RECORD_SIZE record per game, in game id order
+//
+// Record layout:
+//   0 long moves offset   8 int ply count   12 byte result   13 byte flags
+//   14 short white Elo    16 short black Elo 20 int date (yyyymmdd, 0 if unknown)
+//   24 White[32]          56 Black[32]       88 Event[32]    (UTF-8, zero padded)
+//
+// Because records are fixed width, game id n is found at recordsOffset + n * RECORD_SIZE, and
+// its moves at the offset the record holds, so any game is read without touching the others.
+class GameDatabase implements Closeable {
+    static final byte[] MAGIC = "CHESSDB1".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 128;
+    static final int NAME_SIZE = 32;
+    static final int MAX_PLIES = 0xFFFF;
+    static final String[] RESULTS = {"*", "1-0", "0-1", "1/2-1/2"};
+
+    // Large files are mapped in segments; move segments overlap by more than the longest game
+    private static final long SEGMENT_SIZE = 1L << 30;
+    private static final long SEGMENT_OVERLAP = 2L * MAX_PLIES + 2;
+
+    private final FileChannel channel;
+    private final int gameCount;
+    private final long recordsOffset;
+    private final MappedByteBuffer[] recordSegments;
+    private final MappedByteBuffer[] moveSegments;
+
+    private GameDatabase(FileChannel channel) throws IOException {
+        this.channel = channel;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) throw new IOException("Not a chess game database");
+        }
+        header.flip();
+        byte[] magic = new byte[MAGIC.length];
+        header.get(magic);
+        if (!java.util.Arrays.equals(magic, MAGIC)) throw new IOException("Not a chess game database");
+        int version = header.getInt();
+        if (version != VERSION) throw new IOException("Unsupported database version " + version);
+        gameCount = header.getInt();
+        recordsOffset = header.getLong();
+
+        long recordsLength = (long) gameCount * RECORD_SIZE;
+        // A truncated file is refused here rather than failing on a game that is not there
+        if (gameCount < 0 || recordsOffset < HEADER_SIZE || recordsOffset + recordsLength > channel.size()) {
+            throw new IOException("Truncated chess game database");
+        }
+        recordSegments = new MappedByteBuffer[(int) ((recordsLength + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+        for (int i = 0; i < recordSegments.length; i++) {
+            long start = i * SEGMENT_SIZE;
+            recordSegments[i] = channel.map(FileChannel.MapMode.READ_ONLY, recordsOffset + start,
+                                            Math.min(SEGMENT_SIZE, recordsLength - start));
+        }
+        long movesLength = recordsOffset - HEADER_SIZE;
+        moveSegments = new MappedByteBuffer[(int) Math.max(1, (movesLength + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+        for (int i = 0; i < moveSegments.length; i++) {
+            long start = i * SEGMENT_SIZE;
+            moveSegments[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + start,
+                                          Math.max(0, Math.min(SEGMENT_SIZE + SEGMENT_OVERLAP, movesLength - start)));
+        }
+    }
+
+    static GameDatabase open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new GameDatabase(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    int size() {
+        return gameCount;
+    }
+
+    private ByteBuffer records(int id) {
+        if (id < 0 || id >= gameCount) throw new IndexOutOfBoundsException("Game " + id + " of " + gameCount);
+        return recordSegments[(int) ((long) id * RECORD_SIZE / SEGMENT_SIZE)];
+    }
+
+    private int recordBase(int id) {
+        return (int) ((long) id * RECORD_SIZE % SEGMENT_SIZE);
+    }
+
+    int plyCount(int id) {
+        return records(id).getInt(recordBase(id) + 8);
+    }
+
+    // The ply-th move of game id, in O(1)
+    int move(int id, int ply) {
+        long start = records(id).getLong(recordBase(id)) - HEADER_SIZE;
+        ByteBuffer segment = moveSegments[(int) (start / SEGMENT_SIZE)];
+        return segment.getShort((int) (start % SEGMENT_SIZE) + 2 * ply) & 0xFFFF;
+    }
+
+    MoveList moves(int id) {
+        int plies = plyCount(id);
+        MoveList moves = new MoveList(plies);
+        for (int ply = 0; ply < plies; ply++) moves.add(move(id, ply));
+        return moves;
+    }
+
+    String result(int id) {
+        return RESULTS[records(id).get(recordBase(id) + 12)];
+    }
+
+    int whiteElo(int id) { return records(id).getShort(recordBase(id) + 14); }
+    int blackElo(int id) { return records(id).getShort(recordBase(id) + 16); }
+    int date(int id) { return records(id).getInt(recordBase(id) + 20); }
+    String white(int id) { return name(id, 24); }
+    String black(int id) { return name(id, 56); }
+    String event(int id) { return name(id, 88); }
+
+    private String name(int id, int fieldOffset) {
+        ByteBuffer records = records(id);
+        int base = recordBase(id) + fieldOffset;
+        byte[] bytes = new byte[NAME_SIZE];
+        int length = 0;
+        while (length < NAME_SIZE && records.get(base + length) != 0) {
+            bytes[length] = records.get(base + length);
+            length++;
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // Plays game id from the initial position onto the given position
+    void replayInto(int id, ChessPosition position) {
+        position.setupInitial();
+        int plies = plyCount(id);
+        for (int ply = 0; ply < plies; ply++) {
+            if (!Move.play(position, move(id, ply))) {
+                throw new IllegalStateException("Game " + id + " has an illegal move at ply " + (ply + 1));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
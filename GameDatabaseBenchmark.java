@@ -0,0 +1,81 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Imports a PGN file into a binary game database, then compares its size with the PGN and
+// measures how fast games can be scanned and replayed out of the mapped file.
+//   java GameDatabaseBenchmark <games.pgn> <games.chessdb>
+class GameDatabaseBenchmark {
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: GameDatabaseBenchmark <games.pgn> <games.chessdb>");
+            System.exit(1);
+        }
+        Path pgn = Paths.get(args[0]);
+        Path database = Paths.get(args[1]);
+
+        long start = System.nanoTime();
+        int skipped = 0;
+        try (PgnReader reader = PgnReader.open(pgn); GameDatabaseWriter writer = new GameDatabaseWriter(database)) {
+            while (reader.hasNext()) {
+                PgnGame game = reader.next();
+                if (game.hasError() || game.tags.containsKey("FEN") || game.moves.size() > GameDatabase.MAX_PLIES) {
+                    skipped++;
+                } else {
+                    writer.add(game);
+                }
+            }
+        }
+        double importSeconds = (System.nanoTime() - start) / 1e9;
+        long pgnSize = Files.size(pgn);
+        long databaseSize = Files.size(database);
+
+        try (GameDatabase games = GameDatabase.open(database)) {
+            int count = games.size();
+            System.out.printf("import     %,d games (%d skipped) in %.2f s: %,.0f games/sec%n",
+                              count, skipped, importSeconds, count / importSeconds);
+            System.out.printf("size       PGN %,d bytes, database %,d bytes (%.1f%%), %.1f bytes/game%n",
+                              pgnSize, databaseSize, 100.0 * databaseSize / pgnSize, (double) databaseSize / Math.max(1, count));
+
+            // Warm up, then time a scan of every move of every game
+            long checksum = scan(games);
+            start = System.nanoTime();
+            int rounds = 10;
+            long moves = 0;
+            for (int i = 0; i < rounds; i++) {
+                checksum += scan(games);
+                for (int id = 0; id < count; id++) moves += games.plyCount(id);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("scan       %,.0f games/sec, %,.0f moves/sec (checksum %x)%n",
+                              rounds * count / seconds, moves / seconds, checksum);
+
+            start = System.nanoTime();
+            ChessPosition position = new ChessPosition();
+            for (int id = 0; id < count; id++) games.replayInto(id, position);
+            seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("replay     %,.0f games/sec%n", count / seconds);
+
+            // Random access: each lookup touches only one record and one game's moves
+            java.util.SplittableRandom random = new java.util.SplittableRandom(1);
+            int lookups = 1_000_000;
+            start = System.nanoTime();
+            for (int i = 0; i < lookups && count > 0; i++) {
+                int id = random.nextInt(count);
+                int plies = games.plyCount(id);
+                if (plies > 0) checksum += games.move(id, random.nextInt(plies));
+            }
+            seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("lookup     %,.0f random moves/sec (checksum %x)%n", lookups / seconds, checksum);
+        }
+    }
+
+    private static long scan(GameDatabase games) {
+        long checksum = 0;
+        for (int id = 0; id < games.size(); id++) {
+            int plies = games.plyCount(id);
+            for (int ply = 0; ply < plies; ply++) checksum = checksum * 31 + games.move(id, ply);
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,147 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Appends games to a new GameDatabase file in one streaming pass. Moves go straight to the
+// output; records are spooled to a temporary file and appended when the writer is closed.
+class GameDatabaseWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel output;
+    private final Path recordsPath;
+    private final FileChannel records;
+    private final ByteBuffer moveBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ByteBuffer recordBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long movesOffset = GameDatabase.HEADER_SIZE;
+    private int gameCount;
+    // Fingerprints of the games added so far, when duplicates are being skipped
+    private GameFingerprintSet fingerprints;
+    private long duplicates;
+
+    GameDatabaseWriter(Path path) throws IOException {
+        output = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                                  StandardOpenOption.WRITE, StandardOpenOption.READ);
+        recordsPath = Files.createTempFile(path.toAbsolutePath().getParent(), "records", ".tmp");
+        records = FileChannel.open(recordsPath, StandardOpenOption.WRITE, StandardOpenOption.READ,
+                                   StandardOpenOption.DELETE_ON_CLOSE);
+        output.position(GameDatabase.HEADER_SIZE);
+    }
+
+    int size() {
+        return gameCount;
+    }
+
+    // From now on add(PgnGame) skips games whose moves and final position match one already
+    // added; expectedGames sizes the off-heap fingerprint set up front
+    void skipDuplicates(long expectedGames) {
+        fingerprints = new GameFingerprintSet(expectedGames);
+    }
+
+    long duplicates() {
+        return duplicates;
+    }
+
+    long fingerprintBytes() {
+        return fingerprints == null ? 0 : fingerprints.offHeapBytes();
+    }
+
+    // Returns the new game's id, or -1 for a duplicate skipped. Games are replayed from the
+    // standard start position, so games set up from a FEN cannot be stored.
+    int add(PgnGame game) throws IOException {
+        if (game.tags.containsKey("FEN")) throw new IllegalArgumentException("Games set up from a FEN cannot be stored");
+        if (fingerprints != null && !fingerprints.add(GameFingerprintSet.moveHash(game.moves), game.finalHash)) {
+            duplicates++;
+            return -1;
+        }
+        return add(game.moves, game.result, game.tags.get("White"), game.tags.get("Black"), game.tags.get("Event"),
+                   game.tags.get("Date"), game.tags.get("WhiteElo"), game.tags.get("BlackElo"));
+    }
+
+    int add(MoveList moves, String result, String white, String black, String event,
+            String date, String whiteElo, String blackElo) throws IOException {
+        if (moves.size() > GameDatabase.MAX_PLIES) {
+            throw new IllegalArgumentException("Games are limited to " + GameDatabase.MAX_PLIES + " plies");
+        }
+        if (recordBuffer.remaining() < GameDatabase.RECORD_SIZE) flush(recordBuffer, records);
+        int base = recordBuffer.position();
+        recordBuffer.putLong(movesOffset);
+        recordBuffer.putInt(moves.size());
+        recordBuffer.put((byte) Math.max(0, java.util.Arrays.asList(GameDatabase.RESULTS).indexOf(result)));
+        recordBuffer.put((byte) 0);
+        recordBuffer.putShort((short) parseInt(whiteElo));
+        recordBuffer.putShort((short) parseInt(blackElo));
+        recordBuffer.putShort((short) 0);
+        recordBuffer.putInt(parseDate(date));
+        putName(white);
+        putName(black);
+        putName(event);
+        while (recordBuffer.position() < base + GameDatabase.RECORD_SIZE) recordBuffer.put((byte) 0);
+
+        for (int i = 0; i < moves.size(); i++) {
+            if (!moveBuffer.hasRemaining()) flush(moveBuffer, output);
+            moveBuffer.putShort((short) moves.get(i));
+        }
+        movesOffset += 2L * moves.size();
+        return gameCount++;
+    }
+
+    private void putName(String value) {
+        byte[] bytes = value == null || value.equals("?") ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, GameDatabase.NAME_SIZE);
+        // Never cut a multi-byte character in half
+        while (length < bytes.length && length > 0 && (bytes[length] & 0xC0) == 0x80) length--;
+        recordBuffer.put(bytes, 0, length);
+        for (int i = length; i < GameDatabase.NAME_SIZE; i++) recordBuffer.put((byte) 0);
+    }
+
+    private static int parseInt(String value) {
+        if (value == null) return 0;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // "2024.03.17" becomes 20240317; unknown parts ("??") become zero
+    private static int parseDate(String value) {
+        if (value == null) return 0;
+        String[] parts = value.split("\\.");
+        int[] fields = new int[3];
+        for (int i = 0; i < parts.length && i < 3; i++) fields[i] = parseInt(parts[i]);
+        return fields[0] * 10000 + fields[1] * 100 + fields[2];
+    }
+
+    private static void flush(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush(moveBuffer, output);
+            flush(recordBuffer, records);
+            long recordsOffset = movesOffset;
+            long recordsLength = records.size();
+            long copied = 0;
+            while (copied < recordsLength) {
+                copied += records.transferTo(copied, recordsLength - copied, output.position(recordsOffset + copied));
+            }
+            ByteBuffer header = ByteBuffer.allocate(GameDatabase.HEADER_SIZE);
+            header.put(GameDatabase.MAGIC).putInt(GameDatabase.VERSION).putInt(gameCount).putLong(recordsOffset).putLong(0);
+            header.flip();
+            output.write(header, 0);
+        } finally {
+            records.close();
+            output.close();
+            Files.deleteIfExists(recordsPath);
+        }
+    }
+}
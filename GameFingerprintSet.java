@@ -0,0 +1,107 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Set of 128-bit game fingerprints kept outside the Java heap, for spotting duplicate games
+// while importing very large collections. A fingerprint is the hash of the move sequence
+// together with the Zobrist hash of the final position, so two games collide only if both
+// 64-bit halves do.
+//
+// Open addressing with linear probing over 16-byte slots in direct buffers of at most
+// SEGMENT_SLOTS slots each, since one buffer cannot exceed 2 GB; all zero marks an empty slot.
+// The table doubles when it is three-quarters full. Direct memory is capped by
+// -XX:MaxDirectMemorySize (the heap size by default): 100 million games need 4 GB.
+final class GameFingerprintSet {
+    private static final int SLOT_BYTES = 16;
+    private static final int SEGMENT_BITS = 26;
+    private static final long SEGMENT_SLOTS = 1L << SEGMENT_BITS;
+    private static final long MIN_CAPACITY = 1 << 10;
+
+    private ByteBuffer[] segments;
+    private long mask;
+    private long size;
+
+    // Sized so that expectedEntries fit without growing
+    GameFingerprintSet(long expectedEntries) {
+        long capacity = MIN_CAPACITY;
+        while (capacity * 3 / 4 < expectedEntries) capacity <<= 1;
+        allocate(capacity);
+    }
+
+    private void allocate(long capacity) {
+        int count = (int) Math.max(1, capacity / SEGMENT_SLOTS);
+        segments = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = ByteBuffer.allocateDirect((int) (Math.min(capacity, SEGMENT_SLOTS) * SLOT_BYTES))
+                .order(ByteOrder.nativeOrder());
+        }
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    // True if the fingerprint was not in the set and has been added
+    boolean add(long moveHash, long positionHash) {
+        // All zero is reserved for empty slots
+        if (moveHash == 0 && positionHash == 0) moveHash = 1;
+        if (size + 1 > (mask + 1) * 3 / 4) grow();
+        for (long slot = mix(moveHash, positionHash) & mask; ; slot = (slot + 1) & mask) {
+            ByteBuffer segment = segments[(int) (slot >>> SEGMENT_BITS)];
+            int offset = (int) (slot & (SEGMENT_SLOTS - 1)) * SLOT_BYTES;
+            long first = segment.getLong(offset);
+            long second = segment.getLong(offset + 8);
+            if (first == moveHash && second == positionHash) return false;
+            if (first == 0 && second == 0) {
+                segment.putLong(offset, moveHash);
+                segment.putLong(offset + 8, positionHash);
+                size++;
+                return true;
+            }
+        }
+    }
+
+    private void grow() {
+        ByteBuffer[] old = segments;
+        long oldCapacity = mask + 1;
+        allocate(oldCapacity << 1);
+        for (long slot = 0; slot < oldCapacity; slot++) {
+            ByteBuffer segment = old[(int) (slot >>> SEGMENT_BITS)];
+            int offset = (int) (slot & (SEGMENT_SLOTS - 1)) * SLOT_BYTES;
+            long first = segment.getLong(offset);
+            long second = segment.getLong(offset + 8);
+            if (first != 0 || second != 0) add(first, second);
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    long capacity() {
+        return mask + 1;
+    }
+
+    long offHeapBytes() {
+        return capacity() * SLOT_BYTES;
+    }
+
+    // The two halves are already well mixed, but identical openings make the position hashes
+    // of short games cluster, so they are combined through a finaliser before probing
+    private static long mix(long a, long b) {
+        long h = a * 0x9E3779B97F4A7C15L ^ b;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    // Order-dependent hash of a move sequence, so transpositions into the same final position
+    // still count as different games
+    static long moveHash(MoveList moves) {
+        long h = moves.size();
+        for (int i = 0; i < moves.size(); i++) {
+            h = (h ^ moves.get(i)) * 0x9E3779B97F4A7C15L;
+            h ^= h >>> 29;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,57 @@
+import java.lang.management.ManagementFactory;
+import java.util.SplittableRandom;
+
+// Fills a GameFingerprintSet with random fingerprints, a share of them repeats, and checks
+// every answer; reports inserts/sec as the table fills and the heap used alongside, which
+// should stay flat however many entries there are.
+//   java -XX:MaxDirectMemorySize=4g GameFingerprintSetBenchmark [--entries N] [--duplicates fraction] [--presize]
+class GameFingerprintSetBenchmark {
+    public static void main(String[] args) {
+        long entries = 50_000_000;
+        double duplicateRate = 0.1;
+        boolean presize = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--entries": entries = Long.parseLong(args[++i]); break;
+                case "--duplicates": duplicateRate = Double.parseDouble(args[++i]); break;
+                case "--presize": presize = true; break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        GameFingerprintSet set = new GameFingerprintSet(presize ? entries : 0);
+        // Fingerprint i is derived from i, so a repeat is recognisable by regenerating it
+        SplittableRandom random = new SplittableRandom(9);
+        long added = 0;
+        long repeats = 0;
+        long wrong = 0;
+        long report = Math.max(1, entries / 5);
+        long start = System.nanoTime();
+        long last = start;
+        for (long i = 0; i < entries; i++) {
+            boolean repeat = added > 0 && random.nextDouble() < duplicateRate;
+            long id = repeat ? random.nextLong(added) : added;
+            boolean fresh = set.add(fingerprint(id, 0), fingerprint(id, 1));
+            if (fresh == repeat) wrong++;
+            if (repeat) repeats++;
+            else added++;
+            if ((i + 1) % report == 0) {
+                long now = System.nanoTime();
+                System.out.printf("%,13d inserts  %,11.0f/sec  table %,d slots (%,d MB off-heap), heap used %,d MB%n",
+                                  i + 1, report / ((now - last) / 1e9), set.capacity(), set.offHeapBytes() >> 20,
+                                  ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() >> 20);
+                last = now;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%,d inserts (%,d repeats) in %.1f s: %,.0f/sec, %d wrong answers, %,d entries%n",
+                          entries, repeats, seconds, entries / seconds, wrong, set.size());
+        if (wrong > 0 || set.size() != added) System.exit(1);
+    }
+
+    private static long fingerprint(long id, int half) {
+        long h = id * 0x9E3779B97F4A7C15L + half;
+        h ^= h >>> 31;
+        h *= 0xBF58476D1CE4E5B9L;
+        return h ^ (h >>> 29);
+    }
+}
@@ -0,0 +1,13 @@
+import javafx.scene.paint.Color;
+
+// The drawing primitives piece glyphs use, so the same shapes render on a Canvas, Java2D or SVG
+interface GlyphSurface {
+    void setFill(Color color);
+    void setStroke(Color color);
+    void fillRect(double x, double y, double w, double h);
+    void strokeRect(double x, double y, double w, double h);
+    void fillOval(double x, double y, double w, double h);
+    void strokeOval(double x, double y, double w, double h);
+    void fillPolygon(double[] xPoints, double[] yPoints, int points);
+    void strokePolygon(double[] xPoints, double[] yPoints, int points);
+}
@@ -0,0 +1,22 @@
+import javafx.scene.paint.Color;
+
+class King extends ChessPiece {
+    King(int row, int col, Color color) { super(row, col, color); }
+    @Override ChessPiece copy() { return new King(row, col, color); }
+    @Override char symbol() { return 'K'; }
+    @Override public boolean isValidMove(int newRow, int newCol) {
+        return Math.abs(row - newRow) <= 1 && Math.abs(col - newCol) <= 1;
+    }
+    @Override void drawGlyph(GlyphSurface gc, int x, int y) {
+        gc.setFill(color);
+        gc.fillRect(x + 15, y + 35, 20, 5);
+        gc.fillOval(x + 15, y + 15, 20, 20);
+        gc.fillRect(x + 23, y + 5, 4, 15);
+        gc.fillRect(x + 18, y + 10, 14, 4);
+        gc.setStroke(color == Color.WHITE ? Color.BLACK : Color.WHITE);
+        gc.strokeRect(x + 15, y + 35, 20, 5);
+        gc.strokeOval(x + 15, y + 15, 20, 20);
+        gc.strokeRect(x + 23, y + 5, 4, 15);
+        gc.strokeRect(x + 18, y + 10, 14, 4);
+    }
+}
@@ -0,0 +1,24 @@
+import javafx.scene.paint.Color;
+
+class Knight extends ChessPiece {
+    Knight(int row, int col, Color color) { super(row, col, color); }
+    @Override ChessPiece copy() { return new Knight(row, col, color); }
+    @Override char symbol() { return 'N'; }
+    @Override public boolean isValidMove(int newRow, int newCol) {
+        int rowDiff = Math.abs(row - newRow);
+        int colDiff = Math.abs(col - newCol);
+        return (rowDiff == 2 && colDiff == 1) || (rowDiff == 1 && colDiff == 2);
+    }
+    @Override void drawGlyph(GlyphSurface gc, int x, int y) {
+        gc.setFill(color);
+        gc.fillRect(x + 15, y + 35, 20, 5);
+        gc.fillOval(x + 15, y + 20, 20, 15);
+        double[] xPoints = {x + 20, x + 30, x + 35, x + 25, x + 15};
+        double[] yPoints = {y + 5, y + 5, y + 15, y + 20, y + 20};
+        gc.fillPolygon(xPoints, yPoints, 5);
+        gc.setStroke(color == Color.WHITE ? Color.BLACK : Color.WHITE);
+        gc.strokeRect(x + 15, y + 35, 20, 5);
+        gc.strokeOval(x + 15, y + 20, 20, 15);
+        gc.strokePolygon(xPoints, yPoints, 5);
+    }
+}
@@ -0,0 +1,228 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// A stand-in UCI engine for benchmarks and CI machines without Stockfish. It answers the
+// handshake and options like a real engine, streams "info" lines at a chosen rate, and after
+// an injected delay replies with the next scripted move or, with no script, the first legal
+// move of the position. "stop" ends a search early, as it would in a real engine. It can
+// also crash or hang on a share of searches, to exercise EngineSupervisor.
+//   java MockUciEngine [--info N] [--info-interval us] [--delay ms] [--moves e2e4,e7e5,...]
+//                      [--crash-rate p] [--hang-rate p] [--seed N]
+// Engine paths of the form "mock" or "mock:<options>" start it; see StockfishEngine.command.
+class MockUciEngine {
+    private final int infoLines;
+    private final long infoIntervalMicros;
+    // Negative: use the search's movetime, or answer at once for depth searches
+    private final long delayMillis;
+    private final List<String> script;
+    private final double crashRate;
+    private final double hangRate;
+    private final SplittableRandom random;
+
+    private final BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.US_ASCII), 1 << 14);
+    private final ChessPosition position = new ChessPosition();
+    private final MoveList moves = new MoveList();
+    private int scriptIndex;
+    // Searches run here so that "stop" and "isready" are still read while one is going
+    private final ExecutorService searcher = Executors.newSingleThreadExecutor();
+    private Future<?> search;
+    private volatile CountDownLatch stopped = new CountDownLatch(0);
+
+    MockUciEngine(int infoLines, long infoIntervalMicros, long delayMillis, List<String> script,
+                  double crashRate, double hangRate, long seed) {
+        this.infoLines = infoLines;
+        this.infoIntervalMicros = infoIntervalMicros;
+        this.delayMillis = delayMillis;
+        this.script = script;
+        this.crashRate = crashRate;
+        this.hangRate = hangRate;
+        this.random = new SplittableRandom(seed);
+        position.setupInitial();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int infoLines = 10;
+        long infoInterval = 0;
+        long delay = -1;
+        List<String> script = new ArrayList<>();
+        double crashRate = 0;
+        double hangRate = 0;
+        long seed = System.nanoTime();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--info": infoLines = Integer.parseInt(args[++i]); break;
+                case "--info-interval": infoInterval = Long.parseLong(args[++i]); break;
+                case "--delay": delay = Long.parseLong(args[++i]); break;
+                case "--moves": script.addAll(Arrays.asList(args[++i].split(","))); break;
+                case "--crash-rate": crashRate = Double.parseDouble(args[++i]); break;
+                case "--hang-rate": hangRate = Double.parseDouble(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        new MockUciEngine(infoLines, infoInterval, delay, script, crashRate, hangRate, seed).run();
+    }
+
+    // The command line that starts the mock with the given options, on this JVM, class path
+    // and module path. Positions and FEN use JavaFX's Color, so under --module-path the
+    // child needs javafx.graphics too.
+    static List<String> command(String... options) {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        String modulePath = System.getProperty("jdk.module.path");
+        if (modulePath != null && !modulePath.isEmpty()) {
+            command.add("--module-path");
+            command.add(modulePath);
+            command.add("--add-modules");
+            command.add("javafx.graphics");
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(MockUciEngine.class.getName());
+        command.addAll(Arrays.asList(options));
+        return command;
+    }
+
+    private void run() throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.US_ASCII));
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.equals("uci")) {
+                send("id name MockUciEngine\nid author chessgame\n"
+                     + "option name Hash type spin default 16 min 1 max 33554432\n"
+                     + "option name Threads type spin default 1 min 1 max 1024\n"
+                     + "option name MultiPV type spin default 1 min 1 max 500\nuciok");
+            } else if (line.equals("isready")) {
+                send("readyok");
+            } else if (line.startsWith("position ")) {
+                awaitSearch();
+                setPosition(line);
+            } else if (line.startsWith("go")) {
+                awaitSearch();
+                go(line);
+            } else if (line.equals("stop")) {
+                stopped.countDown();
+            } else if (line.equals("ucinewgame")) {
+                awaitSearch();
+                scriptIndex = 0;
+            } else if (line.equals("quit")) {
+                break;
+            }
+            // setoption and anything unknown are accepted silently, as real engines do
+        }
+        stopped.countDown();
+        awaitSearch();
+        searcher.shutdown();
+    }
+
+    // "position fen <fen> [moves ...]" or "position startpos [moves ...]"
+    private void setPosition(String line) {
+        int movesAt = line.indexOf(" moves ");
+        String setup = movesAt < 0 ? line : line.substring(0, movesAt);
+        if (setup.startsWith("position fen ")) Fen.load(setup.substring(13).trim(), position);
+        else position.setupInitial();
+        if (movesAt >= 0) {
+            for (String uci : line.substring(movesAt + 7).trim().split("\\s+")) {
+                Move.play(position, Move.fromUci(uci));
+            }
+        }
+    }
+
+    private void go(String line) {
+        double roll = random.nextDouble();
+        if (roll < crashRate) {
+            System.exit(3);
+        }
+        if (roll < crashRate + hangRate) {
+            // Stops reading and answering, like an engine stuck in a loop
+            while (true) {
+                try {
+                    Thread.sleep(Long.MAX_VALUE);
+                } catch (InterruptedException ignored) {
+                }
+            }
+        }
+        long moveTime = StockfishEngine.parseInfoField(line, " movetime ");
+        long depth = StockfishEngine.parseInfoField(line, " depth ");
+        boolean infinite = line.contains(" infinite");
+        long delay = delayMillis >= 0 ? delayMillis : Math.max(0, moveTime);
+        String bestMove = nextMove();
+        CountDownLatch stop = new CountDownLatch(1);
+        stopped = stop;
+        search = searcher.submit(() -> search(bestMove, depth > 0 ? (int) depth : 20, delay, infinite, stop));
+    }
+
+    private String nextMove() {
+        if (!script.isEmpty()) return script.get(scriptIndex++ % script.size());
+        moves.clear();
+        position.legalMoves(moves);
+        return moves.size() == 0 ? "(none)" : Move.toUci(moves.get(0));
+    }
+
+    // Streams the info lines spread over the delay (or at the configured interval), then
+    // answers; a "stop" cuts both short
+    private void search(String bestMove, int maxDepth, long delay, boolean infinite, CountDownLatch stop) {
+        long start = System.nanoTime();
+        long nodes = 0;
+        long interval = infoIntervalMicros > 0 ? infoIntervalMicros
+                        : infoLines > 0 ? delay * 1000 / infoLines : 0;
+        try {
+            for (int i = 0; i < infoLines; i++) {
+                if (interval > 0 && stop.await(interval, TimeUnit.MICROSECONDS)) break;
+                if (stop.getCount() == 0) break;
+                nodes += 1500L << Math.min(i, 20);
+                long elapsed = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+                int depth = 1 + i * maxDepth / Math.max(1, infoLines);
+                send("info depth " + depth + " seldepth " + (depth + 4) + " multipv 1 score cp " + (20 + (i * 7) % 31 - 15)
+                     + " nodes " + nodes + " nps " + nodes * 1000 / elapsed + " hashfull " + i % 1000
+                     + " tbhits 0 time " + elapsed + " pv " + bestMove + " e7e5 g1f3 b8c6 f1b5 a7a6");
+            }
+            long remaining = delay * 1_000_000 - (System.nanoTime() - start);
+            if (infinite) stop.await();
+            else if (remaining > 0) stop.await(remaining, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        send("bestmove " + bestMove);
+    }
+
+    private void awaitSearch() {
+        if (search == null) return;
+        try {
+            search.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+        search = null;
+    }
+
+    private void send(String text) {
+        synchronized (out) {
+            try {
+                out.write(text);
+                out.write('\n');
+                out.flush();
+            } catch (IOException e) {
+                // The other end has gone; nothing left to answer
+                System.exit(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+// Moves packed into 16 bits: from square (6 bits), to square (6 bits), promotion (4 bits).
+// Squares are indexed row * 8 + col, matching ChessPosition.
+final class Move {
+    static final int NONE = -1;
+
+    private static final String PROMOTIONS = " nbrq";
+
+    private Move() {
+    }
+
+    static int encode(int fromRow, int fromCol, int toRow, int toCol, char promotion) {
+        int promotionCode = Math.max(0, PROMOTIONS.indexOf(Character.toLowerCase(promotion)));
+        return (fromRow * 8 + fromCol) | (toRow * 8 + toCol) << 6 | promotionCode << 12;
+    }
+
+    static int from(int move) { return move & 63; }
+    static int to(int move) { return (move >>> 6) & 63; }
+    static int fromRow(int move) { return from(move) >>> 3; }
+    static int fromCol(int move) { return from(move) & 7; }
+    static int toRow(int move) { return to(move) >>> 3; }
+    static int toCol(int move) { return to(move) & 7; }
+
+    // 'n', 'b', 'r', 'q' or ' ' for no promotion
+    static char promotion(int move) {
+        return PROMOTIONS.charAt((move >>> 12) & 15);
+    }
+
+    static String toUci(int move) {
+        StringBuilder uci = new StringBuilder(5)
+            .append((char) ('a' + fromCol(move))).append((char) ('8' - fromRow(move)))
+            .append((char) ('a' + toCol(move))).append((char) ('8' - toRow(move)));
+        if (promotion(move) != ' ') uci.append(promotion(move));
+        return uci.toString();
+    }
+
+    static int fromUci(String uci) {
+        if (uci == null || uci.length() < 4) return NONE;
+        char promotion = uci.length() >= 5 ? uci.charAt(4) : ' ';
+        return encode('8' - uci.charAt(1), uci.charAt(0) - 'a', '8' - uci.charAt(3), uci.charAt(2) - 'a', promotion);
+    }
+
+    // Plays the move on the position; false if it is illegal there
+    static boolean play(ChessPosition position, int move) {
+        return position.makeMove(fromRow(move), fromCol(move), toRow(move), toCol(move), promotion(move));
+    }
+}
@@ -0,0 +1,38 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// JDK Flight Recorder events for the hot paths: this one, EngineCommandEvent, BoardDrawEvent
+// and CheckStatusEvent. Record with:
+//   java -XX:StartFlightRecording=filename=chess.jfr ... ChessGame
+// Fields are only filled in when shouldCommit() is true, so disabled events cost a branch.
+@Name("chess.MoveGeneration")
+@Label("Move Generation")
+@Category({"Chess", "Rules"})
+@Description("Legal move generation or validation on the game board")
+@StackTrace(false)
+class MoveGenerationEvent extends Event {
+    static final String LEGAL_MOVES = "legalMoves";
+    static final String VALIDATE_MOVE = "validateMove";
+    static final String CHECKMATE = "checkmate";
+    static final String STALEMATE = "stalemate";
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Position Hash")
+    long positionHash;
+
+    @Label("Square")
+    @Description("Origin square in algebraic notation, if the operation concerns one piece")
+    String square;
+
+    @Label("Moves Found")
+    int movesFound;
+
+    @Label("Result")
+    boolean result;
+}
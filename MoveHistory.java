@@ -0,0 +1,81 @@
+import java.util.Arrays;
+
+// The moves of the current game with one undo record per ply. Plies past current() have been
+// taken back and can be redone; playing a new move there discards them. Every step is a single
+// makeMove or unmakeMove, never a replay from the start.
+final class MoveHistory {
+    private final MoveList moves = new MoveList(256);
+    private ChessPosition.Undo[] undos = new ChessPosition.Undo[256];
+    private int current;
+
+    void clear() {
+        moves.clear();
+        current = 0;
+    }
+
+    // Plies in the game, including any that have been undone
+    int size() {
+        return moves.size();
+    }
+
+    // Plies currently played on the board
+    int current() {
+        return current;
+    }
+
+    boolean canUndo() {
+        return current > 0;
+    }
+
+    boolean canRedo() {
+        return current < moves.size();
+    }
+
+    // The move played at the given ply
+    int move(int ply) {
+        return moves.get(ply);
+    }
+
+    // Plays a new move after the current ply; false (and nothing changes) if it is illegal
+    boolean play(ChessPosition position, int move) {
+        if (current == undos.length) undos = Arrays.copyOf(undos, current * 2);
+        if (undos[current] == null) undos[current] = new ChessPosition.Undo();
+        if (!position.makeMove(Move.fromRow(move), Move.fromCol(move), Move.toRow(move), Move.toCol(move),
+                               Move.promotion(move), undos[current])) {
+            return false;
+        }
+        moves.truncate(current);
+        moves.add(move);
+        current++;
+        return true;
+    }
+
+    boolean undo(ChessPosition position) {
+        if (!canUndo()) return false;
+        position.unmakeMove(undos[--current]);
+        return true;
+    }
+
+    boolean redo(ChessPosition position) {
+        if (!canRedo()) return false;
+        int move = moves.get(current);
+        position.makeMove(Move.fromRow(move), Move.fromCol(move), Move.toRow(move), Move.toCol(move),
+                          Move.promotion(move), undos[current]);
+        current++;
+        return true;
+    }
+
+    void goTo(ChessPosition position, int ply) {
+        while (current > ply && undo(position)) {
+        }
+        while (current < ply && redo(position)) {
+        }
+    }
+
+    // The moves up to the current ply, for saving the game as it stands on the board
+    MoveList playedMoves() {
+        MoveList played = new MoveList(current);
+        for (int i = 0; i < current; i++) played.add(moves.get(i));
+        return played;
+    }
+}
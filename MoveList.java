@@ -0,0 +1,46 @@
+import java.util.Arrays;
+
+// Growable list of encoded moves without boxing
+final class MoveList {
+    private int[] moves;
+    private int size;
+
+    MoveList() {
+        this(64);
+    }
+
+    MoveList(int capacity) {
+        moves = new int[Math.max(capacity, 1)];
+    }
+
+    void add(int move) {
+        if (size == moves.length) moves = Arrays.copyOf(moves, size * 2);
+        moves[size++] = move;
+    }
+
+    int get(int index) {
+        if (index >= size) throw new IndexOutOfBoundsException(index + " >= " + size);
+        return moves[index];
+    }
+
+    void set(int index, int move) {
+        if (index >= size) throw new IndexOutOfBoundsException(index + " >= " + size);
+        moves[index] = move;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void truncate(int newSize) {
+        size = Math.min(size, newSize);
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    int[] toArray() {
+        return Arrays.copyOf(moves, size);
+    }
+}
@@ -0,0 +1,255 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import javafx.scene.paint.Color;
+
+// NNUE-style evaluation network: (768 -> HIDDEN) x 2 perspectives -> 1, quantised to 16-bit
+// weights with a clipped ReLU. The first layer's output (the accumulator) only changes in the
+// columns of the pieces a move touches, so it is updated incrementally; see Accumulators.
+//
+// File layout (little-endian):
+//   magic "CHESSNN1", int hidden size
+//   short featureWeights[768][hidden], short featureBias[hidden]
+//   short outputWeights[2 * hidden], short outputBias
+//
+// Every hot loop runs over int arrays with unit stride and no branches, the form C2's superword
+// pass turns into SIMD instructions. The weights are stored as 16 bits but widened to int on
+// load, since C2 does not vectorise loops that mix short and int, and the clipped ReLU is done
+// with shifts and masks rather than Math.min/max for the same reason.
+final class Nnue {
+    static final byte[] MAGIC = "CHESSNN1".getBytes(StandardCharsets.US_ASCII);
+    static final int FEATURES = 768;
+    static final int DEFAULT_HIDDEN = 256;
+    // Activation clip, output weight scale, and centipawns per unit of network output
+    static final int QA = 255;
+    static final int QB = 64;
+    static final int SCALE = 400;
+
+    final int hidden;
+    final int[] featureWeights;
+    final int[] featureBias;
+    final int[] outputWeights;
+    final int outputBias;
+
+    private Nnue(int hidden, int[] featureWeights, int[] featureBias, int[] outputWeights, int outputBias) {
+        this.hidden = hidden;
+        this.featureWeights = featureWeights;
+        this.featureBias = featureBias;
+        this.outputWeights = outputWeights;
+        this.outputBias = outputBias;
+    }
+
+    // Maps the file and copies the weights out in bulk
+    static Nnue load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            byte[] magic = new byte[MAGIC.length];
+            if (buffer.remaining() < MAGIC.length + 4) throw new IOException("Not a network file: " + path);
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) throw new IOException("Not a network file: " + path);
+            int hidden = buffer.getInt();
+            long expected = MAGIC.length + 4 + 2L * ((long) FEATURES * hidden + hidden + 2L * hidden + 1);
+            if (hidden <= 0 || channel.size() != expected) {
+                throw new IOException("Network file " + path + " should be " + expected + " bytes for " + hidden + " hidden units");
+            }
+            int[] featureWeights = widen(buffer, FEATURES * hidden);
+            int[] featureBias = widen(buffer, hidden);
+            int[] outputWeights = widen(buffer, 2 * hidden);
+            return new Nnue(hidden, featureWeights, featureBias, outputWeights, buffer.getShort());
+        }
+    }
+
+    private static int[] widen(ByteBuffer buffer, int count) {
+        short[] values = new short[count];
+        buffer.asShortBuffer().get(values);
+        buffer.position(buffer.position() + 2 * count);
+        int[] widened = new int[count];
+        for (int i = 0; i < count; i++) widened[i] = values[i];
+        return widened;
+    }
+
+    void write(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(MAGIC.length + 4 + 2 * (featureWeights.length + hidden + 2 * hidden + 1))
+            .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(MAGIC).putInt(hidden);
+        for (int w : featureWeights) buffer.putShort((short) w);
+        for (int b : featureBias) buffer.putShort((short) b);
+        for (int w : outputWeights) buffer.putShort((short) w);
+        buffer.putShort((short) outputBias);
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) channel.write(buffer);
+        }
+    }
+
+    // A network with random weights of realistic magnitude, for benchmarks and file-format tests
+    static Nnue random(int hidden, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] featureWeights = new int[FEATURES * hidden];
+        for (int i = 0; i < featureWeights.length; i++) featureWeights[i] = random.nextInt(-64, 65);
+        int[] featureBias = new int[hidden];
+        for (int i = 0; i < hidden; i++) featureBias[i] = random.nextInt(-32, 33);
+        int[] outputWeights = new int[2 * hidden];
+        for (int i = 0; i < outputWeights.length; i++) outputWeights[i] = random.nextInt(-64, 65);
+        return new Nnue(hidden, featureWeights, featureBias, outputWeights, 0);
+    }
+
+    // Row of the feature weight matrix for a piece on a square, seen from one side. Each side
+    // sees its own pieces first and the board from its own end, so one set of weights serves both.
+    static int feature(boolean whitePerspective, ChessPiece piece, int row, int col) {
+        int type = Zobrist.pieceIndex(piece) % 6;
+        boolean own = (piece.color == Color.WHITE) == whitePerspective;
+        // row 0 is rank 8; square 0 is a1 for White and a8 (mirrored) for Black
+        int square = whitePerspective ? (7 - row) * 8 + col : row * 8 + col;
+        return ((own ? 0 : 6) + type) * 64 + square;
+    }
+
+    // Output layer for a pair of accumulators; centipawns for the side to move
+    int evaluate(int[] us, int[] them) {
+        int sum = dot(us, outputWeights, 0) + dot(them, outputWeights, hidden);
+        return (sum / QA + outputBias) * SCALE / (QA * QB);
+    }
+
+    private int dot(int[] accumulator, int[] weights, int offset) {
+        int sum = 0;
+        for (int i = 0; i < hidden; i++) {
+            // Clip to [0, QA]: x & ~(x >> 31) is max(x, 0)
+            int x = accumulator[i];
+            x &= ~(x >> 31);
+            int headroom = QA - x;
+            headroom &= ~(headroom >> 31);
+            sum += (QA - headroom) * weights[offset + i];
+        }
+        return sum;
+    }
+
+    // Stack of accumulator pairs, one per ply, kept in step with a ChessPosition. refresh()
+    // builds the current pair from the whole board; push() derives the next ply's pair from the
+    // Undo record of the move just made, touching two to four weight rows; pop() is free.
+    final class Accumulators {
+        private int[][] white = new int[64][];
+        private int[][] black = new int[64][];
+        private int ply;
+
+        Accumulators() {
+            for (int i = 0; i < white.length; i++) {
+                white[i] = new int[hidden];
+                black[i] = new int[hidden];
+            }
+        }
+
+        void refresh(ChessPosition position) {
+            ply = 0;
+            int[] w = white[0];
+            int[] b = black[0];
+            System.arraycopy(featureBias, 0, w, 0, hidden);
+            System.arraycopy(featureBias, 0, b, 0, hidden);
+            for (int row = 0; row < 8; row++) {
+                for (int col = 0; col < 8; col++) {
+                    ChessPiece piece = position.board[row][col];
+                    if (piece == null) continue;
+                    add(w, feature(true, piece, row, col));
+                    add(b, feature(false, piece, row, col));
+                }
+            }
+        }
+
+        // Call after position.makeMove(..., undo) has succeeded
+        void push(ChessPosition position, ChessPosition.Undo undo) {
+            if (ply + 1 == white.length) grow();
+            ChessPiece placed = position.board[undo.endRow][undo.endCol];
+            if (undo.castled) {
+                int rookStart = undo.endCol == 2 ? 0 : 7;
+                int rookEnd = undo.endCol == 2 ? 3 : 5;
+                ChessPiece rook = position.board[undo.endRow][rookEnd];
+                for (int side = 0; side < 2; side++) {
+                    boolean perspective = side == 0;
+                    int[][] stack = perspective ? white : black;
+                    update(stack[ply], stack[ply + 1],
+                           feature(perspective, undo.moved, undo.startRow, undo.startCol),
+                           feature(perspective, placed, undo.endRow, undo.endCol));
+                    update(stack[ply + 1], stack[ply + 1],
+                           feature(perspective, rook, undo.endRow, rookStart),
+                           feature(perspective, rook, undo.endRow, rookEnd));
+                }
+            } else if (undo.captured != null) {
+                for (int side = 0; side < 2; side++) {
+                    boolean perspective = side == 0;
+                    int[][] stack = perspective ? white : black;
+                    update(stack[ply], stack[ply + 1],
+                           feature(perspective, undo.moved, undo.startRow, undo.startCol),
+                           feature(perspective, undo.captured, undo.capturedRow, undo.capturedCol),
+                           feature(perspective, placed, undo.endRow, undo.endCol));
+                }
+            } else {
+                for (int side = 0; side < 2; side++) {
+                    boolean perspective = side == 0;
+                    int[][] stack = perspective ? white : black;
+                    update(stack[ply], stack[ply + 1],
+                           feature(perspective, undo.moved, undo.startRow, undo.startCol),
+                           feature(perspective, placed, undo.endRow, undo.endCol));
+                }
+            }
+            ply++;
+        }
+
+        // Call alongside position.unmakeMove
+        void pop() {
+            ply--;
+        }
+
+        int evaluate(ChessPosition position) {
+            return position.whiteTurn ? Nnue.this.evaluate(white[ply], black[ply])
+                                      : Nnue.this.evaluate(black[ply], white[ply]);
+        }
+
+        int[] white() {
+            return white[ply];
+        }
+
+        int[] black() {
+            return black[ply];
+        }
+
+        private void add(int[] accumulator, int feature) {
+            int offset = feature * hidden;
+            for (int i = 0; i < hidden; i++) accumulator[i] += featureWeights[offset + i];
+        }
+
+        // to = from - removed + added
+        private void update(int[] from, int[] to, int removed, int added) {
+            int r = removed * hidden;
+            int a = added * hidden;
+            for (int i = 0; i < hidden; i++) to[i] = from[i] - featureWeights[r + i] + featureWeights[a + i];
+        }
+
+        // to = from - removed - captured + added
+        private void update(int[] from, int[] to, int removed, int captured, int added) {
+            int r = removed * hidden;
+            int c = captured * hidden;
+            int a = added * hidden;
+            for (int i = 0; i < hidden; i++) {
+                to[i] = from[i] - featureWeights[r + i] - featureWeights[c + i] + featureWeights[a + i];
+            }
+        }
+
+        private void grow() {
+            int size = white.length;
+            white = Arrays.copyOf(white, size * 2);
+            black = Arrays.copyOf(black, size * 2);
+            for (int i = size; i < white.length; i++) {
+                white[i] = new int[hidden];
+                black[i] = new int[hidden];
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+// Checks the NNUE accumulators' incremental updates against a full refresh over random games,
+// then reports evaluations/sec for a full refresh, an incremental update and the output layer
+// alone. Run a second time with -XX:-UseSuperWord to see the same loops without SIMD.
+//   java NnueBenchmark [--net file.nnue] [--hidden N] [--games N] [--rounds N]
+class NnueBenchmark {
+    public static void main(String[] args) throws Exception {
+        Path netPath = null;
+        int hidden = Nnue.DEFAULT_HIDDEN;
+        int games = 2000;
+        int rounds = 10;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--net": netPath = Path.of(args[++i]); break;
+                case "--hidden": hidden = Integer.parseInt(args[++i]); break;
+                case "--games": games = Integer.parseInt(args[++i]); break;
+                case "--rounds": rounds = Integer.parseInt(args[++i]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (netPath == null) {
+            // No trained network to hand: a random one exercises the same code paths
+            netPath = Files.createTempFile("random", ".nnue");
+            netPath.toFile().deleteOnExit();
+            Nnue.random(hidden, 1).write(netPath);
+        }
+        long start = System.nanoTime();
+        Nnue net = Nnue.load(netPath);
+        System.out.printf("Loaded %d hidden units (%,d bytes) in %.1f ms; UseSuperWord=%s%n", net.hidden,
+                          Files.size(netPath), (System.nanoTime() - start) / 1e6, superWord());
+
+        // Random games, keeping each position and the undo record of the move that reached it
+        SplittableRandom random = new SplittableRandom(7);
+        List<ChessPosition[]> positions = new ArrayList<>();
+        List<ChessPosition.Undo[]> undos = new ArrayList<>();
+        Nnue.Accumulators incremental = net.new Accumulators();
+        Nnue.Accumulators refreshed = net.new Accumulators();
+        MoveList moves = new MoveList();
+        int mismatches = 0;
+        int total = 0;
+        for (int game = 0; game < games; game++) {
+            ChessPosition position = new ChessPosition();
+            position.setupInitial();
+            incremental.refresh(position);
+            List<ChessPosition> gamePositions = new ArrayList<>();
+            List<ChessPosition.Undo> gameUndos = new ArrayList<>();
+            for (int ply = 0; ply < 120; ply++) {
+                moves.clear();
+                position.legalMoves(moves);
+                if (moves.size() == 0) break;
+                ChessPosition.Undo undo = new ChessPosition.Undo();
+                int move = moves.get(random.nextInt(moves.size()));
+                position.makeMove(Move.fromRow(move), Move.fromCol(move), Move.toRow(move), Move.toCol(move),
+                                  Move.promotion(move), undo);
+                incremental.push(position, undo);
+                refreshed.refresh(position);
+                if (!java.util.Arrays.equals(incremental.white(), refreshed.white())
+                        || !java.util.Arrays.equals(incremental.black(), refreshed.black())
+                        || incremental.evaluate(position) != refreshed.evaluate(position)) {
+                    mismatches++;
+                }
+                gamePositions.add(position.copy());
+                gameUndos.add(undo);
+                total++;
+            }
+            // Walk back down to make sure pop() restores each earlier ply
+            for (int ply = gameUndos.size() - 1; ply >= 0; ply--) {
+                position.unmakeMove(gameUndos.get(ply));
+                incremental.pop();
+                refreshed.refresh(position);
+                if (!java.util.Arrays.equals(incremental.white(), refreshed.white())) mismatches++;
+            }
+            positions.add(gamePositions.toArray(new ChessPosition[0]));
+            undos.add(gameUndos.toArray(new ChessPosition.Undo[0]));
+        }
+        System.out.printf("%,d positions from %,d random games, %d accumulator mismatches%n", total, games, mismatches);
+
+        ChessPosition startPosition = new ChessPosition();
+        startPosition.setupInitial();
+        long checksum = 0;
+        double refreshRate = 0;
+        double incrementalRate = 0;
+        double outputRate = 0;
+        for (int round = 0; round < rounds; round++) {
+            start = System.nanoTime();
+            for (ChessPosition[] game : positions) {
+                for (ChessPosition position : game) {
+                    refreshed.refresh(position);
+                    checksum += refreshed.evaluate(position);
+                }
+            }
+            refreshRate = total / ((System.nanoTime() - start) / 1e9);
+
+            start = System.nanoTime();
+            for (int g = 0; g < positions.size(); g++) {
+                ChessPosition[] game = positions.get(g);
+                ChessPosition.Undo[] gameUndos = undos.get(g);
+                incremental.refresh(startPosition);
+                for (int ply = 0; ply < game.length; ply++) {
+                    incremental.push(game[ply], gameUndos[ply]);
+                    checksum += incremental.evaluate(game[ply]);
+                }
+            }
+            incrementalRate = total / ((System.nanoTime() - start) / 1e9);
+
+            start = System.nanoTime();
+            for (int i = 0; i < total; i++) checksum += net.evaluate(refreshed.white(), refreshed.black());
+            outputRate = total / ((System.nanoTime() - start) / 1e9);
+        }
+        System.out.printf("full refresh + evaluate   %,12.0f evals/sec%n", refreshRate);
+        System.out.printf("incremental + evaluate    %,12.0f evals/sec (%.1fx)%n", incrementalRate, incrementalRate / refreshRate);
+        System.out.printf("output layer only         %,12.0f evals/sec   (checksum %d)%n", outputRate, checksum);
+    }
+
+    private static String superWord() {
+        try {
+            return ManagementFactory.getPlatformMXBean(com.sun.management.HotSpotDiagnosticMXBean.class)
+                .getVMOption("UseSuperWord").getValue();
+        } catch (IllegalArgumentException e) {
+            return "n/a";
+        }
+    }
+}
@@ -0,0 +1,104 @@
+import java.util.function.IntConsumer;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
+
+// Side panel listing the moves played and the games reached from the board's current
+// position, looked up in the PositionIndex of the open game database
+class OpeningExplorer extends VBox {
+    private static final int GAME_LIMIT = 200;
+
+    private final Label summaryLabel = new Label();
+    private final ListView<String> moveList = new ListView<>();
+    private final Label gamesLabel = new Label("Games");
+    private final ListView<String> gameList = new ListView<>();
+    private GameDatabase database;
+    private PositionIndex index;
+    private int[] shownGameIds = new int[0];
+
+    OpeningExplorer(IntConsumer onGameSelected) {
+        super(8);
+        setPadding(new Insets(15));
+        setAlignment(Pos.TOP_LEFT);
+        setPrefWidth(300);
+        Label title = new Label("Opening Explorer");
+        title.setFont(Font.font("Sans-Serif", FontWeight.BOLD, 16));
+        summaryLabel.setWrapText(true);
+        moveList.setPrefHeight(250);
+        VBox.setVgrow(gameList, Priority.ALWAYS);
+        gameList.setOnMouseClicked(e -> {
+            int selected = gameList.getSelectionModel().getSelectedIndex();
+            if (e.getClickCount() == 2 && selected >= 0 && selected < shownGameIds.length) {
+                onGameSelected.accept(shownGameIds[selected]);
+            }
+        });
+        getChildren().addAll(title, summaryLabel, moveList, gamesLabel, gameList);
+        setVisible(false);
+        setManaged(false);
+    }
+
+    // Shows the panel for a database whose index is still being built or loaded
+    void setDatabase(GameDatabase database) {
+        this.database = database;
+        this.index = null;
+        setVisible(true);
+        setManaged(true);
+        moveList.getItems().clear();
+        gameList.getItems().clear();
+        shownGameIds = new int[0];
+        summaryLabel.setText("Indexing " + database.size() + " games...");
+    }
+
+    void setIndex(GameDatabase database, PositionIndex index) {
+        if (database != this.database) return;
+        this.index = index;
+    }
+
+    void setStatus(String status) {
+        summaryLabel.setText(status);
+    }
+
+    void show(ChessPosition position, long hash) {
+        if (index == null || !isVisible()) return;
+        long start = System.nanoTime();
+        PositionIndex.Stats stats = index.lookup(hash, GAME_LIMIT);
+        double millis = (System.nanoTime() - start) / 1e6;
+
+        String[] moves = new String[stats.moves.length];
+        for (int i = 0; i < moves.length; i++) {
+            int games = stats.moveGames[i];
+            moves[i] = String.format("%-8s %7d  %3.0f%% / %3.0f%% / %3.0f%%", San.format(position, stats.moves[i]), games,
+                                     100.0 * stats.whiteWins[i] / games, 100.0 * stats.draws[i] / games,
+                                     100.0 * stats.blackWins[i] / games);
+        }
+        // Most played first
+        Integer[] order = new Integer[moves.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        java.util.Arrays.sort(order, (a, b) -> Integer.compare(stats.moveGames[b], stats.moveGames[a]));
+        moveList.getItems().clear();
+        for (int i : order) moveList.getItems().add(moves[i]);
+
+        shownGameIds = stats.gameIds;
+        gameList.getItems().clear();
+        for (int id : stats.gameIds) {
+            int year = database.date(id) / 10000;
+            gameList.getItems().add(String.format("%d. %s - %s %s%s", id + 1, orUnknown(database.white(id)),
+                                                  orUnknown(database.black(id)), database.result(id),
+                                                  year > 0 ? " (" + year + ")" : ""));
+        }
+        gamesLabel.setText(stats.games > stats.gameIds.length
+            ? "Games (first " + stats.gameIds.length + " of " + stats.games + ")" : "Games");
+        summaryLabel.setText(stats.games == 0
+            ? "Position not found in the first " + index.maxPly() + " plies of any game"
+            : String.format("%,d games reached this position (%.2f ms)", stats.games, millis));
+    }
+
+    private static String orUnknown(String name) {
+        return name.isEmpty() ? "?" : name;
+    }
+}
@@ -0,0 +1,23 @@
+import javafx.scene.paint.Color;
+
+class Pawn extends ChessPiece {
+    Pawn(int row, int col, Color color) { super(row, col, color); }
+    @Override ChessPiece copy() { return new Pawn(row, col, color); }
+    @Override char symbol() { return 'P'; }
+    @Override public boolean isValidMove(int newRow, int newCol) {
+        int direction = (color == Color.WHITE) ? -1 : 1;
+        if (col == newCol && (newRow - row) == direction) return true;
+        if (row == (color == Color.WHITE ? 6 : 1) && col == newCol && (newRow - row) == 2 * direction) return true;
+        return false;
+    }
+    @Override void drawGlyph(GlyphSurface gc, int x, int y) {
+        gc.setFill(color);
+        gc.fillRect(x + 15, y + 35, 20, 5);
+        gc.fillOval(x + 17, y + 20, 16, 15);
+        gc.fillOval(x + 20, y + 10, 10, 10);
+        gc.setStroke(color == Color.WHITE ? Color.BLACK : Color.WHITE);
+        gc.strokeRect(x + 15, y + 35, 20, 5);
+        gc.strokeOval(x + 17, y + 20, 16, 15);
+        gc.strokeOval(x + 20, y + 10, 10, 10);
+    }
+}
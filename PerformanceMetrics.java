@@ -0,0 +1,201 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Process-wide registry of rendering, move generation and engine timings
+class PerformanceMetrics implements PerformanceMetricsMBean {
+    private static final PerformanceMetrics INSTANCE = new PerformanceMetrics();
+    private static final String OBJECT_NAME = "chess:type=PerformanceMetrics";
+    private static final long SAMPLE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final LatencyHistogram drawTimes = new LatencyHistogram();
+    private final LatencyHistogram moveGenerationTimes = new LatencyHistogram();
+    private final LatencyHistogram engineRoundTrips = new LatencyHistogram();
+    private final LatencyHistogram analysisRestarts = new LatencyHistogram();
+    private final LatencyHistogram dragLatencies = new LatencyHistogram();
+    private final AtomicLong boardRepaints = new AtomicLong();
+    // Scene pulses, each of which renders a frame; the board is only repainted on some of them
+    private final AtomicLong pulses = new AtomicLong();
+    private final AtomicLong engineRestarts = new AtomicLong();
+    private final AtomicLong engineTimeouts = new AtomicLong();
+    private final AtomicLong engineFailures = new AtomicLong();
+    private volatile long engineNodesPerSecond;
+    private volatile long timeToFirstFrameMillis = -1;
+    private volatile long sessionRestoreNanos = -1;
+
+    // Rates are derived from counters sampled at most every SAMPLE_INTERVAL_NANOS
+    private long lastSampleNanos = System.nanoTime();
+    private long lastSampleFrames;
+    private long lastSampleAllocatedBytes = totalAllocatedBytes();
+    private double framesPerSecond;
+    private double allocationBytesPerSecond = -1;
+
+    private PerformanceMetrics() {
+    }
+
+    static PerformanceMetrics get() {
+        return INSTANCE;
+    }
+
+    static void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    void recordDraw(long nanos) {
+        drawTimes.record(nanos);
+        boardRepaints.incrementAndGet();
+    }
+
+    void recordPulse() {
+        pulses.incrementAndGet();
+    }
+
+    void recordMoveGeneration(long nanos) {
+        moveGenerationTimes.record(nanos);
+    }
+
+    void recordEngineRoundTrip(long nanos) {
+        engineRoundTrips.record(nanos);
+    }
+
+    // From a position change to the first scored info line of the new search
+    void recordAnalysisRestart(long nanos) {
+        analysisRestarts.record(nanos);
+    }
+
+    // From a pointer move during a drag to the pulse that renders the sprite there
+    void recordDragLatency(long nanos) {
+        dragLatencies.record(nanos);
+    }
+
+    // EngineSupervisor: processes restarted, calls past their deadline, processes given up on
+    void recordEngineRestart() {
+        engineRestarts.incrementAndGet();
+    }
+
+    void recordEngineTimeout() {
+        engineTimeouts.incrementAndGet();
+    }
+
+    void recordEngineFailure() {
+        engineFailures.incrementAndGet();
+    }
+
+    void recordEngineNodesPerSecond(long nps) {
+        engineNodesPerSecond = nps;
+    }
+
+    void recordTimeToFirstFrame(long millis) {
+        timeToFirstFrameMillis = millis;
+    }
+
+    void recordSessionRestore(long nanos) {
+        sessionRestoreNanos = nanos;
+    }
+
+    private synchronized void sampleRates() {
+        long now = System.nanoTime();
+        long elapsed = now - lastSampleNanos;
+        if (elapsed < SAMPLE_INTERVAL_NANOS) return;
+        double seconds = elapsed / 1e9;
+        long frames = pulses.get();
+        framesPerSecond = (frames - lastSampleFrames) / seconds;
+        lastSampleFrames = frames;
+        long allocated = totalAllocatedBytes();
+        if (allocated >= 0 && lastSampleAllocatedBytes >= 0) {
+            // Threads that exit take their counters with them, so never report a negative rate
+            allocationBytesPerSecond = Math.max(0, allocated - lastSampleAllocatedBytes) / seconds;
+        }
+        lastSampleAllocatedBytes = allocated;
+        lastSampleNanos = now;
+    }
+
+    private static long totalAllocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return -1;
+        com.sun.management.ThreadMXBean hotspotThreads = (com.sun.management.ThreadMXBean) threads;
+        if (!hotspotThreads.isThreadAllocatedMemorySupported() || !hotspotThreads.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        long total = 0;
+        for (long bytes : hotspotThreads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) total += bytes;
+        }
+        return total;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    @Override public double getDrawTimeLastMillis() { return toMillis(drawTimes.getLast()); }
+    @Override public double getDrawTimeP50Millis() { return toMillis(drawTimes.getPercentile(50)); }
+    @Override public double getDrawTimeP99Millis() { return toMillis(drawTimes.getPercentile(99)); }
+    @Override public long getBoardRepaints() { return boardRepaints.get(); }
+
+    @Override
+    public double getFramesPerSecond() {
+        sampleRates();
+        return framesPerSecond;
+    }
+
+    @Override public double getMoveGenerationLastMillis() { return toMillis(moveGenerationTimes.getLast()); }
+    @Override public double getMoveGenerationP50Millis() { return toMillis(moveGenerationTimes.getPercentile(50)); }
+    @Override public double getMoveGenerationP99Millis() { return toMillis(moveGenerationTimes.getPercentile(99)); }
+    @Override public long getMoveGenerations() { return moveGenerationTimes.getCount(); }
+
+    @Override public double getEngineRoundTripLastMillis() { return toMillis(engineRoundTrips.getLast()); }
+    @Override public double getEngineRoundTripP50Millis() { return toMillis(engineRoundTrips.getPercentile(50)); }
+    @Override public double getEngineRoundTripP99Millis() { return toMillis(engineRoundTrips.getPercentile(99)); }
+    @Override public long getEngineSearches() { return engineRoundTrips.getCount(); }
+    @Override public long getEngineNodesPerSecond() { return engineNodesPerSecond; }
+    @Override public long getEngineRestarts() { return engineRestarts.get(); }
+    @Override public long getEngineTimeouts() { return engineTimeouts.get(); }
+    @Override public long getEngineFailures() { return engineFailures.get(); }
+
+    @Override public double getAnalysisRestartP50Millis() { return toMillis(analysisRestarts.getPercentile(50)); }
+    @Override public double getAnalysisRestartP99Millis() { return toMillis(analysisRestarts.getPercentile(99)); }
+    @Override public long getAnalysisRestarts() { return analysisRestarts.getCount(); }
+
+    @Override public double getDragLatencyP50Millis() { return toMillis(dragLatencies.getPercentile(50)); }
+    @Override public double getDragLatencyP99Millis() { return toMillis(dragLatencies.getPercentile(99)); }
+    @Override public long getDragFrames() { return dragLatencies.getCount(); }
+
+    @Override
+    public double getAllocationRateMBPerSecond() {
+        sampleRates();
+        return allocationBytesPerSecond < 0 ? -1 : allocationBytesPerSecond / (1024 * 1024);
+    }
+
+    @Override public long getTimeToFirstFrameMillis() { return timeToFirstFrameMillis; }
+    @Override public double getSessionRestoreMillis() { return sessionRestoreNanos < 0 ? -1 : toMillis(sessionRestoreNanos); }
+
+    @Override
+    public synchronized void reset() {
+        drawTimes.reset();
+        moveGenerationTimes.reset();
+        engineRoundTrips.reset();
+        analysisRestarts.reset();
+        dragLatencies.reset();
+        boardRepaints.set(0);
+        pulses.set(0);
+        engineRestarts.set(0);
+        engineTimeouts.set(0);
+        engineFailures.set(0);
+        engineNodesPerSecond = 0;
+        lastSampleFrames = 0;
+        framesPerSecond = 0;
+    }
+}
@@ -0,0 +1,37 @@
+// JMX view of PerformanceMetrics, registered as "chess:type=PerformanceMetrics"
+public interface PerformanceMetricsMBean {
+    double getDrawTimeLastMillis();
+    double getDrawTimeP50Millis();
+    double getDrawTimeP99Millis();
+    long getBoardRepaints();
+    double getFramesPerSecond();
+
+    double getMoveGenerationLastMillis();
+    double getMoveGenerationP50Millis();
+    double getMoveGenerationP99Millis();
+    long getMoveGenerations();
+
+    double getEngineRoundTripLastMillis();
+    double getEngineRoundTripP50Millis();
+    double getEngineRoundTripP99Millis();
+    long getEngineSearches();
+    long getEngineNodesPerSecond();
+    long getEngineRestarts();
+    long getEngineTimeouts();
+    long getEngineFailures();
+
+    double getAnalysisRestartP50Millis();
+    double getAnalysisRestartP99Millis();
+    long getAnalysisRestarts();
+
+    double getDragLatencyP50Millis();
+    double getDragLatencyP99Millis();
+    long getDragFrames();
+
+    double getAllocationRateMBPerSecond();
+
+    long getTimeToFirstFrameMillis();
+    double getSessionRestoreMillis();
+
+    void reset();
+}
@@ -0,0 +1,57 @@
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.geometry.Insets;
+import javafx.scene.control.Label;
+import javafx.scene.text.Font;
+import javafx.util.Duration;
+
+// Read-only HUD over the board showing the PerformanceMetrics registry
+class PerformanceOverlay extends Label {
+    private final PerformanceMetrics metrics = PerformanceMetrics.get();
+    private final Timeline refresh;
+
+    PerformanceOverlay() {
+        setFont(Font.font("Monospaced", 12));
+        setPadding(new Insets(6));
+        setStyle("-fx-background-color: rgba(0, 0, 0, 0.7); -fx-text-fill: #7CFC00;");
+        setMouseTransparent(true);
+        setVisible(false);
+        refresh = new Timeline(new KeyFrame(Duration.millis(500), e -> update()));
+        refresh.setCycleCount(Timeline.INDEFINITE);
+    }
+
+    void toggle() {
+        setVisible(!isVisible());
+        if (isVisible()) {
+            update();
+            refresh.play();
+        } else {
+            refresh.stop();
+        }
+    }
+
+    private void update() {
+        double allocation = metrics.getAllocationRateMBPerSecond();
+        double restore = metrics.getSessionRestoreMillis();
+        setText(String.format(
+            "Draw    %6.2f ms  p99 %6.2f ms  %5.1f fps%n" +
+            "MoveGen %6.2f ms  p99 %6.2f ms  n=%d%n" +
+            "Engine  p50 %6.0f ms  p99 %6.0f ms  n=%d%n" +
+            "NPS     %,d%n" +
+            "Faults  %d restarts  %d timeouts  %d failures%n" +
+            "Analyze p50 %6.1f ms  p99 %6.1f ms  n=%d%n" +
+            "Drag    p50 %6.2f ms  p99 %6.2f ms  n=%d%n" +
+            "Alloc   %s%n" +
+            "Startup %d ms to first frame%s",
+            metrics.getDrawTimeLastMillis(), metrics.getDrawTimeP99Millis(), metrics.getFramesPerSecond(),
+            metrics.getMoveGenerationLastMillis(), metrics.getMoveGenerationP99Millis(), metrics.getMoveGenerations(),
+            metrics.getEngineRoundTripP50Millis(), metrics.getEngineRoundTripP99Millis(), metrics.getEngineSearches(),
+            metrics.getEngineNodesPerSecond(),
+            metrics.getEngineRestarts(), metrics.getEngineTimeouts(), metrics.getEngineFailures(),
+            metrics.getAnalysisRestartP50Millis(), metrics.getAnalysisRestartP99Millis(), metrics.getAnalysisRestarts(),
+            metrics.getDragLatencyP50Millis(), metrics.getDragLatencyP99Millis(), metrics.getDragFrames(),
+            allocation < 0 ? "n/a" : String.format("%.1f MB/s", allocation),
+            metrics.getTimeToFirstFrameMillis(),
+            restore < 0 ? "" : String.format(", session restored in %.1f ms", restore)));
+    }
+}
@@ -0,0 +1,102 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Counts the leaf nodes of the legal move tree to a fixed depth and compares them with the
+// published counts for a set of standard positions, which exercises castling, en passant
+// (including the pin along the rank), promotion and check evasion. With a FEN argument it
+// prints the count per root move instead, for narrowing down a mismatch against another engine.
+//   java Perft                      runs the standard suite
+//   java Perft "<fen>" <depth>      divide for one position
+class Perft {
+    private static final Object[][] SUITE = {
+        {"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1", new long[] {20, 400, 8902, 197281, 4865609}},
+        {"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", new long[] {48, 2039, 97862, 4085603}},
+        {"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1", new long[] {14, 191, 2812, 43238, 674624}},
+        {"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1", new long[] {6, 264, 9467, 422333}},
+        {"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8", new long[] {44, 1486, 62379, 2103487}},
+        {"r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10", new long[] {46, 2079, 89890}},
+        // En passant cases; only the deepest count is checked (a zero skips that depth)
+        {"3k4/3p4/8/K1P4r/8/8/8/8 b - - 0 1", new long[] {0, 0, 0, 0, 0, 1134888}},
+        {"8/8/4k3/8/2p5/8/B2P2K1/8 w - - 0 1", new long[] {0, 0, 0, 0, 0, 1015133}},
+        {"8/8/1k6/2b5/2pP4/8/5K2/8 b - d3 0 1", new long[] {0, 0, 0, 0, 0, 1440467}},
+    };
+
+    public static void main(String[] args) {
+        if (args.length >= 2) {
+            divide(args[0], Integer.parseInt(args[1]));
+            return;
+        }
+        int failures = 0;
+        long totalNodes = 0;
+        long start = System.nanoTime();
+        for (Object[] entry : SUITE) {
+            String fen = (String) entry[0];
+            long[] expected = (long[]) entry[1];
+            ChessPosition position = new ChessPosition();
+            Fen.load(fen, position);
+            for (int depth = 1; depth <= expected.length; depth++) {
+                if (expected[depth - 1] == 0) continue;
+                long depthStart = System.nanoTime();
+                long nodes = perft(position, depth);
+                totalNodes += nodes;
+                boolean ok = nodes == expected[depth - 1];
+                if (!ok) failures++;
+                System.out.printf("%-4s depth %d %,12d %s(%.2f s)  %s%n", ok ? "ok" : "FAIL", depth, nodes,
+                                  ok ? "" : "expected " + expected[depth - 1] + " ",
+                                  (System.nanoTime() - depthStart) / 1e9, fen);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d failures, %,d nodes in %.1f s (%,.0f nodes/sec)%n", failures, totalNodes, seconds,
+                          totalNodes / seconds);
+        if (failures > 0) System.exit(1);
+    }
+
+    static long perft(ChessPosition position, int depth) {
+        return perft(position, depth, new ChessPosition.Undo[depth], new MoveList[depth]);
+    }
+
+    private static long perft(ChessPosition position, int depth, ChessPosition.Undo[] undos, MoveList[] lists) {
+        MoveList moves = lists[depth - 1];
+        if (moves == null) moves = lists[depth - 1] = new MoveList();
+        moves.clear();
+        position.legalMoves(moves);
+        // Counting the moves is enough at the last ply
+        if (depth == 1) return moves.size();
+        ChessPosition.Undo undo = undos[depth - 1];
+        if (undo == null) undo = undos[depth - 1] = new ChessPosition.Undo();
+        long nodes = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            if (!position.makeMove(Move.fromRow(move), Move.fromCol(move), Move.toRow(move), Move.toCol(move),
+                                   Move.promotion(move), undo)) {
+                throw new IllegalStateException("Generated illegal move " + Move.toUci(move) + " in " + Fen.toFen(position));
+            }
+            nodes += perft(position, depth - 1, undos, lists);
+            position.unmakeMove(undo);
+        }
+        return nodes;
+    }
+
+    private static void divide(String fen, int depth) {
+        ChessPosition position = new ChessPosition();
+        Fen.load(fen, position);
+        MoveList moves = new MoveList();
+        position.legalMoves(moves);
+        List<String> lines = new ArrayList<>();
+        long total = 0;
+        ChessPosition.Undo undo = new ChessPosition.Undo();
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            position.makeMove(Move.fromRow(move), Move.fromCol(move), Move.toRow(move), Move.toCol(move),
+                              Move.promotion(move), undo);
+            long nodes = depth > 1 ? perft(position, depth - 1) : 1;
+            position.unmakeMove(undo);
+            total += nodes;
+            lines.add(Move.toUci(move) + ": " + nodes);
+        }
+        lines.sort(null);
+        lines.forEach(System.out::println);
+        System.out.println("\nMoves: " + moves.size() + "\nNodes: " + total);
+    }
+}
@@ -0,0 +1,68 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Measures PGN parsing throughput (tokenizing plus SAN resolution) on one core and across cores.
+//   java PgnBenchmark <games.pgn> [--threads N]
+class PgnBenchmark {
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: PgnBenchmark <games.pgn> [--threads N]");
+            System.exit(1);
+        }
+        Path path = Paths.get(args[0]);
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--threads")) threads = Integer.parseInt(args[++i]);
+            else throw new IllegalArgumentException("Unknown option " + args[i]);
+        }
+        double megabytes = Files.size(path) / (1024.0 * 1024.0);
+
+        long start = System.nanoTime();
+        long[] single = parseRange(path, 0, Files.size(path));
+        report("1 thread", single, System.nanoTime() - start, megabytes);
+
+        long[] bounds = PgnReader.split(path, threads);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        start = System.nanoTime();
+        List<Future<long[]>> parts = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            long from = bounds[i];
+            long to = bounds[i + 1];
+            parts.add(pool.submit(() -> parseRange(path, from, to)));
+        }
+        long[] total = new long[3];
+        for (Future<long[]> part : parts) {
+            long[] counts = part.get();
+            for (int i = 0; i < total.length; i++) total[i] += counts[i];
+        }
+        report(threads + " threads", total, System.nanoTime() - start, megabytes);
+        pool.shutdown();
+    }
+
+    // Returns {games, moves, games with errors}
+    private static long[] parseRange(Path path, long from, long to) throws Exception {
+        long[] counts = new long[3];
+        try (PgnReader reader = PgnReader.open(path, from, to)) {
+            while (reader.hasNext()) {
+                PgnGame game = reader.next();
+                counts[0]++;
+                counts[1] += game.moves.size();
+                if (game.hasError()) counts[2]++;
+            }
+        }
+        return counts;
+    }
+
+    private static void report(String label, long[] counts, long nanos, double megabytes) {
+        double seconds = nanos / 1e9;
+        System.out.printf("%-10s %,d games, %,d moves, %d errors in %.2f s: %,.0f games/sec, %,.0f moves/sec, %.1f MB/s%n",
+                          label, counts[0], counts[1], counts[2], seconds,
+                          counts[0] / seconds, counts[1] / seconds, megabytes / seconds);
+    }
+}
@@ -0,0 +1,41 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// One game read from PGN: tag pairs plus the resolved main line
+class PgnGame {
+    final Map<String, String> tags = new LinkedHashMap<>();
+    final MoveList moves = new MoveList();
+    String result = "*";
+    // Set when a move could not be resolved; moves holds the legal prefix
+    String error;
+    // Zobrist hash of the position after the last resolved move
+    long finalHash;
+
+    String getTag(String name) {
+        return tags.get(name);
+    }
+
+    boolean hasError() {
+        return error != null;
+    }
+
+    // The standard start, or the FEN tag's position; throws IllegalArgumentException for a bad FEN
+    ChessPosition startPosition() {
+        ChessPosition position = new ChessPosition();
+        String fen = tags.get("FEN");
+        if (fen != null) Fen.load(fen, position);
+        else position.setupInitial();
+        return position;
+    }
+
+    // Replays the main line from the start position
+    ChessPosition replay() {
+        ChessPosition position = startPosition();
+        for (int i = 0; i < moves.size(); i++) {
+            if (!Move.play(position, moves.get(i))) {
+                throw new IllegalStateException("Move " + Move.toUci(moves.get(i)) + " is illegal at ply " + (i + 1));
+            }
+        }
+        return position;
+    }
+}
@@ -0,0 +1,77 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+// Merges PGN files into one game database, replaying every game through the move rules and
+// skipping games already imported from any of the files (same moves, same final position).
+// Reports the duplicate rate, games/sec, and the heap and off-heap memory used.
+//   java [-XX:MaxDirectMemorySize=8g] PgnImport <out.chessdb> <games.pgn>... [--expected N] [--keep-duplicates]
+class PgnImport {
+    public static void main(String[] args) throws Exception {
+        List<Path> inputs = new ArrayList<>();
+        Path output = null;
+        long expected = -1;
+        boolean dedup = true;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--expected": expected = Long.parseLong(args[++i]); break;
+                case "--keep-duplicates": dedup = false; break;
+                default:
+                    if (args[i].startsWith("--")) throw new IllegalArgumentException("Unknown option " + args[i]);
+                    if (output == null) output = Paths.get(args[i]);
+                    else inputs.add(Paths.get(args[i]));
+            }
+        }
+        if (output == null || inputs.isEmpty()) {
+            System.err.println("Usage: PgnImport <out.chessdb> <games.pgn>... [--expected N] [--keep-duplicates]");
+            System.exit(1);
+        }
+        if (expected < 0) {
+            // Real PGN runs to several hundred bytes a game, so this rarely needs to grow
+            long bytes = 0;
+            for (Path input : inputs) bytes += Files.size(input);
+            expected = bytes / 400;
+        }
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long read = 0;
+        long skipped = 0;
+        long peakHeap = 0;
+        long start = System.nanoTime();
+        try (GameDatabaseWriter writer = new GameDatabaseWriter(output)) {
+            if (dedup) writer.skipDuplicates(expected);
+            for (Path input : inputs) {
+                long fileStart = System.nanoTime();
+                long fileRead = 0;
+                long fileDuplicates = writer.duplicates();
+                try (PgnReader reader = PgnReader.open(input)) {
+                    while (reader.hasNext()) {
+                        PgnGame game = reader.next();
+                        fileRead++;
+                        if (game.hasError() || game.tags.containsKey("FEN") || game.moves.size() > GameDatabase.MAX_PLIES) {
+                            skipped++;
+                        } else {
+                            writer.add(game);
+                        }
+                        if ((fileRead & 0xFFF) == 0) peakHeap = Math.max(peakHeap, memory.getHeapMemoryUsage().getUsed());
+                    }
+                }
+                read += fileRead;
+                double seconds = (System.nanoTime() - fileStart) / 1e9;
+                System.out.printf("%s: %,d games, %,d duplicates, %,.0f games/sec%n",
+                                  input, fileRead, writer.duplicates() - fileDuplicates, fileRead / seconds);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            peakHeap = Math.max(peakHeap, memory.getHeapMemoryUsage().getUsed());
+            System.out.printf("%,d games read, %,d imported, %,d duplicates (%.2f%%), %,d skipped, in %.1f s: %,.0f games/sec%n",
+                              read, writer.size(), writer.duplicates(), 100.0 * writer.duplicates() / Math.max(1, read),
+                              skipped, seconds, read / seconds);
+            System.out.printf("peak heap used %.1f MB; fingerprints off-heap %.1f MB%n", peakHeap / 1048576.0,
+                              writer.fingerprintBytes() / 1048576.0);
+        }
+    }
+}
@@ -0,0 +1,312 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Streams games out of a PGN source in constant memory. Bytes are tokenized straight out of
+// a fixed read buffer; only tag names and values become strings, and SAN moves are resolved
+// against ChessPosition as they are read. Variations, comments and NAGs are skipped.
+class PgnReader implements Iterator<PgnGame>, Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final byte[] data = buffer.array();
+    private int pos;
+    private int limit;
+    private boolean eof;
+
+    private byte[] token = new byte[64];
+    private int tokenLength;
+    private PgnGame nextGame;
+
+    PgnReader(ReadableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    static PgnReader open(Path path) throws IOException {
+        return new PgnReader(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    // Reads only the games that start within [start, end) of the file; see split()
+    static PgnReader open(Path path, long start, long end) throws IOException {
+        return new PgnReader(new FileRangeChannel(FileChannel.open(path, StandardOpenOption.READ), start, end));
+    }
+
+    // Cuts a PGN file into roughly equal byte ranges that each begin at a game's first tag,
+    // so several readers can parse one file in parallel
+    static long[] split(Path path, int parts) throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = file.size();
+            long[] bounds = new long[parts + 1];
+            bounds[parts] = size;
+            ByteBuffer probe = ByteBuffer.allocate(BUFFER_SIZE);
+            for (int i = 1; i < parts; i++) {
+                long offset = Math.max(bounds[i - 1], size * i / parts);
+                bounds[i] = findGameStart(file, offset, probe);
+            }
+            return bounds;
+        }
+    }
+
+    private static long findGameStart(FileChannel file, long offset, ByteBuffer probe) throws IOException {
+        long size = file.size();
+        int newlines = 0;
+        while (offset < size) {
+            probe.clear();
+            int read = file.read(probe, offset);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                byte c = probe.get(i);
+                if (c == '\n') {
+                    newlines++;
+                } else if (c != '\r' && c != ' ' && c != '\t') {
+                    // A tag line after a blank line is the first tag of a game
+                    if (c == '[' && newlines >= 2) return offset + i;
+                    newlines = 0;
+                }
+            }
+            offset += read;
+        }
+        return size;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextGame == null) {
+            try {
+                nextGame = readGame();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return nextGame != null;
+    }
+
+    @Override
+    public PgnGame next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        PgnGame game = nextGame;
+        nextGame = null;
+        return game;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private boolean fill() throws IOException {
+        if (pos < limit) return true;
+        if (eof) return false;
+        pos = 0;
+        limit = 0;
+        while (limit == 0) {
+            buffer.clear();
+            int read = channel.read(buffer);
+            if (read < 0) {
+                eof = true;
+                return false;
+            }
+            limit = read;
+        }
+        return true;
+    }
+
+    private PgnGame readGame() throws IOException {
+        PgnGame game = null;
+        ChessPosition position = null;
+        boolean inMovetext = false;
+        while (fill()) {
+            byte c = data[pos];
+            if (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '.') {
+                pos++;
+            } else if (c == '[') {
+                if (inMovetext) {
+                    // Missing termination marker; the next game starts here
+                    return game;
+                }
+                if (game == null) game = new PgnGame();
+                pos++;
+                readTag(game);
+            } else if (c == '{') {
+                skipUntil((byte) '}');
+            } else if (c == ';' || c == '%') {
+                skipUntil((byte) '\n');
+            } else if (c == '(') {
+                skipVariation();
+            } else if (c == '$') {
+                pos++;
+                readToken();
+            } else if (c == '*') {
+                pos++;
+                if (game == null) game = new PgnGame();
+                game.result = "*";
+                return game;
+            } else if (c == ')' || c == ']' || c == '}') {
+                pos++;
+            } else {
+                readToken();
+                if (tokenLength == 0) {
+                    pos++;
+                    continue;
+                }
+                if (game == null) game = new PgnGame();
+                String result = resultToken();
+                if (result != null) {
+                    game.result = result;
+                    return game;
+                }
+                if (isMoveNumber()) continue;
+                if (!inMovetext) {
+                    inMovetext = true;
+                    try {
+                        position = game.startPosition();
+                        game.finalHash = position.hash;
+                    } catch (IllegalArgumentException e) {
+                        game.error = e.getMessage();
+                    }
+                }
+                if (game.error != null) continue;
+                int move = San.parse(position, token, 0, tokenLength);
+                if (move == Move.NONE || !Move.play(position, move)) {
+                    game.error = "Cannot resolve '" + new String(token, 0, tokenLength, StandardCharsets.ISO_8859_1)
+                        + "' at ply " + (game.moves.size() + 1);
+                } else {
+                    game.moves.add(move);
+                    game.finalHash = position.hash;
+                }
+            }
+        }
+        return game;
+    }
+
+    private void readTag(PgnGame game) throws IOException {
+        while (fill() && (data[pos] == ' ' || data[pos] == '\t')) pos++;
+        readToken();
+        String name = new String(token, 0, tokenLength, StandardCharsets.ISO_8859_1);
+        while (fill() && data[pos] != '"' && data[pos] != ']') pos++;
+        tokenLength = 0;
+        if (fill() && data[pos] == '"') {
+            pos++;
+            while (fill()) {
+                byte c = data[pos++];
+                if (c == '\\' && fill()) {
+                    c = data[pos++];
+                } else if (c == '"') {
+                    break;
+                }
+                appendToken(c);
+            }
+        }
+        skipUntil((byte) ']');
+        game.tags.put(name, new String(token, 0, tokenLength, StandardCharsets.UTF_8));
+    }
+
+    // Reads a run of SAN/result characters into the token buffer
+    private void readToken() throws IOException {
+        tokenLength = 0;
+        while (fill()) {
+            byte c = data[pos];
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '+' || c == '#' || c == '=' || c == '/' || c == '!' || c == '?' || c == ':'
+                    || c == '_') {
+                appendToken(c);
+                pos++;
+            } else {
+                break;
+            }
+        }
+    }
+
+    private void appendToken(byte c) {
+        if (tokenLength == token.length) token = Arrays.copyOf(token, tokenLength * 2);
+        token[tokenLength++] = c;
+    }
+
+    // Consumes input up to and including the terminator
+    private void skipUntil(byte terminator) throws IOException {
+        while (fill()) {
+            if (data[pos++] == terminator) return;
+        }
+    }
+
+    private void skipVariation() throws IOException {
+        int depth = 0;
+        while (fill()) {
+            byte c = data[pos++];
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                if (--depth == 0) return;
+            } else if (c == '{') {
+                skipUntil((byte) '}');
+            } else if (c == ';') {
+                skipUntil((byte) '\n');
+            }
+        }
+    }
+
+    private boolean isMoveNumber() {
+        for (int i = 0; i < tokenLength; i++) {
+            if (token[i] < '0' || token[i] > '9') return false;
+        }
+        return true;
+    }
+
+    private String resultToken() {
+        if (tokenLength == 3 && token[1] == '-') {
+            if (token[0] == '1' && token[2] == '0') return "1-0";
+            if (token[0] == '0' && token[2] == '1') return "0-1";
+        } else if (tokenLength == 7 && token[0] == '1' && token[1] == '/' && token[3] == '-') {
+            return "1/2-1/2";
+        }
+        return null;
+    }
+
+    // A read-only window [start, end) of a file channel
+    private static final class FileRangeChannel implements ReadableByteChannel {
+        private final FileChannel file;
+        private final long end;
+        private long position;
+
+        FileRangeChannel(FileChannel file, long start, long end) {
+            this.file = file;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read(ByteBuffer destination) throws IOException {
+            if (position >= end) return -1;
+            int oldLimit = destination.limit();
+            destination.limit(destination.position() + (int) Math.min(destination.remaining(), end - position));
+            int read;
+            try {
+                read = file.read(destination, position);
+            } finally {
+                destination.limit(oldLimit);
+            }
+            if (read > 0) position += read;
+            return read;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return file.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+}
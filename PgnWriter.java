@@ -0,0 +1,62 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javafx.scene.paint.Color;
+
+// Writes games as PGN with the Seven Tag Roster first and movetext wrapped at 79 columns
+final class PgnWriter {
+    private static final String[] SEVEN_TAG_ROSTER = {"Event", "Site", "Date", "Round", "White", "Black", "Result"};
+    private static final int LINE_WIDTH = 79;
+
+    private PgnWriter() {
+    }
+
+    static void write(Writer out, Map<String, String> tags, MoveList moves, String result) throws IOException {
+        Map<String, String> ordered = new LinkedHashMap<>();
+        for (String name : SEVEN_TAG_ROSTER) {
+            ordered.put(name, name.equals("Date") ? "????.??.??" : "?");
+        }
+        ordered.putAll(tags);
+        ordered.put("Result", result);
+        for (Map.Entry<String, String> tag : ordered.entrySet()) {
+            out.write('[');
+            out.write(tag.getKey());
+            out.write(" \"");
+            out.write(tag.getValue().replace("\\", "\\\\").replace("\"", "\\\""));
+            out.write("\"]\n");
+        }
+        out.write('\n');
+
+        ChessPosition position = new ChessPosition();
+        if (ordered.containsKey("FEN")) Fen.load(ordered.get("FEN"), position);
+        else position.setupInitial();
+        StringBuilder line = new StringBuilder(LINE_WIDTH + 16);
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            StringBuilder word = new StringBuilder(12);
+            if (position.whiteTurn) word.append(position.fullmoveNumber).append(". ");
+            else if (i == 0) word.append(position.fullmoveNumber).append("... ");
+            word.append(San.format(position, move));
+            if (!Move.play(position, move)) {
+                throw new IllegalArgumentException("Illegal move " + Move.toUci(move) + " at ply " + (i + 1));
+            }
+            Color side = position.whiteTurn ? Color.WHITE : Color.BLACK;
+            if (position.isKingInCheck(side)) word.append(position.hasLegalMove(side) ? '+' : '#');
+            appendWrapped(out, line, word);
+        }
+        appendWrapped(out, line, new StringBuilder(result));
+        out.write(line.toString());
+        out.write("\n\n");
+    }
+
+    private static void appendWrapped(Writer out, StringBuilder line, CharSequence word) throws IOException {
+        if (line.length() > 0 && line.length() + 1 + word.length() > LINE_WIDTH) {
+            out.write(line.toString());
+            out.write('\n');
+            line.setLength(0);
+        }
+        if (line.length() > 0) line.append(' ');
+        line.append(word);
+    }
+}
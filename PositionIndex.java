@@ -0,0 +1,364 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Opening explorer index over a GameDatabase: Zobrist hash -> games that reached the position
+// and the moves played from it. Everything lives in sorted primitive arrays, so a lookup is
+// one binary search over the distinct hashes plus a slice of the per-position runs.
+final class PositionIndex {
+    static final int DEFAULT_MAX_PLY = 40;
+    // Stored as the next move of a position that ended its game
+    static final int GAME_END = 0;
+
+    private static final byte[] MAGIC = "CHESSIDX".getBytes(StandardCharsets.US_ASCII);
+    // 2: hashes include the en passant file when a capture is possible
+    private static final int VERSION = 2;
+    private static final int RADIX_BITS = 16;
+
+    private final int maxPly;
+    private final long[] hashes;
+    private final int[] gameStart;
+    private final int[] gameIds;
+    private final int[] moveStart;
+    private final char[] moves;
+    private final int[] moveGames;
+    private final int[] whiteWins;
+    private final int[] draws;
+    private final int[] blackWins;
+
+    private PositionIndex(int maxPly, long[] hashes, int[] gameStart, int[] gameIds, int[] moveStart, char[] moves,
+                          int[] moveGames, int[] whiteWins, int[] draws, int[] blackWins) {
+        this.maxPly = maxPly;
+        this.hashes = hashes;
+        this.gameStart = gameStart;
+        this.gameIds = gameIds;
+        this.moveStart = moveStart;
+        this.moves = moves;
+        this.moveGames = moveGames;
+        this.whiteWins = whiteWins;
+        this.draws = draws;
+        this.blackWins = blackWins;
+    }
+
+    int maxPly() {
+        return maxPly;
+    }
+
+    int positionCount() {
+        return hashes.length;
+    }
+
+    int entryCount() {
+        return gameIds.length;
+    }
+
+    // Everything known about one position; arrays are copies sized to the result
+    static final class Stats {
+        final int games;
+        final int[] gameIds;
+        final int[] moves;
+        final int[] moveGames;
+        final int[] whiteWins;
+        final int[] draws;
+        final int[] blackWins;
+
+        Stats(int games, int[] gameIds, int[] moves, int[] moveGames, int[] whiteWins, int[] draws, int[] blackWins) {
+            this.games = games;
+            this.gameIds = gameIds;
+            this.moves = moves;
+            this.moveGames = moveGames;
+            this.whiteWins = whiteWins;
+            this.draws = draws;
+            this.blackWins = blackWins;
+        }
+    }
+
+    private static final Stats EMPTY = new Stats(0, new int[0], new int[0], new int[0], new int[0], new int[0], new int[0]);
+
+    // Returns at most gameLimit game ids; games always holds the full count
+    Stats lookup(long hash, int gameLimit) {
+        int index = find(hash);
+        if (index < 0) return EMPTY;
+        int from = gameStart[index];
+        int games = gameStart[index + 1] - from;
+        int[] ids = Arrays.copyOfRange(gameIds, from, from + Math.min(games, gameLimit));
+        int first = moveStart[index];
+        int last = moveStart[index + 1];
+        int count = last - first;
+        int[] nextMoves = new int[count];
+        for (int i = 0; i < count; i++) nextMoves[i] = moves[first + i];
+        return new Stats(games, ids, nextMoves,
+                         Arrays.copyOfRange(moveGames, first, last), Arrays.copyOfRange(whiteWins, first, last),
+                         Arrays.copyOfRange(draws, first, last), Arrays.copyOfRange(blackWins, first, last));
+    }
+
+    int gameCount(long hash) {
+        int index = find(hash);
+        return index < 0 ? 0 : gameStart[index + 1] - gameStart[index];
+    }
+
+    // Hashes are sorted as unsigned values, the order the radix sort produces
+    private int find(long hash) {
+        int low = 0;
+        int high = hashes.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Long.compareUnsigned(hashes[mid], hash);
+            if (cmp < 0) low = mid + 1;
+            else if (cmp > 0) high = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    // Packed (hash, move << 32 | game id) pairs for a contiguous range of games
+    private static final class Entries {
+        long[] keys = new long[1024];
+        long[] values = new long[1024];
+        int size;
+
+        void add(long key, long value) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            keys[size] = key;
+            values[size++] = value;
+        }
+    }
+
+    static PositionIndex build(GameDatabase database, int maxPly) {
+        int games = database.size();
+        int parts = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() * 4, games / 1000));
+        // Each part covers a contiguous range of ids, so concatenating in order keeps ids ascending
+        java.util.List<Entries> chunks = IntStream.range(0, parts).parallel()
+            .mapToObj(part -> collect(database, (int) ((long) games * part / parts),
+                                      (int) ((long) games * (part + 1) / parts), maxPly))
+            .collect(Collectors.toList());
+        int size = 0;
+        for (Entries chunk : chunks) size += chunk.size;
+        long[] keys = new long[size];
+        long[] values = new long[size];
+        int offset = 0;
+        for (Entries chunk : chunks) {
+            System.arraycopy(chunk.keys, 0, keys, offset, chunk.size);
+            System.arraycopy(chunk.values, 0, values, offset, chunk.size);
+            offset += chunk.size;
+        }
+        chunks = null;
+
+        // Stable LSD radix sort by (hash, move); ids stay ascending within each run
+        long[] keyBuffer = new long[size];
+        long[] valueBuffer = new long[size];
+        int[] counts = new int[1 << RADIX_BITS];
+        radixPass(values, keys, values, keyBuffer, valueBuffer, size, 32, counts);
+        long[][] source = {keyBuffer, valueBuffer};
+        long[][] target = {keys, values};
+        for (int shift = 0; shift < 64; shift += RADIX_BITS) {
+            radixPass(source[0], source[0], source[1], target[0], target[1], size, shift, counts);
+            long[][] swap = source;
+            source = target;
+            target = swap;
+        }
+        keys = source[0];
+        values = source[1];
+        keyBuffer = null;
+        valueBuffer = null;
+
+        int positions = 0;
+        int moveRuns = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || keys[i] != keys[i - 1]) {
+                positions++;
+                if (moveOf(values[i]) != GAME_END) moveRuns++;
+            } else if (moveOf(values[i]) != moveOf(values[i - 1])) {
+                moveRuns++;
+            }
+        }
+        long[] hashes = new long[positions];
+        int[] gameStart = new int[positions + 1];
+        int[] gameIds = new int[size];
+        int[] moveStart = new int[positions + 1];
+        char[] moves = new char[moveRuns];
+        int[] moveGames = new int[moveRuns];
+        int[] whiteWins = new int[moveRuns];
+        int[] draws = new int[moveRuns];
+        int[] blackWins = new int[moveRuns];
+        int position = -1;
+        int run = -1;
+        for (int i = 0; i < size; i++) {
+            boolean newPosition = i == 0 || keys[i] != keys[i - 1];
+            if (newPosition) {
+                position++;
+                hashes[position] = keys[i];
+                gameStart[position] = i;
+                moveStart[position] = run + 1;
+            }
+            int gameId = (int) values[i];
+            gameIds[i] = gameId;
+            int move = moveOf(values[i]);
+            if (move == GAME_END) continue;
+            if (newPosition || move != moveOf(values[i - 1])) {
+                run++;
+                moves[run] = (char) move;
+            }
+            moveGames[run]++;
+            String result = database.result(gameId);
+            if (result.equals("1-0")) whiteWins[run]++;
+            else if (result.equals("0-1")) blackWins[run]++;
+            else if (result.equals("1/2-1/2")) draws[run]++;
+        }
+        gameStart[positions] = size;
+        moveStart[positions] = moveRuns;
+        return new PositionIndex(maxPly, hashes, gameStart, gameIds, moveStart, moves,
+                                 moveGames, whiteWins, draws, blackWins);
+    }
+
+    private static int moveOf(long value) {
+        return (int) (value >>> 32);
+    }
+
+    private static Entries collect(GameDatabase database, int fromId, int toId, int maxPly) {
+        Entries entries = new Entries();
+        ChessPosition position = new ChessPosition();
+        long[] seen = new long[maxPly + 1];
+        for (int id = fromId; id < toId; id++) {
+            position.setupInitial();
+            int plies = database.plyCount(id);
+            int last = Math.min(plies, maxPly);
+            int seenCount = 0;
+            for (int ply = 0; ply <= last; ply++) {
+                long hash = position.hash;
+                int move = ply < plies ? database.move(id, ply) : GAME_END;
+                // A game that repeats a position is still one game for that position
+                boolean repeated = false;
+                for (int i = 0; i < seenCount && !repeated; i++) repeated = seen[i] == hash;
+                if (!repeated) {
+                    seen[seenCount++] = hash;
+                    entries.add(hash, (long) move << 32 | id);
+                }
+                if (ply == last || !Move.play(position, move)) break;
+            }
+        }
+        return entries;
+    }
+
+    private static void radixPass(long[] digits, long[] keys, long[] values, long[] keysOut, long[] valuesOut,
+                                  int size, int shift, int[] counts) {
+        int mask = (1 << RADIX_BITS) - 1;
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < size; i++) counts[(int) (digits[i] >>> shift) & mask]++;
+        int total = 0;
+        for (int digit = 0; digit < counts.length; digit++) {
+            int count = counts[digit];
+            counts[digit] = total;
+            total += count;
+        }
+        for (int i = 0; i < size; i++) {
+            int slot = counts[(int) (digits[i] >>> shift) & mask]++;
+            keysOut[slot] = keys[i];
+            valuesOut[slot] = values[i];
+        }
+    }
+
+    // The index for a database is cached next to it as <database>.index
+    static Path indexPath(Path databasePath) {
+        return Paths.get(databasePath.toString() + ".index");
+    }
+
+    // Reads the cached index if it still matches the database, otherwise builds and caches it
+    static PositionIndex loadOrBuild(Path databasePath, GameDatabase database, int maxPly) {
+        Path path = indexPath(databasePath);
+        try {
+            long databaseSize = Files.size(databasePath);
+            if (Files.exists(path)) {
+                PositionIndex index = read(path, databaseSize, database.size(), maxPly);
+                if (index != null) return index;
+            }
+            PositionIndex index = build(database, maxPly);
+            try {
+                index.write(path, databaseSize, database.size());
+            } catch (IOException e) {
+                // The index is only a cache; a read-only directory just means rebuilding next time
+                e.printStackTrace();
+            }
+            return index;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return build(database, maxPly);
+        }
+    }
+
+    void write(Path path, long databaseSize, int databaseGames) throws IOException {
+        long length = 48L + 8L * hashes.length + 4L * (gameStart.length + gameIds.length + moveStart.length)
+            + 2L * moves.length + 16L * moveGames.length;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                                                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            buffer.put(MAGIC).putInt(VERSION).putInt(maxPly).putLong(databaseSize).putInt(databaseGames);
+            buffer.putInt(hashes.length).putInt(gameIds.length).putInt(moves.length).putLong(0);
+            buffer.asLongBuffer().put(hashes);
+            buffer.position(buffer.position() + 8 * hashes.length);
+            for (int[] array : new int[][] {gameStart, gameIds, moveStart}) putInts(buffer, array);
+            buffer.asCharBuffer().put(moves);
+            buffer.position(buffer.position() + 2 * moves.length);
+            for (int[] array : new int[][] {moveGames, whiteWins, draws, blackWins}) putInts(buffer, array);
+            buffer.force();
+        }
+    }
+
+    // Returns null when the file was built for another database or another ply limit, or
+    // does not hold as much as its header says
+    static PositionIndex read(Path path, long databaseSize, int databaseGames, int maxPly) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < 48) return null;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || buffer.getInt() != VERSION || buffer.getInt() != maxPly
+                    || buffer.getLong() != databaseSize || buffer.getInt() != databaseGames) {
+                return null;
+            }
+            int positions = buffer.getInt();
+            int entries = buffer.getInt();
+            int moveRuns = buffer.getInt();
+            buffer.getLong();
+            // A truncated or corrupt file is rebuilt rather than read past its end
+            long length = 48L + 8L * positions + 4L * (2L * (positions + 1) + entries) + 18L * moveRuns;
+            if (positions < 0 || entries < 0 || moveRuns < 0 || length != channel.size()) return null;
+            long[] hashes = new long[positions];
+            buffer.asLongBuffer().get(hashes);
+            buffer.position(buffer.position() + 8 * positions);
+            int[] gameStart = getInts(buffer, positions + 1);
+            int[] gameIds = getInts(buffer, entries);
+            int[] moveStart = getInts(buffer, positions + 1);
+            if (gameStart[positions] != entries || moveStart[positions] != moveRuns) return null;
+            char[] moves = new char[moveRuns];
+            buffer.asCharBuffer().get(moves);
+            buffer.position(buffer.position() + 2 * moveRuns);
+            return new PositionIndex(maxPly, hashes, gameStart, gameIds, moveStart, moves, getInts(buffer, moveRuns),
+                                     getInts(buffer, moveRuns), getInts(buffer, moveRuns), getInts(buffer, moveRuns));
+        }
+    }
+
+    private static void putInts(ByteBuffer buffer, int[] array) {
+        buffer.asIntBuffer().put(array);
+        buffer.position(buffer.position() + 4 * array.length);
+    }
+
+    private static int[] getInts(ByteBuffer buffer, int length) {
+        int[] array = new int[length];
+        buffer.asIntBuffer().get(array);
+        buffer.position(buffer.position() + 4 * length);
+        return array;
+    }
+}
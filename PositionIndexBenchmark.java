@@ -0,0 +1,60 @@
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+
+// Builds the opening explorer index for a game database and measures lookup latency for
+// positions taken from random games at random plies.
+//   java PositionIndexBenchmark <games.chessdb> [--max-ply N] [--queries N]
+class PositionIndexBenchmark {
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: PositionIndexBenchmark <games.chessdb> [--max-ply N] [--queries N]");
+            System.exit(1);
+        }
+        Path path = Paths.get(args[0]);
+        int maxPly = PositionIndex.DEFAULT_MAX_PLY;
+        int queries = 100_000;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--max-ply")) maxPly = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--queries")) queries = Integer.parseInt(args[++i]);
+            else throw new IllegalArgumentException("Unknown option " + args[i]);
+        }
+
+        try (GameDatabase database = GameDatabase.open(path)) {
+            long start = System.nanoTime();
+            PositionIndex index = PositionIndex.build(database, maxPly);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("build      %,d games, %,d positions, %,d entries in %.2f s%n",
+                              database.size(), index.positionCount(), index.entryCount(), seconds);
+
+            // Sample query positions up front so replaying them is not part of the timing
+            SplittableRandom random = new SplittableRandom(1);
+            long[] hashes = new long[Math.min(queries, 10_000)];
+            ChessPosition position = new ChessPosition();
+            for (int i = 0; i < hashes.length; i++) {
+                int id = random.nextInt(database.size());
+                int plies = Math.min(database.plyCount(id), maxPly);
+                int stop = plies == 0 ? 0 : random.nextInt(plies + 1);
+                position.setupInitial();
+                for (int ply = 0; ply < stop; ply++) Move.play(position, database.move(id, ply));
+                hashes[i] = position.hash;
+            }
+            // The start position has the largest result of all
+            position.setupInitial();
+            hashes[0] = position.hash;
+
+            for (int i = 0; i < 20_000; i++) index.lookup(hashes[i % hashes.length], 200);
+            LatencyHistogram latency = new LatencyHistogram();
+            long games = 0;
+            for (int i = 0; i < queries; i++) {
+                long queryStart = System.nanoTime();
+                PositionIndex.Stats stats = index.lookup(hashes[i % hashes.length], 200);
+                latency.record(System.nanoTime() - queryStart);
+                games += stats.games;
+            }
+            System.out.printf("lookup     %,d queries: mean %.1f us, p50 %.1f us, p99 %.1f us, max(p100) %.1f us (%,d games)%n",
+                              queries, latency.getMean() / 1e3, latency.getPercentile(50) / 1e3,
+                              latency.getPercentile(99) / 1e3, latency.getPercentile(100) / 1e3, games);
+        }
+    }
+}
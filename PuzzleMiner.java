@@ -0,0 +1,319 @@
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Mines tactical puzzles from a PGN archive in two passes over a pool of engine processes.
+// The shallow pass scores every position of every game at a low depth and keeps only
+// positions right after a move that threw away a balanced game, leaving the opponent clearly
+// winning. The deep pass searches those candidates with two principal variations and keeps
+// the ones where exactly one move wins. Puzzles are deduplicated by position hash and written
+// as EPD ("bm" the winning move, "pv" the solution line, "ce" the score), so EpdSuiteRunner
+// can replay them.
+//   java PuzzleMiner <games.pgn> [--engine path] [--engines N] [--shallow-depth N]
+//                    [--deep-depth N] [--swing cp] [--out puzzles.epd]
+class PuzzleMiner {
+    // Plies skipped at the start of each game; opening theory makes poor puzzles
+    private static final int MIN_PLY = 10;
+    // Shallow pass: the side to move before the blunder stood at most this well...
+    private static final int BALANCED_CP = 150;
+    // ...and the solver is at least this far ahead after it
+    private static final int CANDIDATE_CP = 200;
+    // Deep pass: the best move must win by this much, and the second best must not
+    private static final int WINNING_CP = 300;
+    private static final int SECOND_BEST_CP = 100;
+    private static final int MATE_CP = 100_000;
+    private static final int MAX_SOLUTION_PLIES = 7;
+
+    private final BlockingQueue<StockfishEngine> pool;
+    private final ExecutorService workers;
+    private final BufferedWriter out;
+    private final int shallowDepth;
+    private final int deepDepth;
+    private final int swing;
+    // Hashes of every position sent to the deep pass, so no position is searched twice
+    private final Set<Long> seen = ConcurrentHashMap.newKeySet();
+    // Tracks game and candidate tasks still running
+    private final Phaser pending = new Phaser(1);
+
+    private final AtomicLong games = new AtomicLong();
+    private final AtomicLong positions = new AtomicLong();
+    private final AtomicLong candidates = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong puzzles = new AtomicLong();
+    private final AtomicLong shallowNanos = new AtomicLong();
+    private final AtomicLong deepNanos = new AtomicLong();
+
+    PuzzleMiner(BlockingQueue<StockfishEngine> pool, int engines, BufferedWriter out,
+                int shallowDepth, int deepDepth, int swing) {
+        this.pool = pool;
+        this.workers = Executors.newFixedThreadPool(engines);
+        this.out = out;
+        this.shallowDepth = shallowDepth;
+        this.deepDepth = deepDepth;
+        this.swing = swing;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: PuzzleMiner <games.pgn> [--engine path] [--engines N] [--shallow-depth N] "
+                               + "[--deep-depth N] [--swing cp] [--out puzzles.epd]");
+            System.exit(1);
+        }
+        String enginePath = StockfishEngine.DEFAULT_PATH;
+        int engines = Runtime.getRuntime().availableProcessors();
+        int shallowDepth = 6;
+        int deepDepth = 16;
+        int swing = 250;
+        Path outPath = Paths.get("puzzles.epd");
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--engine": enginePath = args[++i]; break;
+                case "--engines": engines = Integer.parseInt(args[++i]); break;
+                case "--shallow-depth": shallowDepth = Integer.parseInt(args[++i]); break;
+                case "--deep-depth": deepDepth = Integer.parseInt(args[++i]); break;
+                case "--swing": swing = Integer.parseInt(args[++i]); break;
+                case "--out": outPath = Paths.get(args[++i]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        long start = System.nanoTime();
+        BlockingQueue<StockfishEngine> pool = EpdSuiteRunner.startEngines(enginePath, engines, 0, shallowDepth, 16);
+        long startupMillis = (System.nanoTime() - start) / 1_000_000;
+
+        start = System.nanoTime();
+        PuzzleMiner miner;
+        try (BufferedWriter out = Files.newBufferedWriter(outPath, StandardCharsets.UTF_8)) {
+            miner = new PuzzleMiner(pool, engines, out, shallowDepth, deepDepth, swing);
+            miner.mine(Paths.get(args[0]), engines);
+        } finally {
+            for (StockfishEngine engine : pool) engine.close();
+        }
+        miner.report((System.nanoTime() - start) / 1e9, engines, startupMillis, outPath);
+    }
+
+    // Streams the archive; at most two games per engine are parsed ahead of the pool
+    void mine(Path pgn, int engines) throws Exception {
+        Semaphore ahead = new Semaphore(2 * engines);
+        try (PgnReader reader = PgnReader.open(pgn)) {
+            int number = 0;
+            while (reader.hasNext()) {
+                PgnGame game = reader.next();
+                number++;
+                if (game.hasError() || game.moves.size() <= MIN_PLY) continue;
+                ahead.acquire();
+                int gameNumber = number;
+                submit(() -> {
+                    try {
+                        scanGame(game, gameNumber);
+                    } finally {
+                        ahead.release();
+                    }
+                });
+            }
+        }
+        pending.arriveAndAwaitAdvance();
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    private void submit(Runnable task) {
+        pending.register();
+        workers.execute(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            } finally {
+                pending.arriveAndDeregister();
+            }
+        });
+    }
+
+    // Shallow pass over one game on one engine; candidates are handed to the deep pass
+    private void scanGame(PgnGame game, int gameNumber) {
+        ChessPosition position = game.startPosition();
+        int plies = game.moves.size();
+        String[] fens = new String[plies + 1];
+        long[] hashes = new long[plies + 1];
+        int[] scores = new int[plies + 1];
+        List<Integer> found = new ArrayList<>();
+        StockfishEngine engine = take();
+        try {
+            engine.newGame();
+            engine.setSearchDepth(shallowDepth);
+            long start = System.nanoTime();
+            for (int ply = 0; ply <= plies; ply++) {
+                if (ply >= MIN_PLY) {
+                    fens[ply] = Fen.toFen(position);
+                    hashes[ply] = position.hash;
+                    scores[ply] = score(engine, fens[ply]);
+                    positions.incrementAndGet();
+                    // The move into this ply turned a balanced position into a clear win for
+                    // the side now to move; scores are from the side to move's point of view
+                    if (ply > MIN_PLY && scores[ply] != Integer.MIN_VALUE && scores[ply - 1] != Integer.MIN_VALUE) {
+                        int before = -scores[ply - 1];
+                        int after = scores[ply];
+                        if (before <= BALANCED_CP && after >= CANDIDATE_CP && after - before >= swing) found.add(ply);
+                    }
+                }
+                if (ply == plies || !Move.play(position, game.moves.get(ply))) break;
+            }
+            shallowNanos.addAndGet(System.nanoTime() - start);
+        } finally {
+            put(engine);
+        }
+        games.incrementAndGet();
+        for (int ply : found) {
+            candidates.incrementAndGet();
+            if (!seen.add(hashes[ply])) {
+                duplicates.incrementAndGet();
+                continue;
+            }
+            String fen = fens[ply];
+            String source = "game " + gameNumber + " ply " + ply;
+            submit(() -> confirm(fen, source));
+        }
+    }
+
+    // Deep pass: two principal variations, and a puzzle only if the first wins and the second does not
+    private void confirm(String fen, String source) {
+        ChessPosition position = new ChessPosition();
+        Fen.load(fen, position);
+        MoveList moves = new MoveList();
+        position.legalMoves(moves);
+        // A forced reply is not a puzzle
+        if (moves.size() < 2) return;
+
+        int[] lineScores = {Integer.MIN_VALUE, Integer.MIN_VALUE};
+        String[] bestLine = {null};
+        StockfishEngine engine = take();
+        long start = System.nanoTime();
+        try {
+            engine.setOption("MultiPV", "2");
+            engine.setSearchDepth(deepDepth);
+            engine.getBestMove(fen, line -> {
+                int score = parseScore(line);
+                if (score == Integer.MIN_VALUE) return;
+                long index = StockfishEngine.parseInfoField(line, " multipv ");
+                int pv = index == 2 ? 1 : 0;
+                lineScores[pv] = score;
+                if (pv == 0) {
+                    int at = line.indexOf(" pv ");
+                    if (at >= 0) bestLine[0] = line.substring(at + 4).trim();
+                }
+            });
+            engine.setOption("MultiPV", "1");
+            engine.setSearchDepth(shallowDepth);
+        } finally {
+            deepNanos.addAndGet(System.nanoTime() - start);
+            put(engine);
+        }
+        if (bestLine[0] == null || lineScores[0] < WINNING_CP || lineScores[1] > SECOND_BEST_CP) return;
+        write(position, bestLine[0], lineScores[0], source);
+    }
+
+    private void write(ChessPosition position, String pv, int score, String source) {
+        // The solution is the legal prefix of the line, ending on one of the solver's moves
+        ChessPosition board = position.copy();
+        List<String> solution = new ArrayList<>();
+        String bestMove = null;
+        for (String uci : pv.split("\\s+")) {
+            int move = Move.fromUci(uci);
+            if (solution.size() == MAX_SOLUTION_PLIES || !isLegal(board, move)) break;
+            if (bestMove == null) bestMove = San.format(board, move);
+            Move.play(board, move);
+            solution.add(uci);
+        }
+        if (solution.size() % 2 == 0 && !solution.isEmpty()) solution.remove(solution.size() - 1);
+        if (bestMove == null) return;
+
+        // EPD carries the first four FEN fields
+        String epd = String.join(" ", Arrays.copyOf(Fen.toFen(position).split(" "), 4));
+        String line = String.format("%s bm %s; pv \"%s\"; ce %d; id \"%s\";", epd, bestMove,
+                                    String.join(" ", solution), score, source);
+        synchronized (out) {
+            try {
+                out.write(line);
+                out.newLine();
+            } catch (java.io.IOException e) {
+                e.printStackTrace();
+            }
+        }
+        puzzles.incrementAndGet();
+    }
+
+    private static boolean isLegal(ChessPosition position, int move) {
+        if (move == Move.NONE) return false;
+        ChessPiece piece = position.board[Move.fromRow(move)][Move.fromCol(move)];
+        if (piece == null || (piece.color == javafx.scene.paint.Color.WHITE) != position.whiteTurn) return false;
+        return (position.legalMoveMask(Move.fromRow(move), Move.fromCol(move)) & 1L << Move.to(move)) != 0;
+    }
+
+    // Score of the last complete info line of a search, for the side to move; MIN_VALUE if none
+    private static int score(StockfishEngine engine, String fen) {
+        int[] last = {Integer.MIN_VALUE};
+        String move = engine.getBestMove(fen, line -> {
+            int score = parseScore(line);
+            if (score != Integer.MIN_VALUE) last[0] = score;
+        });
+        // "bestmove (none)": mate or stalemate on the board, which the game itself shows
+        return move == null || move.equals("(none)") ? Integer.MIN_VALUE : last[0];
+    }
+
+    // Centipawns from an info line; mates count as MATE_CP less the distance. Bounds from
+    // aspiration windows are not final scores and are skipped.
+    private static int parseScore(String line) {
+        if (line.contains("bound")) return Integer.MIN_VALUE;
+        if (line.contains(" score mate ")) {
+            long mate = StockfishEngine.parseSignedInfoField(line, " score mate ");
+            return (int) (mate > 0 ? MATE_CP - mate : -MATE_CP - mate);
+        }
+        if (line.contains(" score cp ")) return (int) StockfishEngine.parseSignedInfoField(line, " score cp ");
+        return Integer.MIN_VALUE;
+    }
+
+    private StockfishEngine take() {
+        try {
+            return pool.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void put(StockfishEngine engine) {
+        pool.add(engine);
+    }
+
+    private void report(double wallSeconds, int engines, long startupMillis, Path outPath) {
+        long candidateCount = candidates.get();
+        long deep = candidateCount - duplicates.get();
+        double shallowSeconds = shallowNanos.get() / 1e9;
+        double deepSeconds = deepNanos.get() / 1e9;
+        System.out.printf("%,d games, %,d positions at depth %d: %,.0f positions/sec, %,.1f candidates/sec%n",
+                          games.get(), positions.get(), shallowDepth, positions.get() / wallSeconds, candidateCount / wallSeconds);
+        System.out.printf("%,d candidates (%.2f%% of positions), %,d duplicates, %,d searched at depth %d, %,d puzzles written to %s%n",
+                          candidateCount, 100.0 * candidateCount / Math.max(1, positions.get()), duplicates.get(), deep,
+                          deepDepth, puzzles.get(), outPath);
+        System.out.printf("Engine time: shallow %.1f s, deep %.1f s (%.1f%%)%n", shallowSeconds, deepSeconds,
+                          100 * deepSeconds / Math.max(1e-9, shallowSeconds + deepSeconds));
+        System.out.printf("Wall time %.1f s with %d engines on %d cores (%.1f games/sec, %.2f puzzles/sec), engine startup %d ms%n",
+                          wallSeconds, engines, Runtime.getRuntime().availableProcessors(), games.get() / wallSeconds,
+                          puzzles.get() / wallSeconds, startupMillis);
+    }
+}
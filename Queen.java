@@ -0,0 +1,22 @@
+import javafx.scene.paint.Color;
+
+class Queen extends ChessPiece {
+    Queen(int row, int col, Color color) { super(row, col, color); }
+    @Override ChessPiece copy() { return new Queen(row, col, color); }
+    @Override char symbol() { return 'Q'; }
+    @Override public boolean isValidMove(int newRow, int newCol) {
+        return (row == newRow || col == newCol) || (Math.abs(row - newRow) == Math.abs(col - newCol));
+    }
+    @Override void drawGlyph(GlyphSurface gc, int x, int y) {
+        gc.setFill(color);
+        gc.fillRect(x + 15, y + 35, 20, 5);
+        gc.fillOval(x + 15, y + 15, 20, 20);
+        double[] xPoints = {x + 15, x + 20, x + 25, x + 30, x + 35, x + 15};
+        double[] yPoints = {y + 15, y + 5, y + 15, y + 5, y + 15, y + 15};
+        gc.fillPolygon(xPoints, yPoints, 6);
+        gc.setStroke(color == Color.WHITE ? Color.BLACK : Color.WHITE);
+        gc.strokeRect(x + 15, y + 35, 20, 5);
+        gc.strokeOval(x + 15, y + 15, 20, 20);
+        gc.strokePolygon(xPoints, yPoints, 6);
+    }
+}
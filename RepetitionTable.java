@@ -0,0 +1,69 @@
+import java.util.Arrays;
+
+// How often each position hash has occurred in the current game: an open-addressing table of
+// primitive longs and counts. Positions are added as moves are made and removed as they are
+// unmade, so the repetition count of the current position is one probe.
+final class RepetitionTable {
+    private long[] keys = new long[256];
+    private int[] counts = new int[256];
+    private int used;
+
+    void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(counts, 0);
+        used = 0;
+    }
+
+    // Returns the new count
+    int add(long hash) {
+        int slot = slot(hash);
+        if (counts[slot] == 0 && keys[slot] != hash) {
+            // Slots keep their key once used, so a count of zero with another key means empty
+            if (++used * 2 > keys.length) {
+                grow();
+                return add(hash);
+            }
+            keys[slot] = hash;
+        }
+        return ++counts[slot];
+    }
+
+    void remove(long hash) {
+        int slot = slot(hash);
+        if (keys[slot] == hash && counts[slot] > 0) counts[slot]--;
+    }
+
+    int count(long hash) {
+        int slot = slot(hash);
+        return keys[slot] == hash ? counts[slot] : 0;
+    }
+
+    void copyFrom(RepetitionTable other) {
+        keys = other.keys.clone();
+        counts = other.counts.clone();
+        used = other.used;
+    }
+
+    // Linear probing; stops at the key or at a slot that has never been used
+    private int slot(long hash) {
+        int mask = keys.length - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (keys[slot] != hash && (counts[slot] != 0 || keys[slot] != 0)) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        counts = new int[oldCounts.length * 2];
+        used = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldCounts[i] == 0) continue;
+            int slot = slot(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            counts[slot] = oldCounts[i];
+            used++;
+        }
+    }
+}
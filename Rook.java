@@ -0,0 +1,20 @@
+import javafx.scene.paint.Color;
+
+class Rook extends ChessPiece {
+    Rook(int row, int col, Color color) { super(row, col, color); }
+    @Override ChessPiece copy() { return new Rook(row, col, color); }
+    @Override char symbol() { return 'R'; }
+    @Override public boolean isValidMove(int newRow, int newCol) {
+        return row == newRow || col == newCol;
+    }
+    @Override void drawGlyph(GlyphSurface gc, int x, int y) {
+        gc.setFill(color);
+        gc.fillRect(x + 10, y + 30, 30, 10);
+        gc.fillRect(x + 15, y + 15, 20, 15);
+        gc.fillRect(x + 10, y + 10, 30, 5);
+        gc.setStroke(color == Color.WHITE ? Color.BLACK : Color.WHITE);
+        gc.strokeRect(x + 10, y + 30, 30, 10);
+        gc.strokeRect(x + 15, y + 15, 20, 15);
+        gc.strokeRect(x + 10, y + 10, 30, 5);
+    }
+}
@@ -0,0 +1,136 @@
+import javafx.scene.paint.Color;
+
+// Standard Algebraic Notation, resolved against ChessPosition's move rules
+final class San {
+    private static final String PIECE_LETTERS = "PNBRQK";
+
+    private San() {
+    }
+
+    static int parse(ChessPosition position, String san) {
+        byte[] bytes = new byte[san.length()];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) san.charAt(i);
+        return parse(position, bytes, 0, bytes.length);
+    }
+
+    // Resolves a SAN token to the unique legal move it denotes, or Move.NONE.
+    // Reads straight from the byte range so the PGN tokenizer never builds strings for moves.
+    static int parse(ChessPosition position, byte[] san, int offset, int length) {
+        int end = offset + length;
+        while (end > offset && isAnnotation(san[end - 1])) end--;
+        if (end - offset < 2) return Move.NONE;
+
+        int homeRow = position.whiteTurn ? 7 : 0;
+        if (san[offset] == 'O' || san[offset] == '0') {
+            int castleLength = end - offset;
+            int endCol;
+            if (castleLength == 3) endCol = 6;
+            else if (castleLength == 5) endCol = 2;
+            else return Move.NONE;
+            if (!position.canCastle(homeRow, 4, homeRow, endCol)) return Move.NONE;
+            return Move.encode(homeRow, 4, homeRow, endCol, ' ');
+        }
+
+        int type = PIECE_LETTERS.indexOf(san[offset]);
+        int start = offset;
+        if (type >= 0) {
+            start++;
+        } else {
+            type = 0;
+        }
+
+        char promotion = ' ';
+        if (type == 0 && end - start >= 3) {
+            byte last = san[end - 1];
+            if (last == 'Q' || last == 'R' || last == 'B' || last == 'N') {
+                promotion = Character.toLowerCase((char) last);
+                end--;
+                if (san[end - 1] == '=') end--;
+            }
+        }
+        if (end - start < 2) return Move.NONE;
+
+        int toCol = san[end - 2] - 'a';
+        int toRow = '8' - san[end - 1];
+        if (toCol < 0 || toCol > 7 || toRow < 0 || toRow > 7) return Move.NONE;
+
+        int fromCol = -1;
+        int fromRow = -1;
+        for (int i = start; i < end - 2; i++) {
+            byte c = san[i];
+            if (c >= 'a' && c <= 'h') fromCol = c - 'a';
+            else if (c >= '1' && c <= '8') fromRow = '8' - c;
+            else if (c != 'x' && c != ':' && c != '-') return Move.NONE;
+        }
+
+        Color side = position.whiteTurn ? Color.WHITE : Color.BLACK;
+        int found = Move.NONE;
+        for (int row = 0; row < 8; row++) {
+            if (fromRow >= 0 && row != fromRow) continue;
+            for (int col = 0; col < 8; col++) {
+                if (fromCol >= 0 && col != fromCol) continue;
+                ChessPiece piece = position.board[row][col];
+                if (piece == null || piece.color != side || typeOf(piece) != type) continue;
+                if (!position.isValidMoveWithoutCheckTest(row, col, toRow, toCol)) continue;
+                if (position.leavesKingInCheck(row, col, toRow, toCol)) continue;
+                if (found != Move.NONE) return Move.NONE; // ambiguous
+                found = Move.encode(row, col, toRow, toCol, promotion);
+            }
+        }
+        if (found != Move.NONE && type == 0 && (toRow == 0 || toRow == 7) && promotion == ' ') {
+            found = Move.encode(Move.fromRow(found), Move.fromCol(found), toRow, toCol, 'q');
+        }
+        return found;
+    }
+
+    // SAN without the check suffix; the caller appends '+' or '#' after playing the move
+    static String format(ChessPosition position, int move) {
+        int fromRow = Move.fromRow(move);
+        int fromCol = Move.fromCol(move);
+        int toRow = Move.toRow(move);
+        int toCol = Move.toCol(move);
+        ChessPiece piece = position.board[fromRow][fromCol];
+        int type = typeOf(piece);
+        if (type == 5 && Math.abs(toCol - fromCol) == 2) {
+            return toCol == 6 ? "O-O" : "O-O-O";
+        }
+        boolean capture = position.board[toRow][toCol] != null;
+        StringBuilder san = new StringBuilder(8);
+        if (type == 0) {
+            if (capture || fromCol != toCol) san.append((char) ('a' + fromCol)).append('x');
+        } else {
+            san.append(PIECE_LETTERS.charAt(type));
+            boolean ambiguous = false, sameFile = false, sameRank = false;
+            for (int row = 0; row < 8; row++) {
+                for (int col = 0; col < 8; col++) {
+                    if (row == fromRow && col == fromCol) continue;
+                    ChessPiece other = position.board[row][col];
+                    if (other == null || other.color != piece.color || typeOf(other) != type) continue;
+                    if (!position.isValidMoveWithoutCheckTest(row, col, toRow, toCol)) continue;
+                    if (position.leavesKingInCheck(row, col, toRow, toCol)) continue;
+                    ambiguous = true;
+                    if (col == fromCol) sameFile = true;
+                    if (row == fromRow) sameRank = true;
+                }
+            }
+            if (ambiguous) {
+                if (!sameFile) san.append((char) ('a' + fromCol));
+                else if (!sameRank) san.append((char) ('8' - fromRow));
+                else san.append((char) ('a' + fromCol)).append((char) ('8' - fromRow));
+            }
+            if (capture) san.append('x');
+        }
+        san.append((char) ('a' + toCol)).append((char) ('8' - toRow));
+        if (Move.promotion(move) != ' ') san.append('=').append(Character.toUpperCase(Move.promotion(move)));
+        return san.toString();
+    }
+
+    // 0-5 for pawn, knight, bishop, rook, queen, king
+    static int typeOf(ChessPiece piece) {
+        return Zobrist.pieceIndex(piece) % 6;
+    }
+
+    private static boolean isAnnotation(byte c) {
+        return c == '+' || c == '#' || c == '!' || c == '?';
+    }
+}
@@ -0,0 +1,282 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javafx.scene.paint.Color;
+
+// Generates training data by self-play: each thread plays games from a few random opening
+// moves on, either with the built-in evaluation (a one-ply search with some noise) or with an
+// engine at a fixed node count, and labels every position it reaches, other than those in
+// check, with the search score and the game's result. Games are adjudicated once one side has
+// stayed --adjudicate centipawns ahead for a few plies. Records (TrainingRecord, 32 bytes) are
+// staged per game, then copied into batches from a fixed pool and written by one writer
+// thread, so memory stays bounded however long it runs.
+//   java SelfPlayGenerator <out.bin> [--games N] [--threads N] [--engine path --nodes N]
+//                          [--random-plies N] [--max-plies N] [--adjudicate cp] [--seed N] [--check]
+class SelfPlayGenerator {
+    private static final int BATCH_RECORDS = 2048;
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+    // Chance of playing one of the next-best moves instead of the best, in built-in play
+    private static final double NOISE = 0.15;
+    private static final int MATE_SCORE = 30_000;
+    // Plies in a row one side must stay --adjudicate ahead before the game is scored as won
+    private static final int ADJUDICATE_PLIES = 6;
+
+    private final int randomPlies;
+    private final int maxPlies;
+    private final int adjudicate;
+    private final boolean check;
+    private final BlockingQueue<ByteBuffer> free;
+    private final BlockingQueue<ByteBuffer> full;
+    private final AtomicLong gamesLeft;
+    private final AtomicLong positions = new AtomicLong();
+    private final AtomicLong plies = new AtomicLong();
+    // Games won by White, drawn, won by Black
+    private final AtomicLongArray results = new AtomicLongArray(3);
+    private final AtomicLong mismatches = new AtomicLong();
+
+    SelfPlayGenerator(long games, int randomPlies, int maxPlies, int adjudicate, boolean check, int batches) {
+        this.gamesLeft = new AtomicLong(games);
+        this.randomPlies = randomPlies;
+        this.maxPlies = maxPlies;
+        this.adjudicate = adjudicate;
+        this.check = check;
+        free = new ArrayBlockingQueue<>(batches);
+        full = new ArrayBlockingQueue<>(batches + 1);
+        for (int i = 0; i < batches; i++) {
+            free.add(ByteBuffer.allocateDirect(BATCH_RECORDS * TrainingRecord.SIZE).order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: SelfPlayGenerator <out.bin> [--games N] [--threads N] [--engine path --nodes N] "
+                               + "[--random-plies N] [--max-plies N] [--adjudicate cp] [--seed N] [--check]");
+            System.exit(1);
+        }
+        Path output = Paths.get(args[0]);
+        long games = 10_000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String enginePath = null;
+        int nodes = 5_000;
+        int randomPlies = 8;
+        int maxPlies = 400;
+        int adjudicate = Evaluation.DECISIVE_MARGIN;
+        long seed = 1;
+        boolean check = false;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--games": games = Long.parseLong(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--engine": enginePath = args[++i]; break;
+                case "--nodes": nodes = Integer.parseInt(args[++i]); break;
+                case "--random-plies": randomPlies = Integer.parseInt(args[++i]); break;
+                case "--max-plies": maxPlies = Integer.parseInt(args[++i]); break;
+                case "--adjudicate": adjudicate = Integer.parseInt(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--check": check = true; break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        // Two batches per thread keep every thread busy while the writer drains the rest
+        SelfPlayGenerator generator = new SelfPlayGenerator(games, randomPlies, maxPlies, adjudicate, check, 2 * threads + 2);
+        long start = System.nanoTime();
+        long bytes;
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            Thread writer = new Thread(() -> generator.write(channel), "training-data-writer");
+            writer.start();
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            SplittableRandom seeds = new SplittableRandom(seed);
+            Future<?>[] players = new Future<?>[threads];
+            for (int i = 0; i < threads; i++) {
+                SplittableRandom random = seeds.split();
+                String path = enginePath;
+                int limit = nodes;
+                players[i] = pool.submit(() -> {
+                    generator.play(random, path == null ? null : startEngine(path, limit));
+                    return null;
+                });
+            }
+            try {
+                for (Future<?> player : players) player.get();
+            } finally {
+                // If a player failed, the rest are interrupted, and END is only queued once
+                // they have handed in their last batches
+                pool.shutdownNow();
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+                generator.full.put(END);
+                writer.join();
+            }
+            bytes = channel.size();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long count = generator.positions.get();
+        long played = generator.results.get(0) + generator.results.get(1) + generator.results.get(2);
+        System.out.printf("%,d games (%,d White wins, %,d draws, %,d Black wins), %.0f plies a game%n",
+                          played, generator.results.get(0), generator.results.get(1), generator.results.get(2),
+                          (double) generator.plies.get() / Math.max(1, played));
+        System.out.printf("%,d positions, %,d bytes in %.1f s on %d threads: %,.0f positions/sec, %,.1f million/hour%n",
+                          count, bytes, seconds, threads, count / seconds, count / seconds * 3600 / 1e6);
+        if (check) {
+            System.out.printf("%d records did not unpack to their position%n", generator.mismatches.get());
+            if (generator.mismatches.get() > 0) System.exit(1);
+        }
+    }
+
+    private static StockfishEngine startEngine(String path, int nodes) {
+        StockfishEngine engine = new StockfishEngine(path);
+        if (!engine.isRunning()) throw new IllegalStateException("Could not start engine " + path, engine.startFailure());
+        engine.setOption("Threads", "1");
+        engine.setOption("Hash", "16");
+        engine.setNodes(nodes);
+        return engine;
+    }
+
+    // One worker's games, until the shared count runs out
+    private void play(SplittableRandom random, StockfishEngine engine) throws InterruptedException {
+        ChessPosition position = new ChessPosition();
+        MoveList moves = new MoveList();
+        ChessPosition.Undo undo = new ChessPosition.Undo();
+        ByteBuffer game = ByteBuffer.allocate(maxPlies * TrainingRecord.SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer batch = free.take();
+        int[] score = new int[1];
+        try {
+            while (!Thread.currentThread().isInterrupted() && gamesLeft.getAndDecrement() > 0) {
+                game.clear();
+                int result = playGame(position, moves, undo, random, engine, game, score);
+                // Label each record with the result from its own side to move's point of view
+                for (int offset = 0; offset < game.position(); offset += TrainingRecord.SIZE) {
+                    boolean whiteToMove = (game.get(offset + 24) & 1) != 0;
+                    int forMover = whiteToMove ? result : -result;
+                    game.put(offset + TrainingRecord.RESULT_OFFSET, (byte) (forMover + 1));
+                }
+                results.incrementAndGet(1 - result);
+                positions.addAndGet(game.position() / TrainingRecord.SIZE);
+                game.flip();
+                while (game.hasRemaining()) {
+                    if (!batch.hasRemaining()) {
+                        full.put(batch);
+                        // Handed over: if take() is interrupted, finally must not queue it again
+                        batch = null;
+                        batch = free.take();
+                    }
+                    int n = Math.min(game.remaining(), batch.remaining());
+                    ByteBuffer slice = game.duplicate();
+                    slice.limit(game.position() + n);
+                    batch.put(slice);
+                    game.position(game.position() + n);
+                }
+            }
+        } finally {
+            if (batch != null) full.put(batch);
+            if (engine != null) engine.close();
+        }
+    }
+
+    // Plays one game, packing positions into game; returns 1, 0 or -1 for a White win, draw
+    // or Black win
+    private int playGame(ChessPosition position, MoveList moves, ChessPosition.Undo undo, SplittableRandom random,
+                         StockfishEngine engine, ByteBuffer game, int[] score) {
+        position.setupInitial();
+        int ply = 0;
+        for (; ply < randomPlies; ply++) {
+            moves.clear();
+            position.legalMoves(moves);
+            if (moves.size() == 0) break;
+            Move.play(position, moves.get(random.nextInt(moves.size())));
+        }
+        int result = 0;
+        // Plies in a row White (positive) or Black (negative) has been decisively ahead
+        int streak = 0;
+        for (; ply < maxPlies; ply++) {
+            moves.clear();
+            position.legalMoves(moves);
+            Color mover = position.whiteTurn ? Color.WHITE : Color.BLACK;
+            boolean inCheck = position.isKingInCheck(mover);
+            int sign = position.whiteTurn ? 1 : -1;
+            if (moves.size() == 0) {
+                result = inCheck ? -sign : 0;
+                break;
+            }
+            if (position.drawReason() != null) break;
+            int move = engine == null ? chooseMove(position, moves, undo, random, score)
+                                      : engineMove(position, engine, score);
+            if (move == Move.NONE) break;
+            if (!inCheck) {
+                int offset = game.position();
+                TrainingRecord.pack(position, score[0], game);
+                if (check && !TrainingRecord.toFen(game, offset).equals(Fen.toFen(position))) mismatches.incrementAndGet();
+            }
+            int whiteScore = sign * score[0];
+            if (whiteScore >= adjudicate) streak = Math.max(streak, 0) + 1;
+            else if (whiteScore <= -adjudicate) streak = Math.min(streak, 0) - 1;
+            else streak = 0;
+            if (Math.abs(streak) >= ADJUDICATE_PLIES) {
+                result = Integer.signum(streak);
+                break;
+            }
+            Move.play(position, move);
+        }
+        plies.addAndGet(ply);
+        return result;
+    }
+
+    // Orders the moves by the static score after each; the best one's score is the label, and
+    // the move played is usually that one, sometimes one of the next three
+    private static int chooseMove(ChessPosition position, MoveList moves, ChessPosition.Undo undo,
+                                  SplittableRandom random, int[] score) {
+        Evaluation.orderMoves(position, moves);
+        int best = moves.get(0);
+        position.makeMove(Move.fromRow(best), Move.fromCol(best), Move.toRow(best), Move.toCol(best),
+                          Move.promotion(best), undo);
+        score[0] = position.whiteTurn ? -position.staticEval() : position.staticEval();
+        position.unmakeMove(undo);
+        if (moves.size() > 1 && random.nextDouble() < NOISE) return moves.get(1 + random.nextInt(Math.min(3, moves.size() - 1)));
+        return best;
+    }
+
+    private static int engineMove(ChessPosition position, StockfishEngine engine, int[] score) {
+        // A search that reports no score labels the position as level
+        score[0] = 0;
+        String bestMove = engine.getBestMove(Fen.toFen(position), line -> {
+            if (line.contains(" score mate ")) {
+                long mate = StockfishEngine.parseSignedInfoField(line, " score mate ");
+                score[0] = mate > 0 ? MATE_SCORE - (int) mate : -MATE_SCORE - (int) mate;
+            } else if (line.contains(" score cp ")) {
+                score[0] = (int) StockfishEngine.parseSignedInfoField(line, " score cp ");
+            }
+        });
+        if (bestMove == null || bestMove.length() < 4) return Move.NONE;
+        return Move.fromUci(bestMove);
+    }
+
+    private void write(FileChannel channel) {
+        try {
+            for (ByteBuffer batch = full.take(); batch != END; batch = full.take()) {
+                batch.flip();
+                while (batch.hasRemaining()) channel.write(batch);
+                batch.clear();
+                free.put(batch);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
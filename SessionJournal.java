@@ -0,0 +1,286 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Append-only journal of the current game so it survives a crash or close. The UI thread only
+// encodes a few bytes into a memory buffer; a background thread writes the buffer out when it
+// has waited FLUSH_MILLIS or collected FLUSH_BYTES, and forces it to disk. After COMPACT_RECORDS
+// records the file is replaced by a single snapshot, so restoring replays a short tail at most.
+//
+// Layout: "CHESSJNL", version (int), then records:
+//   'S' fenLength (short, 0 for the standard start) fen moveCount (int) moves (16 bits each) ply (int)
+//   'M' move (16 bits)      a move played at the current ply, discarding any redo tail
+//   'G' ply (int)           undo/redo to that ply
+// A record cut short by a crash is ignored on reading.
+final class SessionJournal implements Closeable {
+    private static final byte[] MAGIC = "CHESSJNL".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final byte SNAPSHOT = 'S';
+    private static final byte MOVE = 'M';
+    private static final byte GO_TO = 'G';
+    static final long FLUSH_MILLIS = 200;
+    static final int FLUSH_BYTES = 4096;
+    static final int COMPACT_RECORDS = 256;
+
+    // A game as the journal sees it: start position, every move including undone ones, and the
+    // ply on the board
+    static final class State {
+        String startFen;
+        final MoveList moves = new MoveList();
+        int current;
+
+        boolean isEmpty() {
+            return startFen == null && moves.size() == 0;
+        }
+
+        static State of(String startFen, MoveHistory history) {
+            State state = new State();
+            state.startFen = startFen;
+            for (int ply = 0; ply < history.size(); ply++) state.moves.add(history.move(ply));
+            state.current = history.current();
+            return state;
+        }
+    }
+
+    private final Path path;
+    private final Object lock = new Object();
+    private ByteBuffer pending = ByteBuffer.allocate(FLUSH_BYTES * 2);
+    private ByteBuffer writing = ByteBuffer.allocate(FLUSH_BYTES * 2);
+    private boolean closing;
+    private final Thread writer;
+    private FileChannel channel;
+    // Replica of the game kept by the writer thread, used for compaction
+    private final State mirror = new State();
+    private int recordsSinceSnapshot;
+    private volatile long flushes;
+    private volatile long bytesWritten;
+    private volatile long compactions;
+
+    static Path defaultPath() {
+        return Paths.get(System.getProperty("user.home"), ".chessgame", "session.journal");
+    }
+
+    // The game recorded in the journal, or null if there is none or it is unreadable
+    static State read(Path path) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(path);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        if (!hasHeader(in)) return null;
+        State state = new State();
+        while (apply(in, state) != 0) {
+        }
+        return state;
+    }
+
+    // Starts a new journal file holding the given game, replacing any previous one
+    static SessionJournal open(Path path, State initial) throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        return new SessionJournal(path, initial);
+    }
+
+    private SessionJournal(Path path, State initial) throws IOException {
+        this.path = path;
+        copy(initial, mirror);
+        compact();
+        writer = new Thread(this::writeLoop, "session-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // A new game or a loaded one: everything before it is obsolete
+    void gameStarted(String startFen, MoveHistory history) {
+        byte[] fen = startFen == null ? new byte[0] : startFen.getBytes(StandardCharsets.US_ASCII);
+        synchronized (lock) {
+            ByteBuffer out = reserve(1 + 2 + fen.length + 4 + 2 * history.size() + 4);
+            out.put(SNAPSHOT).putShort((short) fen.length).put(fen).putInt(history.size());
+            for (int ply = 0; ply < history.size(); ply++) out.putShort((short) history.move(ply));
+            out.putInt(history.current());
+            lock.notifyAll();
+        }
+    }
+
+    void movePlayed(int move) {
+        synchronized (lock) {
+            reserve(3).put(MOVE).putShort((short) move);
+            if (pending.position() >= FLUSH_BYTES) lock.notifyAll();
+        }
+    }
+
+    void wentTo(int ply) {
+        synchronized (lock) {
+            reserve(5).put(GO_TO).putInt(ply);
+            if (pending.position() >= FLUSH_BYTES) lock.notifyAll();
+        }
+    }
+
+    long flushes() {
+        return flushes;
+    }
+
+    long bytesWritten() {
+        return bytesWritten;
+    }
+
+    long compactions() {
+        return compactions;
+    }
+
+    // Writes out whatever is pending and stops the writer; the file is kept for the next start
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            closing = true;
+            lock.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private ByteBuffer reserve(int bytes) {
+        if (pending.remaining() < bytes) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + bytes));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        return pending;
+    }
+
+    private void writeLoop() {
+        while (true) {
+            boolean last;
+            synchronized (lock) {
+                try {
+                    while (pending.position() == 0 && !closing) lock.wait();
+                    // Give the batch up to FLUSH_MILLIS to fill unless it is already big enough
+                    long deadline = System.nanoTime() + FLUSH_MILLIS * 1_000_000;
+                    while (pending.position() < FLUSH_BYTES && !closing) {
+                        long left = (deadline - System.nanoTime()) / 1_000_000;
+                        if (left <= 0) break;
+                        lock.wait(left);
+                    }
+                } catch (InterruptedException e) {
+                    closing = true;
+                }
+                ByteBuffer full = pending;
+                pending = writing;
+                writing = full;
+                last = closing;
+            }
+            try {
+                writing.flip();
+                if (!writing.hasRemaining()) return;
+                ByteBuffer records = writing.duplicate();
+                while (writing.hasRemaining()) bytesWritten += channel.write(writing);
+                channel.force(false);
+                flushes++;
+                int applied;
+                while ((applied = apply(records, mirror)) != 0) {
+                    recordsSinceSnapshot = applied == SNAPSHOT ? 0 : recordsSinceSnapshot + 1;
+                }
+                if (recordsSinceSnapshot >= COMPACT_RECORDS) compact();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            writing.clear();
+            if (last) {
+                synchronized (lock) {
+                    if (pending.position() == 0) return;
+                }
+            }
+        }
+    }
+
+    // Rewrites the journal as one snapshot of the mirror; the new file replaces the old one
+    // atomically, so a crash leaves one or the other
+    private void compact() throws IOException {
+        byte[] fen = mirror.startFen == null ? new byte[0] : mirror.startFen.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + 1 + 2 + fen.length + 4 + 2 * mirror.moves.size() + 4);
+        out.put(MAGIC).putInt(VERSION);
+        out.put(SNAPSHOT).putShort((short) fen.length).put(fen).putInt(mirror.moves.size());
+        for (int i = 0; i < mirror.moves.size(); i++) out.putShort((short) mirror.moves.get(i));
+        out.putInt(mirror.current);
+        out.flip();
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel snapshot = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) snapshot.write(out);
+            snapshot.force(false);
+        }
+        if (channel != null) channel.close();
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        recordsSinceSnapshot = 0;
+        compactions++;
+    }
+
+    private static boolean hasHeader(ByteBuffer in) {
+        if (in.remaining() < HEADER_SIZE) return false;
+        byte[] magic = new byte[MAGIC.length];
+        in.get(magic);
+        return Arrays.equals(magic, MAGIC) && in.getInt() == VERSION;
+    }
+
+    // Applies the next record to state and returns its type, or 0 at the end of the records
+    private static int apply(ByteBuffer in, State state) {
+        if (!in.hasRemaining()) return 0;
+        int start = in.position();
+        byte type = in.get();
+        switch (type) {
+            case MOVE:
+                if (in.remaining() < 2) break;
+                state.moves.truncate(state.current);
+                state.moves.add(in.getChar());
+                state.current++;
+                return type;
+            case GO_TO:
+                if (in.remaining() < 4) break;
+                state.current = Math.max(0, Math.min(in.getInt(), state.moves.size()));
+                return type;
+            case SNAPSHOT:
+                if (in.remaining() < 2) break;
+                int fenLength = in.getShort();
+                if (fenLength < 0 || in.remaining() < fenLength + 4) break;
+                byte[] fen = new byte[fenLength];
+                in.get(fen);
+                int count = in.getInt();
+                if (count < 0 || in.remaining() < 2L * count + 4) break;
+                state.startFen = fenLength == 0 ? null : new String(fen, StandardCharsets.US_ASCII);
+                state.moves.clear();
+                for (int i = 0; i < count; i++) state.moves.add(in.getChar());
+                state.current = Math.max(0, Math.min(in.getInt(), count));
+                return type;
+            default:
+                break;
+        }
+        // A torn or unknown record: stop here
+        in.position(start);
+        return 0;
+    }
+
+    private static void copy(State from, State to) {
+        to.startFen = from.startFen;
+        to.moves.clear();
+        for (int i = 0; i < from.moves.size(); i++) to.moves.add(from.moves.get(i));
+        to.current = from.current;
+    }
+}
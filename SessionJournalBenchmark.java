@@ -0,0 +1,82 @@
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Measures what the session journal costs the UI thread per move, and how long restoring a
+// long game takes (reading the journal plus replaying it through MoveHistory).
+//   java SessionJournalBenchmark [--moves N] [--dir path]
+class SessionJournalBenchmark {
+    private static final int[] SHUFFLE = {
+        Move.fromUci("g1f3"), Move.fromUci("g8f6"), Move.fromUci("f3g1"), Move.fromUci("f6g8"),
+    };
+
+    public static void main(String[] args) throws Exception {
+        int moves = 1_000_000;
+        Path dir = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--moves": moves = Integer.parseInt(args[++i]); break;
+                case "--dir": dir = Path.of(args[++i]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (dir == null) dir = Files.createTempDirectory("journal");
+        Path path = dir.resolve("session.journal");
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        LatencyHistogram perMove = new LatencyHistogram();
+        SessionJournal journal = SessionJournal.open(path, new SessionJournal.State());
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < moves; i++) {
+            long callStart = System.nanoTime();
+            // Every 50th step is a take-back, as in a game explored with undo/redo
+            if (i % 50 == 49) journal.wentTo(i / 2);
+            else journal.movePlayed(SHUFFLE[i & 3]);
+            perMove.record(System.nanoTime() - callStart);
+        }
+        double callerSeconds = (System.nanoTime() - start) / 1e9;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        journal.close();
+        double totalSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%,d journal records: caller mean %.0f ns, p50 %d ns, p99 %d ns, p99.9 %.1f us, %.2f bytes allocated per record%n",
+                          moves, callerSeconds * 1e9 / moves, perMove.getPercentile(50), perMove.getPercentile(99),
+                          perMove.getPercentile(99.9) / 1e3, (double) allocated / moves);
+        System.out.printf("writer: %,d flushes (%.0f records each), %,d bytes, %,d compactions, done %.2f s after the first record; file %,d bytes%n",
+                          journal.flushes(), (double) moves / Math.max(1, journal.flushes()), journal.bytesWritten(),
+                          journal.compactions(), totalSeconds, Files.size(path));
+
+        System.out.println();
+        for (int plies : new int[] {100, 1_000, 10_000, 50_000}) restore(path, plies);
+    }
+
+    // Journals a game of the given length move by move, then times a restore the way the UI does it
+    private static void restore(Path path, int plies) throws Exception {
+        SessionJournal journal = SessionJournal.open(path, new SessionJournal.State());
+        for (int i = 0; i < plies; i++) journal.movePlayed(SHUFFLE[i & 3]);
+        journal.wentTo(plies - 1);
+        journal.close();
+
+        long best = Long.MAX_VALUE;
+        long bestRead = Long.MAX_VALUE;
+        int restored = 0;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            SessionJournal.State state = SessionJournal.read(path);
+            long read = System.nanoTime() - start;
+            ChessPosition position = new ChessPosition();
+            position.setupInitial();
+            MoveHistory history = new MoveHistory();
+            for (int i = 0; i < state.moves.size(); i++) {
+                if (!history.play(position, state.moves.get(i))) break;
+            }
+            history.goTo(position, state.current);
+            best = Math.min(best, System.nanoTime() - start);
+            bestRead = Math.min(bestRead, read);
+            restored = history.current();
+        }
+        System.out.printf("restore %,7d plies: %8.2f ms (read %.2f ms, replay %.2f us per ply), file %,d bytes, at ply %,d%n",
+                          plies, best / 1e6, bestRead / 1e6, (best - bestRead) / 1e3 / plies, Files.size(path), restored);
+    }
+}
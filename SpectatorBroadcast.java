@@ -0,0 +1,305 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Fans a live game out to spectators. Each move is encoded once, on the player's thread, into
+// a small frame; a broadcaster thread then queues a reference to that same buffer for every
+// subscriber, and sends each subscriber's queue with one non-blocking gathering write. A
+// subscriber that falls MAX_PENDING_FRAMES behind has its backlog replaced by a snapshot of
+// the latest position, and one that takes no bytes for STALL_NANOS (by default) is dropped,
+// so a slow spectator never holds up the game or the other spectators.
+//
+// Frames are big-endian: int length of the rest, byte type, int ply, int White's and Black's
+// time used in milliseconds, short eval (centipawns, White's view), long Zobrist hash, then
+//   MOVE:     short move (Move encoding)
+//   SNAPSHOT: byte FEN length, FEN in ASCII
+// A new subscriber starts with a snapshot. Publishing methods must be called from one thread.
+final class SpectatorBroadcast implements AutoCloseable {
+    static final byte MOVE = 1;
+    static final byte SNAPSHOT = 2;
+    static final int HEADER_BYTES = 4 + 1 + 4 + 4 + 4 + 2 + 8;
+    static final int MAX_PENDING_FRAMES = 64;
+    static final long STALL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    // How often subscribers with unsent bytes are retried when nothing is being published
+    private static final long RETRY_MILLIS = 5;
+    private static final int MAX_GATHER = 32;
+
+    private static final class Subscriber {
+        final GatheringByteChannel channel;
+        final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+        // Bytes of the first pending frame already sent
+        int headOffset;
+        long lastProgress;
+
+        Subscriber(GatheringByteChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    // Work for the broadcaster thread: a subscriber to add, or a frame with the snapshot
+    // matching the position after it
+    private static final class Task {
+        final Subscriber subscriber;
+        final ByteBuffer frame;
+        final ByteBuffer snapshot;
+
+        Task(Subscriber subscriber, ByteBuffer frame, ByteBuffer snapshot) {
+            this.subscriber = subscriber;
+            this.frame = frame;
+            this.snapshot = snapshot;
+        }
+    }
+
+    private final long stallNanos;
+    private final LinkedBlockingQueue<Task> tasks = new LinkedBlockingQueue<>();
+    private final Thread broadcaster;
+    private ServerSocketChannel server;
+    private volatile boolean closed;
+
+    // Broadcaster thread only
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+    private ByteBuffer latestSnapshot;
+
+    // Publishing thread only: time used by each side, charged to the side that moved
+    private final char[] fenBuffer = new char[Fen.MAX_LENGTH];
+    private long lastMoveNanos = System.nanoTime();
+    private long whiteNanos;
+    private long blackNanos;
+
+    private final AtomicLong framesPublished = new AtomicLong();
+    private final AtomicLong framesWritten = new AtomicLong();
+    private final AtomicLong conflations = new AtomicLong();
+    private final AtomicLong drops = new AtomicLong();
+    private volatile int subscriberCount;
+
+    SpectatorBroadcast() {
+        this(STALL_NANOS);
+    }
+
+    SpectatorBroadcast(long stallNanos) {
+        this.stallNanos = stallNanos;
+        broadcaster = new Thread(this::run, "spectator-broadcast");
+        broadcaster.setDaemon(true);
+        broadcaster.start();
+    }
+
+    // Accepts spectators over TCP on the given address, on a daemon thread
+    void listen(InetSocketAddress address) throws IOException {
+        server = ServerSocketChannel.open();
+        server.bind(address);
+        Thread acceptor = new Thread(() -> {
+            while (!closed) {
+                try {
+                    SocketChannel channel = server.accept();
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    subscribe(channel);
+                } catch (ClosedChannelException e) {
+                    return;
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, "spectator-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    InetSocketAddress address() throws IOException {
+        return (InetSocketAddress) server.getLocalAddress();
+    }
+
+    // Any gathering channel will do; selectable ones are switched to non-blocking mode
+    void subscribe(GatheringByteChannel channel) throws IOException {
+        if (channel instanceof SelectableChannel) ((SelectableChannel) channel).configureBlocking(false);
+        tasks.add(new Task(new Subscriber(channel), null, null));
+    }
+
+    // A new game, or a jump through the history: spectators resynchronise from the snapshot
+    void positionSet(ChessPosition position, int ply) {
+        lastMoveNanos = System.nanoTime();
+        whiteNanos = 0;
+        blackNanos = 0;
+        ByteBuffer snapshot = snapshot(position, ply);
+        tasks.add(new Task(null, snapshot, snapshot));
+    }
+
+    // Call after the move has been made on position
+    void movePlayed(ChessPosition position, int ply, int move) {
+        long now = System.nanoTime();
+        if (position.whiteTurn) blackNanos += now - lastMoveNanos;
+        else whiteNanos += now - lastMoveNanos;
+        lastMoveNanos = now;
+        ByteBuffer frame = header(MOVE, 2, position, ply).putShort((short) move);
+        tasks.add(new Task(null, frame.flip().asReadOnlyBuffer(), snapshot(position, ply)));
+    }
+
+    private ByteBuffer snapshot(ChessPosition position, int ply) {
+        int length = Fen.write(position, fenBuffer);
+        ByteBuffer frame = header(SNAPSHOT, 1 + length, position, ply).put((byte) length);
+        for (int i = 0; i < length; i++) frame.put((byte) fenBuffer[i]);
+        return frame.flip().asReadOnlyBuffer();
+    }
+
+    private ByteBuffer header(byte type, int bodyBytes, ChessPosition position, int ply) {
+        int eval = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, position.staticEval()));
+        return ByteBuffer.allocate(HEADER_BYTES + bodyBytes)
+            .putInt(HEADER_BYTES - 4 + bodyBytes)
+            .put(type)
+            .putInt(ply)
+            .putInt((int) TimeUnit.NANOSECONDS.toMillis(whiteNanos))
+            .putInt((int) TimeUnit.NANOSECONDS.toMillis(blackNanos))
+            .putShort((short) eval)
+            .putLong(position.hash);
+    }
+
+    private void run() {
+        while (!closed) {
+            Task task;
+            try {
+                task = tasks.poll(RETRY_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            long now = System.nanoTime();
+            // Everything queued meanwhile goes out in the same pass, batched per subscriber
+            for (; task != null; task = tasks.poll()) {
+                if (task.subscriber != null) {
+                    subscribers.add(task.subscriber);
+                    if (latestSnapshot != null) enqueue(task.subscriber, latestSnapshot, now);
+                } else {
+                    latestSnapshot = task.snapshot;
+                    framesPublished.incrementAndGet();
+                    for (Subscriber subscriber : subscribers) enqueue(subscriber, task.frame, now);
+                }
+            }
+            flush(now);
+        }
+        for (Subscriber subscriber : subscribers) closeQuietly(subscriber);
+        subscribers.clear();
+        subscriberCount = 0;
+    }
+
+    private void enqueue(Subscriber subscriber, ByteBuffer frame, long now) {
+        ArrayDeque<ByteBuffer> pending = subscriber.pending;
+        // The stall clock runs only while something is waiting to be sent
+        if (pending.isEmpty()) subscriber.lastProgress = now;
+        if (pending.size() < MAX_PENDING_FRAMES) {
+            pending.add(frame);
+            return;
+        }
+        // Conflate: keep a frame already partly sent, so the stream stays framed, then skip
+        // straight to the latest position
+        ByteBuffer head = pending.peek();
+        pending.clear();
+        if (subscriber.headOffset > 0) pending.add(head);
+        pending.add(latestSnapshot);
+        conflations.incrementAndGet();
+    }
+
+    // The frames are shared, so each is positioned for this subscriber only for the length of
+    // its write and rewound afterwards
+    private void flush(long now) {
+        long written = 0;
+        Iterator<Subscriber> iterator = subscribers.iterator();
+        while (iterator.hasNext()) {
+            Subscriber subscriber = iterator.next();
+            ArrayDeque<ByteBuffer> pending = subscriber.pending;
+            if (pending.isEmpty()) continue;
+            int count = 0;
+            try {
+                for (ByteBuffer buffer : pending) {
+                    gather[count++] = buffer;
+                    if (count == MAX_GATHER) break;
+                }
+                gather[0].position(subscriber.headOffset);
+                long bytes = subscriber.channel.write(gather, 0, count);
+                if (bytes > 0) subscriber.lastProgress = now;
+                while (bytes > 0) {
+                    int left = pending.peek().limit() - subscriber.headOffset;
+                    if (bytes < left) {
+                        subscriber.headOffset += (int) bytes;
+                        break;
+                    }
+                    bytes -= left;
+                    pending.poll();
+                    subscriber.headOffset = 0;
+                    written++;
+                }
+                if (now - subscriber.lastProgress > stallNanos) throw new IOException("stalled");
+            } catch (IOException e) {
+                closeQuietly(subscriber);
+                iterator.remove();
+                drops.incrementAndGet();
+            } finally {
+                for (int i = 0; i < count; i++) {
+                    gather[i].rewind();
+                    gather[i] = null;
+                }
+            }
+        }
+        framesWritten.addAndGet(written);
+        subscriberCount = subscribers.size();
+    }
+
+    private static void closeQuietly(Subscriber subscriber) {
+        try {
+            subscriber.channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    int subscribers() {
+        return subscriberCount;
+    }
+
+    // Frames handed to the broadcaster: moves and snapshots
+    long framesPublished() {
+        return framesPublished.get();
+    }
+
+    // Frames fully written to a subscriber, over all subscribers
+    long framesWritten() {
+        return framesWritten.get();
+    }
+
+    // Times a subscriber's backlog was replaced by a snapshot
+    long conflations() {
+        return conflations.get();
+    }
+
+    // Subscribers closed because they stalled or their channel failed
+    long drops() {
+        return drops.get();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (server != null) {
+            try {
+                server.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        try {
+            broadcaster.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
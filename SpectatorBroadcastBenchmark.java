@@ -0,0 +1,243 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Fan-out latency of SpectatorBroadcast: the time from movePlayed to a frame's last byte
+// reaching a subscriber, while a random game is published at a steady rate.
+//  - in-memory: thousands of subscribers on channels that copy what they are given, as a
+//    socket buffer would, with a share of them stalled (they take 4 KB, a few bytes at a time,
+//    then nothing) to show conflation and dropping do not hold up the rest
+//  - TCP: subscribers on loopback sockets, read by a selector in this process
+//   java SpectatorBroadcastBenchmark [--subscribers N] [--slow N] [--sockets N] [--moves N] [--rate per-second]
+class SpectatorBroadcastBenchmark {
+    private static long[] publishedAt;
+
+    // Copies each write into its own buffer, and times sampled subscribers' frames
+    private static final class MemoryChannel implements GatheringByteChannel {
+        final boolean stalls;
+        final LatencyHistogram latency;
+        final byte[] received = new byte[1 << 12];
+        int at;
+        long total;
+        boolean open = true;
+
+        MemoryChannel(boolean stalls, LatencyHistogram latency) {
+            this.stalls = stalls;
+            this.latency = latency;
+        }
+
+        @Override
+        public long write(ByteBuffer[] sources, int offset, int length) {
+            long written = 0;
+            for (int i = offset; i < offset + length; i++) {
+                ByteBuffer source = sources[i];
+                int n = source.remaining();
+                if (stalls) n = (int) Math.min(n, Math.min(7, received.length - total));
+                if (at + n > received.length) at = 0;
+                source.get(received, at, n);
+                at += n;
+                total += n;
+                written += n;
+                if (source.hasRemaining()) break;
+                if (latency != null && source.get(4) == SpectatorBroadcast.MOVE) {
+                    latency.record(System.nanoTime() - publishedAt[source.getInt(5)]);
+                }
+            }
+            return written;
+        }
+
+        @Override
+        public long write(ByteBuffer[] sources) {
+            return write(sources, 0, sources.length);
+        }
+
+        @Override
+        public int write(ByteBuffer source) {
+            return (int) write(new ByteBuffer[] {source}, 0, 1);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int subscribers = 10_000;
+        int slow = 100;
+        int sockets = 1_000;
+        int moves = 3_000;
+        int rate = 200;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--subscribers": subscribers = Integer.parseInt(args[++i]); break;
+                case "--slow": slow = Integer.parseInt(args[++i]); break;
+                case "--sockets": sockets = Integer.parseInt(args[++i]); break;
+                case "--moves": moves = Integer.parseInt(args[++i]); break;
+                case "--rate": rate = Integer.parseInt(args[++i]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        publishedAt = new long[moves + 1];
+
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram sampled = new LatencyHistogram();
+        LatencyHistogram last = new LatencyHistogram();
+        // Stalled subscribers are given up on after a second so the run sees them dropped
+        SpectatorBroadcast broadcast = new SpectatorBroadcast(TimeUnit.SECONDS.toNanos(1));
+        for (int i = 0; i < subscribers; i++) {
+            LatencyHistogram latency = i == 0 ? first : i == subscribers - 1 ? last : i % 64 == 0 ? sampled : null;
+            broadcast.subscribe(new MemoryChannel(false, latency));
+        }
+        for (int i = 0; i < slow; i++) broadcast.subscribe(new MemoryChannel(true, null));
+        // A short untimed game first, so the JIT has compiled the fan-out before timing starts
+        play(broadcast, Math.min(moves, 500), rate);
+        first.reset();
+        sampled.reset();
+        last.reset();
+        LatencyHistogram publish = play(broadcast, moves, rate);
+        Thread.sleep(1500);
+        System.out.printf("%,d in-memory subscribers + %d stalled, %,d moves at %d/s: %,d frames written, "
+                          + "%d conflations, %d dropped, %,d still subscribed%n",
+                          subscribers, slow, moves, rate, broadcast.framesWritten(), broadcast.conflations(),
+                          broadcast.drops(), broadcast.subscribers());
+        report("movePlayed on the game thread", publish);
+        report("first subscriber", first);
+        report("every 64th subscriber", sampled);
+        report("last subscriber", last);
+        broadcast.close();
+
+        if (sockets > 0) sockets(sockets, moves, rate);
+    }
+
+    // Publishes a random game, restarting it when it ends, at the given rate; returns the
+    // time movePlayed takes on the publishing thread
+    private static LatencyHistogram play(SpectatorBroadcast broadcast, int moves, int rate) throws InterruptedException {
+        SplittableRandom random = new SplittableRandom(5);
+        ChessPosition position = new ChessPosition();
+        position.setupInitial();
+        broadcast.positionSet(position, 0);
+        MoveList legal = new MoveList();
+        LatencyHistogram publish = new LatencyHistogram();
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long next = System.nanoTime();
+        for (int i = 1; i <= moves; i++) {
+            legal.clear();
+            position.legalMoves(legal);
+            if (legal.size() == 0 || position.drawReason() != null) {
+                position.setupInitial();
+                broadcast.positionSet(position, i - 1);
+                legal.clear();
+                position.legalMoves(legal);
+            }
+            int move = legal.get(random.nextInt(legal.size()));
+            Move.play(position, move);
+            // Sleeping rather than spinning leaves the cores to the broadcaster and subscribers
+            for (long wait; (wait = next - System.nanoTime()) > 0; ) LockSupport.parkNanos(wait);
+            next += interval;
+            // The ply sent is the move number, which indexes publishedAt
+            long start = System.nanoTime();
+            publishedAt[i] = start;
+            broadcast.movePlayed(position, i, move);
+            publish.record(System.nanoTime() - start);
+        }
+        return publish;
+    }
+
+    private static void sockets(int count, int moves, int rate) throws IOException, InterruptedException {
+        SpectatorBroadcast broadcast = new SpectatorBroadcast();
+        broadcast.listen(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        Selector selector = Selector.open();
+        for (int i = 0; i < count; i++) {
+            SocketChannel client = SocketChannel.open(broadcast.address());
+            client.configureBlocking(false);
+            client.register(selector, SelectionKey.OP_READ, new FrameReader());
+        }
+        while (broadcast.subscribers() < count) Thread.sleep(10);
+
+        LatencyHistogram latency = new LatencyHistogram();
+        long[] delivered = new long[1];
+        Thread reader = new Thread(() -> {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    if (selector.select(50) == 0) continue;
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        buffer.clear();
+                        if (((SocketChannel) key.channel()).read(buffer) < 0) {
+                            key.cancel();
+                            continue;
+                        }
+                        buffer.flip();
+                        delivered[0] += ((FrameReader) key.attachment()).consume(buffer, latency);
+                    }
+                    selector.selectedKeys().clear();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "spectator-reader");
+        reader.start();
+        LatencyHistogram publish = play(broadcast, moves, rate);
+        Thread.sleep(500);
+        reader.interrupt();
+        reader.join();
+        System.out.printf("%,d loopback TCP subscribers, %,d moves at %d/s: %,d move frames read, %d conflations, %d dropped%n",
+                          count, moves, rate, delivered[0], broadcast.conflations(), broadcast.drops());
+        report("movePlayed on the game thread", publish);
+        report("every subscriber", latency);
+        broadcast.close();
+        selector.close();
+    }
+
+    // Splits a subscriber's byte stream back into frames
+    private static final class FrameReader {
+        final ByteBuffer frame = ByteBuffer.allocate(256);
+        int needed = 4;
+        boolean header = true;
+
+        int consume(ByteBuffer bytes, LatencyHistogram latency) {
+            int moves = 0;
+            while (bytes.hasRemaining()) {
+                int n = Math.min(needed - frame.position(), bytes.remaining());
+                ByteBuffer slice = bytes.duplicate();
+                slice.limit(slice.position() + n);
+                frame.put(slice);
+                bytes.position(bytes.position() + n);
+                if (frame.position() < needed) break;
+                if (header) {
+                    needed = 4 + frame.getInt(0);
+                    header = false;
+                    continue;
+                }
+                if (frame.get(4) == SpectatorBroadcast.MOVE) {
+                    latency.record(System.nanoTime() - publishedAt[frame.getInt(5)]);
+                    moves++;
+                }
+                frame.clear();
+                needed = 4;
+                header = true;
+            }
+            return moves;
+        }
+    }
+
+    private static void report(String label, LatencyHistogram latency) {
+        System.out.printf("  %-30s n %,9d  p50 %7.1f us  p99 %7.1f us  p99.9 %7.1f us  max bucket %7.1f us%n", label,
+                          latency.getCount(), latency.getPercentile(50) / 1e3, latency.getPercentile(99) / 1e3,
+                          latency.getPercentile(99.9) / 1e3, latency.getPercentile(100) / 1e3);
+    }
+}
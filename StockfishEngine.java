@@ -1,34 +1,87 @@
 import java.io.*;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
-import javafx.scene.paint.Color;
 
 public class StockfishEngine {
     private Process engineProcess;
     private BufferedReader processReader;
     private BufferedWriter processWriter;
     private int searchDepth = 10; // Adjust based on desired difficulty
+    private int moveTime = 0; // Milliseconds per move; 0 searches to searchDepth instead
+    private int nodes = 0; // Node limit, used when there is no move time; 0 searches to searchDepth
+    private final char[] fenBuffer = new char[Fen.MAX_LENGTH];
+    // Why the process could not be started, or null
+    private IOException startFailure;
+    
+    // Path to Stockfish executable: -Dchess.engine=..., else $CHESS_ENGINE, else this placeholder
+    static final String DEFAULT_PATH = System.getProperty("chess.engine",
+        System.getenv().getOrDefault("CHESS_ENGINE", "Path_to_stockfish.exe"));
     
     public StockfishEngine() {
+        this(DEFAULT_PATH);
+    }
+    
+    public StockfishEngine(String stockfishPath) {
+        this(stockfishPath, true);
+    }
+    
+    // Starts the process, leaving the UCI handshake to handshake() if asked to, so that
+    // EngineSupervisor can put a deadline on it. A process that cannot be started leaves
+    // isRunning() false and the cause in startFailure().
+    StockfishEngine(String stockfishPath, boolean handshake) {
+        this(command(stockfishPath), handshake);
+    }
+    
+    StockfishEngine(List<String> command, boolean handshake) {
         try {
-            // Path to Stockfish executable - update this to your path
-            String stockfishPath = "Path_to_stockfish.exe"; 
-            
             // Use ProcessBuilder instead of Runtime.exec()
-            ProcessBuilder processBuilder = new ProcessBuilder(stockfishPath);
+            ProcessBuilder processBuilder = new ProcessBuilder(command);
             processBuilder.redirectErrorStream(true); // Merge error stream with input stream
             
             engineProcess = processBuilder.start();
             processReader = new BufferedReader(new InputStreamReader(engineProcess.getInputStream()));
             processWriter = new BufferedWriter(new OutputStreamWriter(engineProcess.getOutputStream()));
-            
-            // Initialize the engine
-            sendCommand("uci");
-            sendCommand("isready");
-            waitForReady();
         } catch (IOException e) {
-            e.printStackTrace();
+            startFailure = e;
+            return;
+        }
+        if (handshake) handshake();
+    }
+    
+    // The command line for an engine path: "mock" or "mock:<options>" runs MockUciEngine with
+    // those space-separated options, anything else is the executable itself
+    static List<String> command(String path) {
+        if (path.equals("mock")) return MockUciEngine.command();
+        if (path.startsWith("mock:")) {
+            String options = path.substring(5).trim();
+            return MockUciEngine.command(options.isEmpty() ? new String[0] : options.split("\\s+"));
+        }
+        return Collections.singletonList(path);
+    }
+    
+    // Initialize the engine
+    void handshake() {
+        sendCommand("uci");
+        sendCommand("isready");
+        waitForReady();
+    }
+    
+    // Why the engine is not running after start: the process could not be started, or it
+    // started and then exited
+    IOException startFailure() {
+        if (startFailure == null && engineProcess != null) {
+            try {
+                // Its output may close just before it exits
+                if (engineProcess.waitFor(1, TimeUnit.SECONDS)) {
+                    return new IOException("engine exited with status " + engineProcess.exitValue());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
-    }    
+        return startFailure;
+    }
     
     private void sendCommand(String command) {
         try {
@@ -39,7 +92,18 @@ public class StockfishEngine {
         }
     }
     
-    private String readLine() {
+    // Starts an open-ended search that runs until stop(); its output is read with readLine
+    void goInfinite(String fen) {
+        sendCommand("position fen " + fen);
+        sendCommand("go infinite");
+    }
+    
+    // Ends the current search; the engine answers with its "bestmove" line
+    void stop() {
+        sendCommand("stop");
+    }
+    
+    String readLine() {
         try {
             return processReader.readLine();
         } catch (IOException e) {
@@ -49,14 +113,25 @@ public class StockfishEngine {
     }
     
     private void waitForReady() {
+        EngineCommandEvent event = new EngineCommandEvent();
+        event.begin();
         String line;
+        int linesRead = 0;
         try {
             while ((line = processReader.readLine()) != null) {
+                linesRead++;
                 if (line.equals("readyok")) break;
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
+        event.end();
+        if (event.shouldCommit()) {
+            event.command = "isready";
+            event.response = "readyok";
+            event.linesRead = linesRead;
+            event.commit();
+        }
     }
     
     // Set search depth (difficulty level)
@@ -64,90 +139,128 @@ public class StockfishEngine {
         this.searchDepth = depth;
     }
     
-    // Convert chess board to FEN notation including turn and castling rights
-    public String boardToFEN(ChessPiece[][] board, boolean whiteTurn, CastlingRights castlingRights) {
-        StringBuilder fen = new StringBuilder();
-        
-        // Board position
-        for (int i = 0; i < 8; i++) {
-            int emptyCount = 0;
-            for (int j = 0; j < 8; j++) {
-                ChessPiece piece = board[i][j];
-                if (piece == null) {
-                    emptyCount++;
-                } else {
-                    if (emptyCount > 0) {
-                        fen.append(emptyCount);
-                        emptyCount = 0;
-                    }
-                    char pieceChar = getPieceChar(piece);
-                    fen.append(pieceChar);
-                }
-            }
-            if (emptyCount > 0) {
-                fen.append(emptyCount);
-            }
-            if (i < 7) fen.append('/');
-        }
-        
-        // Active color
-        fen.append(whiteTurn ? " w " : " b ");
-        
-        // Castling availability
-        StringBuilder castling = new StringBuilder();
-        if (castlingRights.canCastle(Color.WHITE, true)) castling.append("K");
-        if (castlingRights.canCastle(Color.WHITE, false)) castling.append("Q");
-        if (castlingRights.canCastle(Color.BLACK, true)) castling.append("k");
-        if (castlingRights.canCastle(Color.BLACK, false)) castling.append("q");
-        
-        if (castling.length() == 0) {
-            fen.append("- ");
-        } else {
-            fen.append(castling).append(" ");
-        }
-        
-        // En passant target square (not implemented yet)
-        fen.append("- ");
-        
-        // Halfmove clock and fullmove number
-        fen.append("0 1");
-        
-        return fen.toString();
+    // Search for a fixed time instead of to a fixed depth; 0 goes back to depth
+    public void setMoveTime(int millis) {
+        this.moveTime = millis;
     }
     
-    private char getPieceChar(ChessPiece piece) {
-        char pieceChar = ' ';
-        if (piece instanceof Pawn) pieceChar = 'p';
-        else if (piece instanceof Rook) pieceChar = 'r';
-        else if (piece instanceof Knight) pieceChar = 'n';
-        else if (piece instanceof Bishop) pieceChar = 'b';
-        else if (piece instanceof Queen) pieceChar = 'q';
-        else if (piece instanceof King) pieceChar = 'k';
-        
-        return piece.color == Color.WHITE ? Character.toUpperCase(pieceChar) : pieceChar;
+    // Search a fixed number of nodes, the cheap and reproducible limit for generating data
+    public void setNodes(int nodes) {
+        this.nodes = nodes;
+    }
+    
+    // False if the process could not be started or has exited
+    public boolean isRunning() {
+        return engineProcess != null && engineProcess.isAlive();
+    }
+    
+    public void setOption(String name, String value) {
+        sendCommand("setoption name " + name + " value " + value);
+        sendCommand("isready");
+        waitForReady();
+    }
+    
+    // Clears the engine's hash and history so each test position starts cold
+    public void newGame() {
+        sendCommand("ucinewgame");
+        sendCommand("isready");
+        waitForReady();
+    }
+    
+    // Convert the position to FEN; see Fen.write for the allocation-free form
+    public String positionToFEN(ChessPosition position) {
+        return Fen.toFen(position);
+    }
+    
+    public String getBestMove(ChessPosition position) {
+        int length = Fen.write(position, fenBuffer);
+        return search(fenBuffer, length, null);
     }
     
     public String getBestMove(String fen) {
-        sendCommand("position fen " + fen);
-        sendCommand("go depth " + searchDepth);
+        return search(fen.toCharArray(), fen.length(), null);
+    }
+    
+    // Also hands every "info" line to the listener as it arrives
+    public String getBestMove(String fen, java.util.function.Consumer<String> infoListener) {
+        return search(fen.toCharArray(), fen.length(), infoListener);
+    }
+    
+    private String search(char[] fen, int fenLength, java.util.function.Consumer<String> infoListener) {
+        EngineCommandEvent event = new EngineCommandEvent();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            // The FEN goes straight from the buffer to the pipe without an intermediate string
+            processWriter.write("position fen ");
+            processWriter.write(fen, 0, fenLength);
+            processWriter.write('\n');
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        String goCommand = moveTime > 0 ? "go movetime " + moveTime
+                           : nodes > 0 ? "go nodes " + nodes : "go depth " + searchDepth;
+        sendCommand(goCommand);
         
         String line;
         String bestMove = null;
+        int linesRead = 0;
         
         try {
             while ((line = processReader.readLine()) != null) {
+                linesRead++;
                 if (line.startsWith("bestmove")) {
                     bestMove = line.split("\\s+")[1];
                     break;
                 }
+                if (line.startsWith("info")) {
+                    long nps = parseInfoField(line, " nps ");
+                    if (nps >= 0) PerformanceMetrics.get().recordEngineNodesPerSecond(nps);
+                    if (infoListener != null) infoListener.accept(line);
+                }
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
         
+        PerformanceMetrics.get().recordEngineRoundTrip(System.nanoTime() - start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.command = goCommand;
+            event.response = bestMove;
+            event.depth = moveTime > 0 || nodes > 0 ? 0 : searchDepth;
+            event.linesRead = linesRead;
+            event.fen = new String(fen, 0, fenLength);
+            event.commit();
+        }
         return bestMove;
     }
     
+    // Reads the integer following a token such as " nps " in a UCI info line, or -1 if absent
+    static long parseInfoField(String line, String token) {
+        int index = line.indexOf(token);
+        if (index < 0) return -1;
+        long value = 0;
+        boolean found = false;
+        for (int i = index + token.length(); i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') break;
+            value = value * 10 + (c - '0');
+            found = true;
+        }
+        return found ? value : -1;
+    }
+    
+    // As parseInfoField for fields that can be negative, such as " score cp "; 0 if absent
+    static long parseSignedInfoField(String line, String token) {
+        int index = line.indexOf(token);
+        if (index < 0) return 0;
+        int start = index + token.length();
+        boolean negative = start < line.length() && line.charAt(start) == '-';
+        long value = parseInfoField(line, negative ? token + "-" : token);
+        return negative ? -value : Math.max(0, value);
+    }
+    
     // Convert algebraic notation to board coordinates
     public int[] algebraicToCoords(String algebraic) {
         int col = algebraic.charAt(0) - 'a';
@@ -155,8 +268,14 @@ public class StockfishEngine {
         return new int[]{row, col};
     }
     
+    // Ends the process at once, without a "quit"; a search blocked on it returns null
+    void kill() {
+        if (engineProcess != null) engineProcess.destroyForcibly();
+    }
+    
     // Close the engine process
     public void close() {
+        if (engineProcess == null) return;
         sendCommand("quit");
         try {
             if (!engineProcess.waitFor(5, TimeUnit.SECONDS)) {
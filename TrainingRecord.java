@@ -0,0 +1,105 @@
+import java.nio.ByteBuffer;
+import javafx.scene.paint.Color;
+
+// Fixed-size 32-byte record of one labelled position, for training evaluation networks.
+// Little-endian:
+//   0..7    occupancy, bit row * 8 + col (a8 is bit 0)
+//   8..23   a 4-bit piece code (Zobrist.pieceIndex) per occupied square, in bit order, low
+//           nibble first; at most 32 pieces
+//   24      bit 0 White to move, bits 1..4 castling rights K, Q, k, q
+//   25      en passant column + 1, 0 for none
+//   26      halfmove clock, capped at 255
+//   27..28  fullmove number
+//   29..30  score in centipawns for the side to move
+//   31      game result for the side to move: 0 loss, 1 draw, 2 win
+final class TrainingRecord {
+    static final int SIZE = 32;
+    static final int RESULT_OFFSET = 31;
+    static final byte LOSS = 0, DRAW = 1, WIN = 2;
+    private static final String PIECE_SYMBOLS = "PNBRQKpnbrqk";
+
+    private TrainingRecord() {
+    }
+
+    // Writes the position and score at out's position and advances it by SIZE; the result
+    // byte is left as a draw until the game's result is known
+    static void pack(ChessPosition position, int score, ByteBuffer out) {
+        int base = out.position();
+        long occupancy = 0;
+        long low = 0;
+        long high = 0;
+        int count = 0;
+        for (int square = 0; square < 64; square++) {
+            ChessPiece piece = position.board[square >>> 3][square & 7];
+            if (piece == null) continue;
+            occupancy |= 1L << square;
+            long code = Zobrist.pieceIndex(piece);
+            if (count < 16) low |= code << (4 * count);
+            else high |= code << (4 * (count - 16));
+            count++;
+        }
+        CastlingRights rights = position.castlingRights;
+        int flags = (position.whiteTurn ? 1 : 0)
+            | (rights.canCastle(Color.WHITE, true) ? 2 : 0)
+            | (rights.canCastle(Color.WHITE, false) ? 4 : 0)
+            | (rights.canCastle(Color.BLACK, true) ? 8 : 0)
+            | (rights.canCastle(Color.BLACK, false) ? 16 : 0);
+        out.putLong(base, occupancy)
+            .putLong(base + 8, low)
+            .putLong(base + 16, high)
+            .put(base + 24, (byte) flags)
+            .put(base + 25, (byte) (position.enPassantCol + 1))
+            .put(base + 26, (byte) Math.min(255, position.halfmoveClock))
+            .putShort(base + 27, (short) position.fullmoveNumber)
+            .putShort(base + 29, (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, score)))
+            .put(base + RESULT_OFFSET, DRAW);
+        out.position(base + SIZE);
+    }
+
+    // The FEN of the record at offset, for reading data back and for checking pack()
+    static String toFen(ByteBuffer in, int offset) {
+        long occupancy = in.getLong(offset);
+        long low = in.getLong(offset + 8);
+        long high = in.getLong(offset + 16);
+        int flags = in.get(offset + 24);
+        int enPassant = in.get(offset + 25) - 1;
+        StringBuilder fen = new StringBuilder(Fen.MAX_LENGTH);
+        int count = 0;
+        for (int row = 0; row < 8; row++) {
+            int empty = 0;
+            for (int col = 0; col < 8; col++) {
+                if ((occupancy & 1L << (row * 8 + col)) == 0) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) fen.append(empty);
+                empty = 0;
+                int code = (int) ((count < 16 ? low >>> (4 * count) : high >>> (4 * (count - 16))) & 15);
+                fen.append(PIECE_SYMBOLS.charAt(code));
+                count++;
+            }
+            if (empty > 0) fen.append(empty);
+            if (row < 7) fen.append('/');
+        }
+        boolean whiteToMove = (flags & 1) != 0;
+        fen.append(whiteToMove ? " w " : " b ");
+        int castlingStart = fen.length();
+        if ((flags & 2) != 0) fen.append('K');
+        if ((flags & 4) != 0) fen.append('Q');
+        if ((flags & 8) != 0) fen.append('k');
+        if ((flags & 16) != 0) fen.append('q');
+        if (fen.length() == castlingStart) fen.append('-');
+        fen.append(' ');
+        if (enPassant < 0) fen.append('-');
+        else fen.append((char) ('a' + enPassant)).append(whiteToMove ? '6' : '3');
+        return fen.append(' ').append(in.get(offset + 26) & 0xFF).append(' ').append(in.getShort(offset + 27)).toString();
+    }
+
+    static int score(ByteBuffer in, int offset) {
+        return in.getShort(offset + 29);
+    }
+
+    static int result(ByteBuffer in, int offset) {
+        return in.get(offset + RESULT_OFFSET);
+    }
+}
@@ -0,0 +1,83 @@
+import java.util.SplittableRandom;
+import javafx.scene.paint.Color;
+
+// Zobrist keys for hashing positions. The seed is fixed so hashes are stable across runs.
+final class Zobrist {
+    static final long[][] PIECE_SQUARE = new long[12][64];
+    static final long BLACK_TO_MOVE;
+    static final long[] CASTLING = new long[4];
+    static final long[] EN_PASSANT_FILE = new long[8];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5EED_C0FFEEL);
+        for (long[] keys : PIECE_SQUARE) {
+            for (int square = 0; square < 64; square++) keys[square] = random.nextLong();
+        }
+        BLACK_TO_MOVE = random.nextLong();
+        for (int i = 0; i < CASTLING.length; i++) CASTLING[i] = random.nextLong();
+        for (int i = 0; i < EN_PASSANT_FILE.length; i++) EN_PASSANT_FILE[i] = random.nextLong();
+    }
+
+    private Zobrist() {
+    }
+
+    // 0-5 for white pawn, knight, bishop, rook, queen, king; 6-11 for black
+    static int pieceIndex(ChessPiece piece) {
+        int type;
+        switch (piece.symbol()) {
+            case 'P': type = 0; break;
+            case 'N': type = 1; break;
+            case 'B': type = 2; break;
+            case 'R': type = 3; break;
+            case 'Q': type = 4; break;
+            default: type = 5; break;
+        }
+        return piece.color == Color.WHITE ? type : type + 6;
+    }
+
+    static long pieceKey(ChessPiece piece, int row, int col) {
+        return PIECE_SQUARE[pieceIndex(piece)][row * 8 + col];
+    }
+
+    static long castlingKey(CastlingRights rights) {
+        long key = 0;
+        if (rights.canCastle(Color.WHITE, true)) key ^= CASTLING[0];
+        if (rights.canCastle(Color.WHITE, false)) key ^= CASTLING[1];
+        if (rights.canCastle(Color.BLACK, true)) key ^= CASTLING[2];
+        if (rights.canCastle(Color.BLACK, false)) key ^= CASTLING[3];
+        return key;
+    }
+
+    // The en passant file only counts when a pawn of the side to move stands next to the pawn
+    // that just advanced, so positions that differ in name only still repeat
+    static long enPassantKey(ChessPosition position) {
+        int col = position.enPassantCol;
+        if (col < 0) return 0;
+        int row = position.whiteTurn ? 3 : 4;
+        Color mover = position.whiteTurn ? Color.WHITE : Color.BLACK;
+        for (int side = col - 1; side <= col + 1; side += 2) {
+            if (side < 0 || side > 7) continue;
+            ChessPiece piece = position.board[row][side];
+            if (piece instanceof Pawn && piece.color == mover) return EN_PASSANT_FILE[col];
+        }
+        return 0;
+    }
+
+    // Full recompute of a position's hash; O(64)
+    static long hash(ChessPosition position) {
+        return hash(position.board, position.whiteTurn, position.castlingRights) ^ enPassantKey(position);
+    }
+
+    // Board, side and castling only; O(64)
+    static long hash(ChessPiece[][] board, boolean whiteTurn, CastlingRights rights) {
+        long key = 0;
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                ChessPiece piece = board[row][col];
+                if (piece != null) key ^= pieceKey(piece, row, col);
+            }
+        }
+        if (!whiteTurn) key ^= BLACK_TO_MOVE;
+        return key ^ castlingKey(rights);
+    }
+}